@@ -0,0 +1,173 @@
+package com.studygroup.backend.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.studygroup.backend.service.ChatSessionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Re-encodes outbound chat frames as CBOR or Smile for sessions that asked for it with a
+// "payload-format" header on CONNECT. Applies to /topic/group/... and /user/queue/... frames, JSON
+// stays the default for everyone else. Binary frames carry content-type application/octet-stream
+// (so Spring writes them as binary WebSocket frames) and a "payload-format" header naming the
+// encoding. The broker sends one payload to all subscribers from the same thread, so the last
+// conversion is kept per thread and a broadcast is converted once per format, not once per session.
+@Component
+public class BinaryPayloadInterceptor implements ChannelInterceptor {
+
+    public static final String FORMAT_HEADER = "payload-format";
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_CBOR = "cbor";
+    public static final String FORMAT_SMILE = "smile";
+
+    private static final String ORIGINAL_DESTINATION_HEADER = "simpOrigDestination";
+
+    @Value("${chat.ws.binary-payload.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final CBORMapper cborMapper = new CBORMapper();
+    private final SmileMapper smileMapper = new SmileMapper();
+
+    private final ThreadLocal<Converted> lastConverted = new ThreadLocal<>();
+
+    private Timer transcodeTimer;
+    private Counter savedBytesCounter;
+    private Map<String, DistributionSummary> frameBytes;
+
+    @PostConstruct
+    public void init() {
+        transcodeTimer = Timer.builder("chat.payload.transcode")
+                .description("Time spent converting a JSON payload to a binary format")
+                .register(meterRegistry);
+        savedBytesCounter = Counter.builder("chat.payload.bytes.saved")
+                .description("Bytes not sent thanks to binary payloads, summed over all delivered frames")
+                .register(meterRegistry);
+        frameBytes = Map.of(
+                FORMAT_JSON, payloadSummary(FORMAT_JSON),
+                FORMAT_CBOR, payloadSummary(FORMAT_CBOR),
+                FORMAT_SMILE, payloadSummary(FORMAT_SMILE)
+        );
+    }
+
+    private DistributionSummary payloadSummary(String format) {
+        return DistributionSummary.builder("chat.payload.bytes")
+                .description("Size of converted chat payloads by format")
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+
+    // normalized value of the CONNECT header, unknown values fall back to JSON
+    public static String negotiate(String requested) {
+        if (requested == null) {
+            return FORMAT_JSON;
+        }
+        String format = requested.trim().toLowerCase();
+        return FORMAT_CBOR.equals(format) || FORMAT_SMILE.equals(format) ? format : FORMAT_JSON;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+
+        ChatSessionRegistry.SessionInfo session =
+                chatSessionRegistry.getSession(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        String format = session != null ? session.getPayloadFormat() : FORMAT_JSON;
+        if (FORMAT_JSON.equals(format) || !isChatDestination(message) || !isJson(message)) {
+            return message;
+        }
+
+        byte[] converted = convert(payload, format);
+        if (converted == null) {
+            return message;
+        }
+        savedBytesCounter.increment(Math.max(0, payload.length - converted.length));
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(FORMAT_HEADER, format);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(converted, accessor.getMessageHeaders());
+    }
+
+    private byte[] convert(byte[] json, String format) {
+        Converted last = lastConverted.get();
+        if (last != null && last.source == json && last.format.equals(format)) {
+            return last.bytes;
+        }
+
+        try {
+            long started = System.nanoTime();
+            JsonNode tree = objectMapper.readTree(json);
+            byte[] bytes = FORMAT_CBOR.equals(format)
+                    ? cborMapper.writeValueAsBytes(tree)
+                    : smileMapper.writeValueAsBytes(tree);
+            transcodeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            frameBytes.get(FORMAT_JSON).record(json.length);
+            frameBytes.get(format).record(bytes.length);
+
+            lastConverted.set(new Converted(json, format, bytes));
+            return bytes;
+        } catch (Exception e) {
+            System.err.println("Error converting chat payload to " + format + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isChatDestination(Message<?> message) {
+        String destination = (String) message.getHeaders().get(ORIGINAL_DESTINATION_HEADER);
+        if (destination == null) {
+            destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        }
+        return destination != null
+                && (destination.startsWith("/topic/group/") || destination.startsWith("/user/queue/"));
+    }
+
+    // frames parked by flow control come through again, they are already converted
+    private static boolean isJson(Message<?> message) {
+        MimeType contentType = SimpMessageHeaderAccessor.getContentType(message.getHeaders());
+        return contentType == null || MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType);
+    }
+
+    private static class Converted {
+        private final byte[] source;
+        private final String format;
+        private final byte[] bytes;
+
+        Converted(byte[] source, String format, byte[] bytes) {
+            this.source = source;
+            this.format = format;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.service.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caps the rate of STOMP CONNECTs node-wide so a restart does not turn every reconnecting client
+// into a simultaneous burst of JWT checks, user lookups and history/notification calls. Clients
+// over the rate get an ERROR frame with a suggested retry delay. The delay is spread with random
+// jitter over a window that grows with the number of clients deferred recently, so the next wave
+// is flattened instead of arriving all together again.
+@Component
+public class ConnectAdmissionControl {
+
+    private static final String GLOBAL = "global";
+
+    @Value("${chat.ws.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.ws.admission.min-retry-ms:1000}")
+    private long minRetryMs;
+
+    @Value("${chat.ws.admission.max-retry-ms:60000}")
+    private long maxRetryMs;
+
+    // admitted connects per second, used to size the spread window
+    @Value("${rate-limit.connect.per-minute:1200}")
+    private long connectsPerMinute;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // deferrals in the current one second window and the previous one
+    private final AtomicLong windowStart = new AtomicLong();
+    private final AtomicLong windowDeferrals = new AtomicLong();
+    private volatile long previousWindowDeferrals;
+
+    private Counter admittedCounter;
+    private Counter deferredCounter;
+
+    @PostConstruct
+    public void init() {
+        admittedCounter = meterRegistry.counter("chat.ws.connect.admitted");
+        deferredCounter = meterRegistry.counter("chat.ws.connect.deferred");
+    }
+
+    // throws ConnectDeferredException when the connect has to wait
+    public void admit() {
+        if (!enabled) {
+            return;
+        }
+
+        long waitMs = rateLimiter.tryAcquire(RateLimiter.POLICY_CONNECT, GLOBAL);
+        if (waitMs == 0) {
+            admittedCounter.increment();
+            return;
+        }
+
+        deferredCounter.increment();
+        long backlog = countDeferral() + previousWindowDeferrals;
+        // time the node needs to admit everyone currently waiting, clients pick a random slot in it
+        long spreadMs = backlog * 60_000L / Math.max(1, connectsPerMinute);
+        long windowMs = Math.min(maxRetryMs, Math.max(minRetryMs, waitMs + spreadMs));
+        long retryAfterMs = Math.max(minRetryMs, ThreadLocalRandom.current().nextLong(windowMs + 1));
+        throw new ConnectDeferredException(retryAfterMs);
+    }
+
+    private long countDeferral() {
+        long now = System.currentTimeMillis();
+        long start = windowStart.get();
+        if (now - start >= 1000 && windowStart.compareAndSet(start, now)) {
+            long last = windowDeferrals.getAndSet(0);
+            // a window that ended long ago says nothing about the current backlog
+            previousWindowDeferrals = now - start < 2000 ? last : 0;
+        }
+        return windowDeferrals.incrementAndGet();
+    }
+
+    public static class ConnectDeferredException extends RuntimeException {
+        private final long retryAfterMs;
+
+        public ConnectDeferredException(long retryAfterMs) {
+            super("Server busy, retry in " + retryAfterMs + " ms");
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public long getRetryAfterMs() { return retryAfterMs; }
+    }
+}
@@ -0,0 +1,134 @@
+package com.studygroup.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Executor for clientInboundChannel built from single threaded lanes. SEND frames to
+// /app/chat/{id} run on the lane chosen by hashing the group id, so messages of one group are
+// handled strictly in arrival order while different groups run in parallel, and a hot group can
+// only back up its own lane instead of the whole shared pool. Every other frame (CONNECT,
+// SUBSCRIBE, UNSUBSCRIBE, DISCONNECT) runs on the lane of its session, so a session's
+// subscription changes are applied in the order it sent them. The only ordering given up is
+// between a session's chat sends and its other frames, which never depend on each other.
+@Component
+public class GroupOrderedInboundExecutor implements Executor {
+
+    private static final Pattern GROUP_DESTINATION = Pattern.compile("^/app/chat/(\\d+)(/.*)?$");
+
+    @Value("${chat.inbound.lanes:0}")
+    private int configuredLanes;
+
+    @Value("${chat.inbound.lane-queue-capacity:10000}")
+    private int laneQueueCapacity;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor[] lanes;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        int laneCount = configuredLanes > 0 ? configuredLanes : Runtime.getRuntime().availableProcessors() * 2;
+        lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String name = "chat-inbound-lane-" + i;
+            ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(laneQueueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            lanes[i] = lane;
+
+            Gauge.builder("chat.inbound.lane.queue.depth", lane, l -> l.getQueue().size())
+                    .description("Inbound STOMP frames waiting on one lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+            Gauge.builder("chat.inbound.lane.completed", lane, ThreadPoolExecutor::getCompletedTaskCount)
+                    .description("Inbound STOMP frames handled by one lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+        rejectedCounter = meterRegistry.counter("chat.inbound.lane.rejected");
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        ThreadPoolExecutor lane = lanes[laneOf(task)];
+        try {
+            lane.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw e;
+        }
+    }
+
+    // runs work for a session behind the frames already queued for it
+    public void execute(String sessionId, Runnable task) {
+        ThreadPoolExecutor lane = lanes[spread(sessionId.hashCode())];
+        try {
+            lane.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw e;
+        }
+    }
+
+    private int laneOf(Runnable task) {
+        if (!(task instanceof MessageHandlingRunnable)) {
+            return 0;
+        }
+
+        Message<?> message = ((MessageHandlingRunnable) task).getMessage();
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination != null && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+            Matcher matcher = GROUP_DESTINATION.matcher(destination);
+            if (matcher.matches()) {
+                try {
+                    return spread(Long.hashCode(Long.parseLong(matcher.group(1))));
+                } catch (NumberFormatException e) {
+                    // too long for a group id, the frame falls back to its session lane
+                }
+            }
+        }
+
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        return sessionId != null ? spread(sessionId.hashCode()) : 0;
+    }
+
+    private int spread(int hash) {
+        // mix the bits so consecutive group ids do not walk the lanes in lockstep
+        int h = hash * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
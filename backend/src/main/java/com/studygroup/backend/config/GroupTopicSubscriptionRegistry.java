@@ -0,0 +1,200 @@
+package com.studygroup.backend.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Subscription registry for the simple broker that looks up /topic/group/... destinations by exact
+// match in a hash index instead of pattern matching them. Each destination holds an immutable
+// snapshot of its subscribers that is replaced on every SUBSCRIBE/UNSUBSCRIBE, so a broadcast is a
+// single map lookup with no locking or allocation, and subscribing costs a copy of that group's list.
+// Pattern destinations, selector subscriptions and everything outside /topic/group/ go to Spring's
+// DefaultSubscriptionRegistry as before.
+@Component
+public class GroupTopicSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final String GROUP_TOPIC_PREFIX = "/topic/group/";
+    private static final String SELECTOR_HEADER = "selector";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final DefaultSubscriptionRegistry fallback = new DefaultSubscriptionRegistry();
+
+    // destination -> current subscribers
+    private final Map<String, Subscribers> destinations = new ConcurrentHashMap<>();
+
+    // sessionId -> subscriptionId -> destination, to resolve UNSUBSCRIBE and disconnects
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+
+    // set once a fallback subscription could match a group topic, until then group lookups never
+    // touch the fallback and its per-destination cache stays small
+    private volatile boolean fallbackMatchesGroups;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("chat.broker.group_destinations", destinations, Map::size)
+                .description("Group topic destinations with at least one subscriber")
+                .register(meterRegistry);
+        Gauge.builder("chat.broker.group_subscriptions", destinations,
+                        d -> d.values().stream().mapToInt(Subscribers::size).sum())
+                .description("Subscriptions held in the exact-match group index")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination, Message<?> message) {
+        if (!isExactGroupTopic(destination, message)) {
+            if (destination.startsWith(GROUP_TOPIC_PREFIX) || isPattern(destination)) {
+                fallbackMatchesGroups = true;
+            }
+            fallback.registerSubscription(message);
+            return;
+        }
+
+        String previous = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        if (previous != null) {
+            // a reused subscription id replaces the old subscription
+            destinations.computeIfPresent(previous, (key, current) -> current.without(sessionId, subscriptionId));
+        }
+        destinations.compute(destination, (key, current) ->
+                (current != null ? current : Subscribers.EMPTY).with(sessionId, subscriptionId));
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, String> sessionSubscriptions = sessions.get(sessionId);
+        String destination = sessionSubscriptions != null ? sessionSubscriptions.remove(subscriptionId) : null;
+        if (destination == null) {
+            fallback.unregisterSubscription(message);
+            return;
+        }
+        destinations.computeIfPresent(destination, (key, current) -> current.without(sessionId, subscriptionId));
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> sessionSubscriptions = sessions.remove(sessionId);
+        if (sessionSubscriptions != null) {
+            sessionSubscriptions.forEach((subscriptionId, destination) ->
+                    destinations.computeIfPresent(destination, (key, current) -> current.without(sessionId, subscriptionId)));
+        }
+        fallback.unregisterAllSubscriptions(sessionId);
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        if (!destination.startsWith(GROUP_TOPIC_PREFIX)) {
+            return fallback.findSubscriptions(message);
+        }
+
+        Subscribers subscribers = destinations.get(destination);
+        MultiValueMap<String, String> patternMatches = fallbackMatchesGroups
+                ? fallback.findSubscriptions(message) : Subscribers.EMPTY.bySession;
+        if (patternMatches.isEmpty()) {
+            return subscribers != null ? subscribers.bySession : Subscribers.EMPTY.bySession;
+        }
+        if (subscribers == null) {
+            return patternMatches;
+        }
+
+        // rare: the same group topic is also matched by a pattern or selector subscription
+        // copied list by list, the snapshot's lists are unmodifiable and shared with other lookups
+        MultiValueMap<String, String> merged = new LinkedMultiValueMap<>();
+        subscribers.bySession.forEach(merged::addAll);
+        patternMatches.forEach(merged::addAll);
+        return merged;
+    }
+
+    private static boolean isExactGroupTopic(String destination, Message<?> message) {
+        if (!destination.startsWith(GROUP_TOPIC_PREFIX)) {
+            return false;
+        }
+        if (isPattern(destination)) {
+            return false;
+        }
+        return SimpMessageHeaderAccessor.getFirstNativeHeader(SELECTOR_HEADER, message.getHeaders()) == null;
+    }
+
+    private static boolean isPattern(String destination) {
+        return destination.indexOf('*') >= 0 || destination.indexOf('{') >= 0 || destination.indexOf('?') >= 0;
+    }
+
+    // copy-on-write set of subscriptions of one destination, never modified once published
+    private static final class Subscribers {
+
+        private static final Subscribers EMPTY = new Subscribers(new String[0], new String[0]);
+
+        private final String[] sessionIds;
+        private final String[] subscriptionIds;
+        private final MultiValueMap<String, String> bySession;
+
+        private Subscribers(String[] sessionIds, String[] subscriptionIds) {
+            this.sessionIds = sessionIds;
+            this.subscriptionIds = subscriptionIds;
+
+            LinkedMultiValueMap<String, String> map = new LinkedMultiValueMap<>(sessionIds.length);
+            for (int i = 0; i < sessionIds.length; i++) {
+                map.add(sessionIds[i], subscriptionIds[i]);
+            }
+            this.bySession = CollectionUtils.unmodifiableMultiValueMap(map);
+        }
+
+        int size() {
+            return sessionIds.length;
+        }
+
+        Subscribers with(String sessionId, String subscriptionId) {
+            for (int i = 0; i < sessionIds.length; i++) {
+                if (sessionIds[i].equals(sessionId) && subscriptionIds[i].equals(subscriptionId)) {
+                    return this;
+                }
+            }
+            int length = sessionIds.length;
+            String[] newSessionIds = Arrays.copyOf(sessionIds, length + 1);
+            String[] newSubscriptionIds = Arrays.copyOf(subscriptionIds, length + 1);
+            newSessionIds[length] = sessionId;
+            newSubscriptionIds[length] = subscriptionId;
+            return new Subscribers(newSessionIds, newSubscriptionIds);
+        }
+
+        // returns null when the last subscription goes, which drops the destination from the index
+        Subscribers without(String sessionId, String subscriptionId) {
+            int index = -1;
+            for (int i = 0; i < sessionIds.length; i++) {
+                if (sessionIds[i].equals(sessionId) && subscriptionIds[i].equals(subscriptionId)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return this;
+            }
+            if (sessionIds.length == 1) {
+                return null;
+            }
+
+            String[] newSessionIds = new String[sessionIds.length - 1];
+            String[] newSubscriptionIds = new String[sessionIds.length - 1];
+            System.arraycopy(sessionIds, 0, newSessionIds, 0, index);
+            System.arraycopy(subscriptionIds, 0, newSubscriptionIds, 0, index);
+            System.arraycopy(sessionIds, index + 1, newSessionIds, index, sessionIds.length - index - 1);
+            System.arraycopy(subscriptionIds, index + 1, newSubscriptionIds, index, sessionIds.length - index - 1);
+            return new Subscribers(newSessionIds, newSubscriptionIds);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.service.ChatSessionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Per-session flow control for outbound STOMP frames. A session counts as slow when frames pile up
+// for it on the outbound channel or when a single write has been stuck longer than the stall limit.
+// New MESSAGE frames for a slow session are then handled by the configured policy:
+//   drop-oldest - park frames in a small per-session queue, dropping the oldest when full
+//   disconnect  - close the session
+//   history     - drop frames and tell the client to refetch the affected groups from history
+// Spring's own send buffer and send time limits (see WebSocketConfig) remain the hard limit.
+@Component
+public class OutboundFlowControl implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    private static final String POLICY_DROP_OLDEST = "drop-oldest";
+    private static final String POLICY_DISCONNECT = "disconnect";
+    private static final String POLICY_HISTORY = "history";
+
+    // set while parked frames are put back on the outbound channel so they are not parked again
+    private static final ThreadLocal<Boolean> RELEASING = ThreadLocal.withInitial(() -> false);
+
+    @Value("${chat.ws.slow-consumer.policy:drop-oldest}")
+    private String policy;
+
+    @Value("${chat.ws.slow-consumer.stall-ms:2000}")
+    private long stallMs;
+
+    @Value("${chat.ws.slow-consumer.max-pending-frames:500}")
+    private int maxPendingFrames;
+
+    @Value("${chat.ws.slow-consumer.overflow-frames:100}")
+    private int overflowFrames;
+
+    @Autowired
+    @Lazy
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @Autowired
+    @Lazy
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Lazy
+    private WebSocketSessionMonitor webSocketSessionMonitor;
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private Counter droppedCounter;
+    private Counter disconnectCounter;
+    private Counter resyncCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("chat.ws.outbound.pending.total", sessions,
+                        s -> s.values().stream().mapToInt(SessionState::getPendingFrames).sum())
+                .description("Outbound frames waiting to be handled, summed over all sessions")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.pending.max", sessions,
+                        s -> s.values().stream().mapToInt(SessionState::getPendingFrames).max().orElse(0))
+                .description("Largest outbound backlog of a single session")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.sessions.slow", sessions,
+                        s -> s.values().stream().filter(SessionState::isSlow).count())
+                .description("Sessions currently treated as slow consumers")
+                .register(meterRegistry);
+        droppedCounter = meterRegistry.counter("chat.ws.outbound.dropped");
+        disconnectCounter = meterRegistry.counter("chat.ws.slow_consumer.disconnects");
+        resyncCounter = meterRegistry.counter("chat.ws.slow_consumer.resyncs");
+    }
+
+    // backlog of one session, also used by other per-session metrics
+    public int getPendingFrames(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        return state != null ? state.getPendingFrames() : 0;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        if (state == null) {
+            return message;
+        }
+
+        if (!RELEASING.get() && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+            if (state.isSlow()) {
+                return applyPolicy(state, message);
+            }
+            // flush what was held back first so frames keep their order
+            releaseIfRecovered(state);
+        }
+
+        state.pending.incrementAndGet();
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        if (state != null) {
+            state.pending.decrementAndGet();
+            releaseIfRecovered(state);
+        }
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (sent) {
+            return;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        if (state != null) {
+            state.pending.decrementAndGet();
+        }
+    }
+
+    private Message<?> applyPolicy(SessionState state, Message<?> message) {
+        switch (policy) {
+            case POLICY_DISCONNECT:
+                droppedCounter.increment();
+                disconnectCounter.increment();
+                state.close();
+                return null;
+            case POLICY_HISTORY:
+                droppedCounter.increment();
+                state.markStale(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+                return null;
+            case POLICY_DROP_OLDEST:
+            default:
+                if (state.park(message)) {
+                    droppedCounter.increment();
+                }
+                return null;
+        }
+    }
+
+    // once the session has caught up it gets its parked frames back, or a resync notice
+    private void releaseIfRecovered(SessionState state) {
+        if (!state.hasParked() || state.isSlow()) {
+            return;
+        }
+
+        List<Message<?>> parked = state.takeParked();
+        if (!parked.isEmpty()) {
+            RELEASING.set(true);
+            try {
+                for (Message<?> message : parked) {
+                    clientOutboundChannel.send(message);
+                }
+            } finally {
+                RELEASING.set(false);
+            }
+        }
+
+        Set<String> staleDestinations = state.takeStale();
+        if (!staleDestinations.isEmpty()) {
+            sendResync(state, staleDestinations);
+        }
+    }
+
+    private void sendResync(SessionState state, Set<String> staleDestinations) {
+        ChatSessionRegistry.SessionInfo info = chatSessionRegistry.getSession(state.sessionId);
+        if (info == null) {
+            return;
+        }
+        try {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setSessionId(state.sessionId);
+            accessor.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(info.getUser().getEmail(), "/queue/chat-resync", Map.of(
+                    "reason", "SLOW_CONSUMER",
+                    "destinations", staleDestinations
+            ), accessor.getMessageHeaders());
+            resyncCounter.increment();
+        } catch (Exception e) {
+            System.err.println("Error sending resync notice: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionState state = new SessionState(session);
+                sessions.put(session.getId(), state);
+                super.afterConnectionEstablished(state.trackedSession);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    private class SessionState {
+        private final String sessionId;
+        private final WebSocketSession session;
+        private final WebSocketSession trackedSession;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile long writeStartedAt;
+        private final ArrayDeque<Message<?>> parked = new ArrayDeque<>();
+        private final Set<String> staleDestinations = new HashSet<>();
+
+        SessionState(WebSocketSession session) {
+            this.sessionId = session.getId();
+            this.session = session;
+            this.trackedSession = new WebSocketSessionDecorator(session) {
+                @Override
+                public void sendMessage(WebSocketMessage<?> message) throws IOException {
+                    webSocketSessionMonitor.recordOutbound(message.getPayloadLength());
+                    writeStartedAt = System.nanoTime();
+                    try {
+                        super.sendMessage(message);
+                    } finally {
+                        writeStartedAt = 0;
+                    }
+                    releaseIfRecovered(SessionState.this);
+                }
+            };
+        }
+
+        int getPendingFrames() {
+            return pending.get();
+        }
+
+        boolean isSlow() {
+            long startedAt = writeStartedAt;
+            boolean stalled = startedAt != 0 && System.nanoTime() - startedAt > stallMs * 1_000_000L;
+            return stalled || pending.get() > maxPendingFrames;
+        }
+
+        synchronized boolean hasParked() {
+            return !parked.isEmpty() || !staleDestinations.isEmpty();
+        }
+
+        // returns true when the oldest parked frame had to be dropped
+        synchronized boolean park(Message<?> message) {
+            boolean dropped = false;
+            if (parked.size() >= overflowFrames) {
+                parked.pollFirst();
+                dropped = true;
+            }
+            parked.addLast(message);
+            return dropped;
+        }
+
+        synchronized List<Message<?>> takeParked() {
+            List<Message<?>> messages = new ArrayList<>(parked);
+            parked.clear();
+            return messages;
+        }
+
+        synchronized void markStale(String destination) {
+            if (destination != null) {
+                staleDestinations.add(destination);
+            }
+        }
+
+        synchronized Set<String> takeStale() {
+            Set<String> destinations = new HashSet<>(staleDestinations);
+            staleDestinations.clear();
+            return destinations;
+        }
+
+        void close() {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                System.err.println("Error closing slow session " + sessionId + ": " + e.getMessage());
+            }
+        }
+    }
+}
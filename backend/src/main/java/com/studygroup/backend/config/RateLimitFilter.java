@@ -0,0 +1,101 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.service.RateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+// REST side of the rate limiter. Runs after the security filter chain, so signed in users are
+// limited per account and anonymous calls (login, register, password reset) per client address.
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final List<String> AUTH_PATHS = List.of(
+            "/api/auth/login", "/api/auth/register", "/api/auth/forgot-password", "/api/auth/reset-password");
+
+    private static final List<String> UPLOAD_PATHS = List.of(
+            "/api/chat/*/upload", "/api/chat/*/upload-file", "/api/user/upload-avatar");
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    // only enable behind a proxy that overwrites X-Forwarded-For, otherwise clients can spoof it
+    @Value("${rate-limit.trust-forwarded-for:false}")
+    private boolean trustForwardedFor;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/") || "OPTIONS".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        String path = request.getRequestURI();
+        String policy;
+        String subject;
+        if (matches(AUTH_PATHS, path)) {
+            // always per address, the caller is not signed in yet
+            policy = RateLimiter.POLICY_AUTH;
+            subject = "ip:" + clientAddress(request);
+        } else {
+            policy = "POST".equals(request.getMethod()) && matches(UPLOAD_PATHS, path)
+                    ? RateLimiter.POLICY_UPLOAD : RateLimiter.POLICY_API;
+            subject = subjectOf(request);
+        }
+
+        long retryAfterMs = rateLimiter.tryAcquire(policy, subject);
+        if (retryAfterMs > 0) {
+            response.setStatus(429);
+            response.setHeader("Retry-After", String.valueOf((retryAfterMs + 999) / 1000));
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\":\"Too many requests, please try again later\"}");
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private boolean matches(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String subjectOf(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "user:" + authentication.getName();
+        }
+        return "ip:" + clientAddress(request);
+    }
+
+    private String clientAddress(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwardedFor = request.getHeader("X-Forwarded-For");
+            if (forwardedFor != null && !forwardedFor.isBlank()) {
+                int comma = forwardedFor.indexOf(',');
+                return (comma >= 0 ? forwardedFor.substring(0, comma) : forwardedFor).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
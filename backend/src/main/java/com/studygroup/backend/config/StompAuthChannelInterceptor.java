@@ -0,0 +1,129 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.entity.GroupMember;
+import com.studygroup.backend.entity.GroupMemberStatus;
+import com.studygroup.backend.entity.User;
+import com.studygroup.backend.repository.GroupMemberRepository;
+import com.studygroup.backend.repository.UserRepository;
+import com.studygroup.backend.service.ChatSessionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Authenticates the STOMP session once on CONNECT and checks group membership once per
+// session and group, so SUBSCRIBE and SEND frames are authorized from memory afterwards.
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    private static final Pattern GROUP_TOPIC = Pattern.compile("^/topic/group/(\\d+)(/.*)?$");
+    private static final Pattern GROUP_APP_DESTINATION = Pattern.compile("^/app/chat/(\\d+)/.+$");
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GroupMemberRepository groupMemberRepository;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private ConnectAdmissionControl connectAdmissionControl;
+
+    @Autowired
+    private WebSocketSessionMonitor webSocketSessionMonitor;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        StompCommand command = accessor.getCommand();
+        if (command == StompCommand.CONNECT) {
+            // before any token or database work, a deferred client costs almost nothing
+            connectAdmissionControl.admit();
+            authenticate(accessor);
+        } else if (command == StompCommand.SUBSCRIBE) {
+            authorize(accessor, GROUP_TOPIC);
+        } else if (command == StompCommand.SEND) {
+            authorize(accessor, GROUP_APP_DESTINATION);
+        } else if (command == StompCommand.DISCONNECT) {
+            chatSessionRegistry.remove(accessor.getSessionId());
+        }
+        return message;
+    }
+
+    private void authenticate(StompHeaderAccessor accessor) {
+        String authorizationHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            throw new RuntimeException("Missing authorization token");
+        }
+
+        String email;
+        try {
+            email = jwtUtil.extractUsername(authorizationHeader.substring(7));
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid or expired token");
+        }
+
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        accessor.setUser(new UsernamePasswordAuthenticationToken(user.getEmail(), null, Collections.emptyList()));
+        chatSessionRegistry.register(accessor.getSessionId(), user);
+
+        // SockJS frames are text only, those sessions stay on JSON
+        String format = BinaryPayloadInterceptor.negotiate(accessor.getFirstNativeHeader(BinaryPayloadInterceptor.FORMAT_HEADER));
+        if (!BinaryPayloadInterceptor.FORMAT_JSON.equals(format) && !webSocketSessionMonitor.isSockJs(accessor.getSessionId())) {
+            chatSessionRegistry.getSession(accessor.getSessionId()).setPayloadFormat(format);
+        }
+    }
+
+    private void authorize(StompHeaderAccessor accessor, Pattern groupDestination) {
+        ChatSessionRegistry.SessionInfo session = chatSessionRegistry.getSession(accessor.getSessionId());
+        if (session == null) {
+            throw new RuntimeException("Not authenticated");
+        }
+
+        String destination = accessor.getDestination();
+        if (destination == null) {
+            return;
+        }
+
+        Matcher matcher = groupDestination.matcher(destination);
+        if (!matcher.matches()) {
+            return;
+        }
+
+        Long groupId = Long.parseLong(matcher.group(1));
+        if (session.getGroups().contains(groupId)) {
+            return;
+        }
+
+        long revocations = session.getRevocations();
+        GroupMember membership = groupMemberRepository.findByGroupIdAndUserId(groupId, session.getUserId())
+                .orElse(null);
+        if (membership == null || membership.getStatus() != GroupMemberStatus.ACTIVE) {
+            throw new RuntimeException("You are not a member of this group");
+        }
+        // a revocation raced with the check, reject this frame, the next one is checked again
+        if (!session.grant(groupId, revocations)) {
+            throw new RuntimeException("You are not a member of this group");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.studygroup.backend.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.StompSubProtocolErrorHandler;
+
+import java.nio.charset.StandardCharsets;
+
+// Adds a retry-after-ms header to the ERROR frame of a deferred CONNECT so clients can back off
+// by the suggested delay. Every other error keeps Spring's default frame.
+@Component
+public class StompErrorHandler extends StompSubProtocolErrorHandler {
+
+    @Override
+    public Message<byte[]> handleClientMessageProcessingError(Message<byte[]> clientMessage, Throwable ex) {
+        ConnectAdmissionControl.ConnectDeferredException deferred = findDeferred(ex);
+        if (deferred == null) {
+            return super.handleClientMessageProcessingError(clientMessage, ex);
+        }
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+        accessor.setMessage("Server busy");
+        accessor.setNativeHeader("retry-after-ms", String.valueOf(deferred.getRetryAfterMs()));
+        accessor.setLeaveMutable(true);
+        byte[] body = deferred.getMessage().getBytes(StandardCharsets.UTF_8);
+        MessageHeaders headers = accessor.getMessageHeaders();
+        return MessageBuilder.createMessage(body, headers);
+    }
+
+    private ConnectAdmissionControl.ConnectDeferredException findDeferred(Throwable ex) {
+        Throwable current = ex;
+        while (current != null) {
+            if (current instanceof ConnectAdmissionControl.ConnectDeferredException) {
+                return (ConnectAdmissionControl.ConnectDeferredException) current;
+            }
+            current = current.getCause();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.service.ChatSessionRegistry;
+import com.studygroup.backend.service.RateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// STOMP side of the rate limiter, registered after StompAuthChannelInterceptor so the session
+// is already known. Chat sends are limited per user across all of their sessions, typing and
+// read frames share a separate, looser bucket. Frames over the limit are dropped, for sends
+// the client is told on /user/queue/errors so it can back off and retry.
+@Component
+public class StompRateLimitInterceptor implements ChannelInterceptor {
+
+    private static final Pattern CHAT_SEND = Pattern.compile("^/app/chat/\\d+/send$");
+    private static final Pattern CHAT_SIGNAL = Pattern.compile("^/app/chat/\\d+/(typing|read)$");
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    @Lazy
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.SEND || accessor.getDestination() == null) {
+            return message;
+        }
+
+        String destination = accessor.getDestination();
+        String policy;
+        if (CHAT_SEND.matcher(destination).matches()) {
+            policy = RateLimiter.POLICY_CHAT_SEND;
+        } else if (CHAT_SIGNAL.matcher(destination).matches()) {
+            policy = RateLimiter.POLICY_CHAT_SIGNAL;
+        } else {
+            return message;
+        }
+
+        ChatSessionRegistry.SessionInfo session = chatSessionRegistry.getSession(accessor.getSessionId());
+        String subject = session != null ? "user:" + session.getUserId() : "session:" + accessor.getSessionId();
+
+        long retryAfterMs = rateLimiter.tryAcquire(policy, subject);
+        if (retryAfterMs == 0) {
+            return message;
+        }
+
+        if (RateLimiter.POLICY_CHAT_SEND.equals(policy) && session != null) {
+            notifyRejected(accessor.getSessionId(), session, destination, retryAfterMs);
+        }
+        return null;
+    }
+
+    private void notifyRejected(String sessionId, ChatSessionRegistry.SessionInfo session,
+                                String destination, long retryAfterMs) {
+        try {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(sessionId);
+            headers.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(session.getUser().getEmail(), "/queue/errors", Map.of(
+                    "error", "RATE_LIMITED",
+                    "destination", destination,
+                    "retryAfterMs", retryAfterMs
+            ), headers.getMessageHeaders());
+        } catch (Exception e) {
+            System.err.println("Error sending rate limit notice: " + e.getMessage());
+        }
+    }
+}
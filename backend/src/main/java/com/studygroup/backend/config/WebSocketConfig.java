@@ -1,18 +1,136 @@
 package com.studygroup.backend.config;
 
+import com.studygroup.backend.service.ChatClusterEvents;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.HashMap;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
-public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer, SmartInitializingSingleton {
+
+    @Autowired
+    private StompAuthChannelInterceptor stompAuthChannelInterceptor;
+
+    @Autowired
+    private StompRateLimitInterceptor stompRateLimitInterceptor;
+
+    @Autowired
+    private OutboundFlowControl outboundFlowControl;
+
+    @Autowired
+    private GroupOrderedInboundExecutor groupOrderedInboundExecutor;
+
+    @Autowired
+    private WebSocketSessionMonitor webSocketSessionMonitor;
+
+    @Autowired
+    private StompErrorHandler stompErrorHandler;
+
+    @Autowired
+    private BinaryPayloadInterceptor binaryPayloadInterceptor;
+
+    @Autowired
+    private GroupTopicSubscriptionRegistry groupTopicSubscriptionRegistry;
+
+    // looked up lazily, the handler is created from this configurer; empty in relay mode
+    @Autowired
+    private ObjectProvider<SimpleBrokerMessageHandler> simpleBrokerMessageHandler;
+
+    // empty in simple mode
+    @Autowired
+    private ObjectProvider<StompBrokerRelayMessageHandler> stompBrokerRelayMessageHandler;
+
+    @Autowired
+    private ChatClusterEvents chatClusterEvents;
+
+    // "simple" for a single node, "relay" to share an external STOMP broker between nodes
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    // used for the connection opened on behalf of each WebSocket client
+    @Value("${chat.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${chat.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    // the shared connection the application itself sends broadcasts on, usually more privileged
+    @Value("${chat.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${chat.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    @Value("${chat.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    @Value("${chat.ws.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.ws.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.ws.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    // STOMP heartbeats of the simple broker, 0 disables that direction
+    @Value("${chat.ws.heartbeat.server-ms:10000}")
+    private long heartbeatServerMs;
+
+    @Value("${chat.ws.heartbeat.client-ms:10000}")
+    private long heartbeatClientMs;
+
+    @Value("${chat.ws.sockjs-heartbeat-ms:25000}")
+    private long sockJsHeartbeatMs;
+
+    @Value("${chat.broker.exact-group-registry:true}")
+    private boolean exactGroupRegistry;
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            var relay = config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relaySystemLogin)
+                    .setSystemPasscode(relaySystemPasscode)
+                    // share connected users between nodes so /user destinations resolve on any node
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            if (!relayVirtualHost.isBlank()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+        } else {
+            // the relay handles heartbeats with its clients itself
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[]{heartbeatServerMs, heartbeatClientMs})
+                    .setTaskScheduler(chatHeartbeatScheduler());
+        }
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
     }
@@ -21,9 +139,68 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
-                .withSockJS();
+                .withSockJS()
+                .setHeartbeatTime(sockJsHeartbeatMs);
 
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*");
+
+        registry.setErrorHandler(stompErrorHandler);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompAuthChannelInterceptor, stompRateLimitInterceptor);
+        // per-group ordered lanes instead of the shared inbound pool
+        registration.executor(groupOrderedInboundExecutor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // converted first, so flow control parks and counts the frames actually sent
+        registration.interceptors(binaryPayloadInterceptor, outboundFlowControl);
+    }
+
+    // hard per-session limits, a session over either one is closed by Spring
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(outboundFlowControl)
+                .addDecoratorFactory(webSocketSessionMonitor);
+    }
+
+    // swap in the exact-match registry and add the cluster event subscription before the broker
+    // starts, the registration API has no hook for either
+    @Override
+    public void afterSingletonsInstantiated() {
+        SimpleBrokerMessageHandler handler = simpleBrokerMessageHandler.getIfAvailable();
+        if (exactGroupRegistry && handler != null) {
+            handler.setSubscriptionRegistry(groupTopicSubscriptionRegistry);
+        }
+
+        StompBrokerRelayMessageHandler relay = stompBrokerRelayMessageHandler.getIfAvailable();
+        if (relay != null) {
+            // keeps the user registry and unresolved user destination subscriptions set up by Spring
+            Map<String, MessageHandler> subscriptions = new HashMap<>();
+            if (relay.getSystemSubscriptions() != null) {
+                subscriptions.putAll(relay.getSystemSubscriptions());
+            }
+            subscriptions.put(ChatClusterEvents.DESTINATION, chatClusterEvents);
+            relay.setSystemSubscriptions(subscriptions);
+        }
+    }
+
+    // dedicated scheduler so heartbeats are not delayed by @Scheduled jobs; a bean so the context
+    // starts and shuts it down, but not an autowire candidate so @Scheduled keeps resolving the same
+    // scheduler as before
+    @Bean(autowireCandidate = false)
+    public ThreadPoolTaskScheduler chatHeartbeatScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("chat-heartbeat-");
+        scheduler.setDaemon(true);
+        return scheduler;
     }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.service.ChatSessionRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tracks every WebSocket session and the last time anything (a frame or a STOMP heartbeat) came
+// in on it. With heartbeats negotiated the broker already drops clients that go quiet, this sweep
+// also catches clients that never negotiated heartbeats and half-open connections nobody reads.
+// Also publishes live-session counts and an estimate of the memory each session holds.
+@Component
+public class WebSocketSessionMonitor implements WebSocketHandlerDecoratorFactory {
+
+    // rough fixed cost of a session: the session objects, STOMP decoder state and registry entries
+    private static final long SESSION_OVERHEAD_BYTES = 16 * 1024;
+    private static final long GROUP_OVERHEAD_BYTES = 512;
+
+    @Value("${chat.ws.idle-timeout-ms:1800000}")
+    private long idleTimeoutMs;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private OutboundFlowControl outboundFlowControl;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+
+    // running average size of outbound frames, used for the buffered part of the estimate
+    private final AtomicLong outboundBytes = new AtomicLong();
+    private final AtomicLong outboundFrames = new AtomicLong();
+
+    private DistributionSummary sessionBytes;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("chat.ws.sessions.live", sessions, Map::size)
+                .description("Open WebSocket connections")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.sessions.stomp", chatSessionRegistry, ChatSessionRegistry::getSessionCount)
+                .description("Authenticated STOMP sessions")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.sessions.estimated.bytes", this, WebSocketSessionMonitor::estimateTotalBytes)
+                .description("Estimated memory held by all sessions")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        sessionBytes = DistributionSummary.builder("chat.ws.session.estimated.bytes")
+                .description("Estimated memory held per session, sampled on every idle sweep")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        meterRegistry.counter("chat.ws.sessions.evicted");
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sessions.put(session.getId(), new TrackedSession(session));
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                TrackedSession tracked = sessions.get(session.getId());
+                if (tracked != null) {
+                    tracked.lastActivity = System.currentTimeMillis();
+                }
+                super.handleMessage(session, message);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    // SockJS transports only carry text, so binary frames cannot be sent to them
+    public boolean isSockJs(String sessionId) {
+        TrackedSession tracked = sessionId != null ? sessions.get(sessionId) : null;
+        return tracked != null && WebSocketSessionDecorator.unwrap(tracked.session) instanceof SockJsSession;
+    }
+
+    // called by OutboundFlowControl for every frame written
+    public void recordOutbound(int payloadLength) {
+        outboundBytes.addAndGet(payloadLength);
+        outboundFrames.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.ws.idle-check-interval-ms:30000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (TrackedSession tracked : sessions.values()) {
+            sessionBytes.record(estimateBytes(tracked.session.getId()));
+
+            if (now - tracked.lastActivity <= idleTimeoutMs) {
+                continue;
+            }
+            try {
+                meterRegistry.counter("chat.ws.sessions.evicted").increment();
+                tracked.session.close(CloseStatus.GOING_AWAY.withReason("Idle timeout"));
+            } catch (IOException e) {
+                System.err.println("Error closing idle session " + tracked.session.getId() + ": " + e.getMessage());
+            } finally {
+                sessions.remove(tracked.session.getId());
+            }
+        }
+    }
+
+    private double estimateTotalBytes() {
+        long total = 0;
+        for (String sessionId : sessions.keySet()) {
+            total += estimateBytes(sessionId);
+        }
+        return total;
+    }
+
+    private long estimateBytes(String sessionId) {
+        long frames = outboundFrames.get();
+        long averageFrame = frames > 0 ? outboundBytes.get() / frames : 0;
+
+        ChatSessionRegistry.SessionInfo info = chatSessionRegistry.getSession(sessionId);
+        int groups = info != null ? info.getGroups().size() : 0;
+        return SESSION_OVERHEAD_BYTES
+                + groups * GROUP_OVERHEAD_BYTES
+                + outboundFlowControl.getPendingFrames(sessionId) * averageFrame;
+    }
+
+    private static class TrackedSession {
+        private final WebSocketSession session;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        TrackedSession(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
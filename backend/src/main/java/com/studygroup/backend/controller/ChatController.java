@@ -1,35 +1,72 @@
 // ChatController.java (Updated with link support)
 package com.studygroup.backend.controller;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.studygroup.backend.entity.*;
+import com.studygroup.backend.service.ChatBroadcastService;
+import com.studygroup.backend.service.ChatDedupeService;
+import com.studygroup.backend.service.ChatExportService;
+import com.studygroup.backend.service.ChatInboxService;
+import com.studygroup.backend.service.ChatPresenceService;
 import com.studygroup.backend.service.ChatService;
+import com.studygroup.backend.service.ChatSessionRegistry;
 import com.studygroup.backend.service.GroupService;
+import com.studygroup.backend.service.LinkPreviewService;
 import com.studygroup.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/chat")
 @CrossOrigin(origins = "https://edunion.onrender.com")
 public class ChatController {
 
-    @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    // hits a search may page through
+    private static final int MAX_SEARCH_DEPTH = 1000;
 
     @Autowired
     private ChatService chatService;
 
+    @Autowired
+    private ChatBroadcastService chatBroadcastService;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private ChatExportService chatExportService;
+
+    @Autowired
+    private ChatPresenceService chatPresenceService;
+
+    @Autowired
+    private ChatInboxService chatInboxService;
+
+    @Autowired
+    private LinkPreviewService linkPreviewService;
+
+    @Autowired
+    private ChatDedupeService chatDedupeService;
+
     @Autowired
     private UserService userService;
 
@@ -38,24 +75,135 @@ public class ChatController {
 
     @MessageMapping("/chat/{groupId}/send")
     public void sendMessage(@DestinationVariable Long groupId,
-                            @Payload ChatMessageRequest messageRequest) {
+                            @Payload ChatMessageRequest messageRequest,
+                            SimpMessageHeaderAccessor headerAccessor) {
         try {
-            ChatMessage message = chatService.saveMessage(groupId, messageRequest);
+            // sender comes from the authenticated session, not from the payload
+            ChatSessionRegistry.SessionInfo session = chatSessionRegistry.getSession(headerAccessor.getSessionId());
+            if (session == null) {
+                throw new RuntimeException("Not authenticated");
+            }
+
+            // a retried send is acknowledged again instead of being stored and broadcast twice
+            String clientMessageId = messageRequest.getClientMessageId();
+            if (clientMessageId != null) {
+                if (clientMessageId.isBlank() || clientMessageId.length() > ChatDedupeService.MAX_CLIENT_ID_LENGTH) {
+                    throw new RuntimeException("Invalid client message id");
+                }
+                ChatDedupeService.Entry earlier = chatDedupeService.claim(groupId, session.getUserId(), clientMessageId);
+                if (earlier != null) {
+                    // acked once the first attempt settles, without holding this inbound thread
+                    chatDedupeService.messageIdOf(earlier).thenAccept(messageId -> {
+                        try {
+                            acknowledgeDuplicate(session, groupId, clientMessageId, messageId);
+                        } catch (Exception e) {
+                            System.err.println("Error acknowledging duplicate message: " + e.getMessage());
+                        }
+                    });
+                    return;
+                }
+            }
+
+            ChatMessage message;
+            try {
+                message = chatService.saveMessage(groupId, session.getUser(), messageRequest,
+                        headerAccessor.getSessionId());
+            } catch (DataIntegrityViolationException e) {
+                // older than the dedupe window, the unique index caught it
+                ChatMessage existing = clientMessageId != null
+                        ? chatService.findByClientMessageId(groupId, session.getUserId(), clientMessageId).orElse(null)
+                        : null;
+                if (existing == null) {
+                    if (clientMessageId != null) {
+                        chatDedupeService.release(groupId, session.getUserId(), clientMessageId);
+                    }
+                    throw e;
+                }
+                chatDedupeService.complete(groupId, session.getUserId(), clientMessageId, existing.getId());
+                chatDedupeService.recordDuplicate();
+                acknowledgeDuplicate(session, groupId, clientMessageId, existing.getId());
+                return;
+            } catch (RuntimeException e) {
+                if (clientMessageId != null) {
+                    chatDedupeService.release(groupId, session.getUserId(), clientMessageId);
+                }
+                throw e;
+            }
+            if (clientMessageId != null) {
+                chatDedupeService.complete(groupId, session.getUserId(), clientMessageId, message.getId());
+            }
 
             // sned the message to all members of this group
-            messagingTemplate.convertAndSend("/topic/group/" + groupId, message);
+            chatBroadcastService.broadcast(groupId, message);
+
+            // your own message never counts as unread
+            chatInboxService.markRead(session.getUserId(), groupId, message.getId());
+
+            // preview follows as a separate frame once the link has been fetched
+            linkPreviewService.requestPreview(groupId, message);
 
         } catch (Exception e) {
             System.err.println("Error sending message: " + e.getMessage());
         }
     }
 
+    // without a message id the first attempt is still being saved: IN_FLIGHT tells the client to
+    // keep waiting for that attempt's own broadcast or PERSISTED ack instead of sending again
+    private void acknowledgeDuplicate(ChatSessionRegistry.SessionInfo session, Long groupId,
+                                      String clientMessageId, Long messageId) {
+        Map<String, Object> ack = new HashMap<>();
+        ack.put("messageId", messageId);
+        ack.put("groupId", groupId);
+        ack.put("clientMessageId", clientMessageId);
+        ack.put("status", messageId != null ? "DUPLICATE" : "IN_FLIGHT");
+        chatBroadcastService.sendToUser(session.getUser().getEmail(), "/queue/chat-ack", ack);
+    }
+
+    // typing indicator, coalesced into the group's presence updates
+    @MessageMapping("/chat/{groupId}/typing")
+    public void typing(@DestinationVariable Long groupId,
+                       @Payload TypingRequest typingRequest,
+                       SimpMessageHeaderAccessor headerAccessor) {
+        ChatSessionRegistry.SessionInfo session = chatSessionRegistry.getSession(headerAccessor.getSessionId());
+        if (session != null) {
+            chatPresenceService.setTyping(groupId, session.getUser(), typingRequest.isTyping());
+        }
+    }
+
+    // read marker, the client sends the newest message id it has displayed
+    @MessageMapping("/chat/{groupId}/read")
+    public void markRead(@DestinationVariable Long groupId,
+                         @Payload ReadRequest readRequest,
+                         SimpMessageHeaderAccessor headerAccessor) {
+        ChatSessionRegistry.SessionInfo session = chatSessionRegistry.getSession(headerAccessor.getSessionId());
+        if (session != null) {
+            chatInboxService.markRead(session.getUserId(), groupId, readRequest.getMessageId());
+        }
+    }
+
+    // last message and unread count of every group of the user, newest activity first
+    @GetMapping("/inbox")
+    public ResponseEntity<?> getInbox(@AuthenticationPrincipal UserDetails userDetails) {
+        try {
+            User user = userService.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+
+            return ResponseEntity.ok(Map.of("groups", chatInboxService.getInbox(user.getId())));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // message history
     @GetMapping("/{groupId}/messages")
     public ResponseEntity<?> getGroupMessages(@AuthenticationPrincipal UserDetails userDetails,
                                               @PathVariable Long groupId,
                                               @RequestParam(defaultValue = "0") int page,
-                                              @RequestParam(defaultValue = "50") int size) {
+                                              @RequestParam(defaultValue = "50") int size,
+                                              @RequestParam(required = false) Long before,
+                                              @RequestParam(required = false) Long after,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Long since) {
         try {
             User user = userService.findByEmail(userDetails.getUsername())
                     .orElseThrow(() -> new RuntimeException("User not found"));
@@ -66,12 +214,114 @@ public class ChatController {
                 throw new RuntimeException("You are not a member of this group");
             }
 
-            List<ChatMessage> messages = chatService.getGroupMessages(groupId, page, size);
+            if (size < 1) {
+                throw new RuntimeException("Size must be at least 1");
+            }
 
-            return ResponseEntity.ok(Map.of(
-                    "message", "Messages retrieved successfully",
-                    "messages", messages
-            ));
+            // resume after a reconnect, only what was missed since the last seen sequence number
+            if (since != null) {
+                ChatService.GapFill gapFill = chatService.getMessagesSince(groupId, since, size);
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("message", "Messages retrieved successfully");
+                response.put("messages", toPayloads(gapFill.getMessages()));
+                response.put("lastSeq", gapFill.getLastSeq());
+                response.put("hasMore", gapFill.isHasMore());
+                return ResponseEntity.ok(response);
+            }
+
+            // old offset paging is only kept for clients still sending page > 0
+            if (page > 0 && before == null && after == null && cursor == null) {
+                List<ChatMessage> messages = chatService.getGroupMessages(groupId, page, size);
+
+                return ResponseEntity.ok(Map.of(
+                        "message", "Messages retrieved successfully",
+                        "messages", toPayloads(messages)
+                ));
+            }
+
+            ChatService.MessagePage messagePage = cursor != null
+                    ? chatService.getGroupMessagesPage(groupId, cursor, size)
+                    : chatService.getGroupMessagesPage(groupId, before, after, size);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Messages retrieved successfully");
+            response.put("messages", toPayloads(messagePage.getMessages()));
+            response.put("nextCursor", messagePage.getNextCursor());
+            response.put("prevCursor", messagePage.getPrevCursor());
+            response.put("hasMore", messagePage.isHasMore());
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // full-text search over the group's chat history
+    @GetMapping("/{groupId}/search")
+    public ResponseEntity<?> searchMessages(@AuthenticationPrincipal UserDetails userDetails,
+                                            @PathVariable Long groupId,
+                                            @RequestParam("q") String query,
+                                            @RequestParam(defaultValue = "0") int page,
+                                            @RequestParam(defaultValue = "20") int size) {
+        try {
+            User user = userService.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+
+            GroupMember membership = groupService.getUserMembershipStatus(user.getId(), groupId);
+            if (membership == null || membership.getStatus() != GroupMemberStatus.ACTIVE) {
+                throw new RuntimeException("You are not a member of this group");
+            }
+
+            if (page < 0 || size < 1 || size > 100) {
+                throw new RuntimeException("Invalid page or size");
+            }
+            // every page is ranked from the top, deep pages cost as much as one huge page
+            if ((long) (page + 1) * size > MAX_SEARCH_DEPTH) {
+                throw new RuntimeException("Search results are limited to the first " + MAX_SEARCH_DEPTH + " hits");
+            }
+
+            Map<String, Object> response = new HashMap<>(chatService.searchGroupMessages(groupId, query, page, size));
+            response.put("message", "Search completed successfully");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // NDJSON export of the whole group history, group admins only
+    @GetMapping("/{groupId}/export")
+    public ResponseEntity<?> exportMessages(@AuthenticationPrincipal UserDetails userDetails,
+                                            @PathVariable Long groupId,
+                                            @RequestParam(defaultValue = "false") boolean gzip) {
+        try {
+            User user = userService.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+
+            GroupMember membership = groupService.getUserMembershipStatus(user.getId(), groupId);
+            if (membership == null || membership.getStatus() != GroupMemberStatus.ACTIVE) {
+                throw new RuntimeException("You are not a member of this group");
+            }
+            if (membership.getRole() != GroupMemberRole.ADMIN) {
+                throw new RuntimeException("Only group admins can export chat history");
+            }
+
+            StreamingResponseBody body = out -> {
+                if (gzip) {
+                    GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192);
+                    chatExportService.exportGroupMessages(groupId, gzipOut);
+                    gzipOut.finish();
+                } else {
+                    chatExportService.exportGroupMessages(groupId, out);
+                }
+            };
+
+            String fileName = "group-" + groupId + "-chat.ndjson" + (gzip ? ".gz" : "");
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                    .contentType(gzip ? MediaType.parseMediaType("application/gzip")
+                            : MediaType.parseMediaType("application/x-ndjson"))
+                    .body(body);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -94,7 +344,8 @@ public class ChatController {
             ChatMessage fileMessage = chatService.saveFileMessage(groupId, user.getId(), request);
 
             // send file to all members
-            messagingTemplate.convertAndSend("/topic/group/" + groupId, fileMessage);
+            chatBroadcastService.broadcast(groupId, fileMessage);
+            chatInboxService.markRead(user.getId(), groupId, fileMessage.getId());
 
             return ResponseEntity.ok(Map.of(
                     "message", "File uploaded and sent successfully",
@@ -123,7 +374,9 @@ public class ChatController {
                     request.getUrl(), request.getTitle());
 
             // send the link message to all members
-            messagingTemplate.convertAndSend("/topic/group/" + groupId, linkMessage);
+            chatBroadcastService.broadcast(groupId, linkMessage);
+            chatInboxService.markRead(user.getId(), groupId, linkMessage.getId());
+            linkPreviewService.requestPreview(groupId, linkMessage);
 
             return ResponseEntity.ok(Map.of(
                     "message", "Link shared successfully",
@@ -134,8 +387,13 @@ public class ChatController {
         }
     }
 
+    private List<ChatMessagePayload> toPayloads(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessagePayload::from).collect(Collectors.toList());
+    }
+
     // Request classes
     public static class ChatMessageRequest {
+        // ignored by the server, the sender is taken from the STOMP session
         private Long senderId;
         private String content;
         private MessageType type = MessageType.TEXT;
@@ -143,6 +401,8 @@ public class ChatController {
         private String fileName;
         private String fileType;
         private Long fileSize;
+        // generated by the client per message and reused on retries
+        private String clientMessageId;
 
         public Long getSenderId() { return senderId; }
         public void setSenderId(Long senderId) { this.senderId = senderId; }
@@ -164,6 +424,105 @@ public class ChatController {
 
         public Long getFileSize() { return fileSize; }
         public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
+
+        public String getClientMessageId() { return clientMessageId; }
+        public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
+    }
+
+    // compact wire format for chat frames, only the fields the chat UI renders
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ChatMessagePayload {
+        private Long id;
+        private Ref group;
+        private Ref sender;
+        private String content;
+        private MessageType type;
+        private String fileUrl;
+        private String fileName;
+        private String fileType;
+        private Long fileSize;
+        private String clientMessageId;
+        private Long seq;
+        private LocalDateTime timestamp;
+
+        public static ChatMessagePayload from(ChatMessage message) {
+            ChatMessagePayload payload = new ChatMessagePayload();
+            payload.setId(message.getId());
+            // group may be an uninitialized reference, only its id is safe to read
+            payload.setGroup(new Ref(message.getGroup().getId(), null, null));
+            payload.setSender(new Ref(message.getSender().getId(), message.getSender().getName(),
+                    message.getSender().getAvatarUrl()));
+            payload.setContent(message.getContent());
+            payload.setType(message.getType());
+            payload.setFileUrl(message.getFileUrl());
+            payload.setFileName(message.getFileName());
+            payload.setFileType(message.getFileType());
+            payload.setFileSize(message.getFileSize());
+            payload.setClientMessageId(message.getClientMessageId());
+            payload.setSeq(message.getSeq());
+            payload.setTimestamp(message.getTimestamp());
+            return payload;
+        }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public Ref getGroup() { return group; }
+        public void setGroup(Ref group) { this.group = group; }
+
+        public Ref getSender() { return sender; }
+        public void setSender(Ref sender) { this.sender = sender; }
+
+        public String getContent() { return content; }
+        public void setContent(String content) { this.content = content; }
+
+        public MessageType getType() { return type; }
+        public void setType(MessageType type) { this.type = type; }
+
+        public String getFileUrl() { return fileUrl; }
+        public void setFileUrl(String fileUrl) { this.fileUrl = fileUrl; }
+
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+
+        public String getFileType() { return fileType; }
+        public void setFileType(String fileType) { this.fileType = fileType; }
+
+        public Long getFileSize() { return fileSize; }
+        public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
+
+        public String getClientMessageId() { return clientMessageId; }
+        public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
+
+        public Long getSeq() { return seq; }
+        public void setSeq(Long seq) { this.seq = seq; }
+
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Ref {
+        private Long id;
+        private String name;
+        private String avatarUrl;
+
+        public Ref() {}
+
+        public Ref(Long id, String name, String avatarUrl) {
+            this.id = id;
+            this.name = name;
+            this.avatarUrl = avatarUrl;
+        }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getAvatarUrl() { return avatarUrl; }
+        public void setAvatarUrl(String avatarUrl) { this.avatarUrl = avatarUrl; }
     }
 
     public static class FileUploadRequest {
@@ -189,6 +548,20 @@ public class ChatController {
         public void setCaption(String caption) { this.caption = caption; }
     }
 
+    public static class TypingRequest {
+        private boolean typing;
+
+        public boolean isTyping() { return typing; }
+        public void setTyping(boolean typing) { this.typing = typing; }
+    }
+
+    public static class ReadRequest {
+        private Long messageId;
+
+        public Long getMessageId() { return messageId; }
+        public void setMessageId(Long messageId) { this.messageId = messageId; }
+    }
+
     public static class ShareLinkRequest {
         private String url;
         private String title;
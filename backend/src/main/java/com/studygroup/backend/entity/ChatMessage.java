@@ -1,10 +1,19 @@
 package com.studygroup.backend.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        @Index(name = "idx_chat_messages_group_id_id", columnList = "group_id, id")
+}, uniqueConstraints = {
+        // retried sends carry the same client id, rows without one (NULL) are not constrained
+        @UniqueConstraint(name = "uk_chat_messages_group_sender_client_id",
+                columnNames = {"group_id", "sender_id", "client_message_id"}),
+        // per-group sequence, also serves the ?since= gap-fill range scan
+        @UniqueConstraint(name = "uk_chat_messages_group_seq", columnNames = {"group_id", "seq"})
+})
 public class ChatMessage {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -30,9 +39,20 @@ public class ChatMessage {
     private String fileType;
     private Long fileSize;
 
+    @Column(name = "client_message_id", length = 64)
+    private String clientMessageId;
+
+    @Column(name = "seq")
+    private Long seq;
+
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    // STOMP session the message was sent from, the durability ack goes back to that session only
+    @Transient
+    @JsonIgnore
+    private String senderSessionId;
+
     @PrePersist
     protected void onCreate() {
         timestamp = LocalDateTime.now();
@@ -74,6 +94,15 @@ public class ChatMessage {
     public Long getFileSize() { return fileSize; }
     public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
 
+    public String getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
+
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
+
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    public String getSenderSessionId() { return senderSessionId; }
+    public void setSenderSessionId(String senderSessionId) { this.senderSessionId = senderSessionId; }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.studygroup.backend.entity;
+
+import jakarta.persistence.*;
+
+// How far a user has read in a group. readCount is the group's message count at the read
+// position, so unread = summary.messageCount - readCount without counting rows.
+@Entity
+@Table(name = "chat_read_states", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"user_id", "group_id"})
+})
+public class ChatReadState {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "group_id", nullable = false)
+    private Long groupId;
+
+    @Column(name = "last_read_message_id", nullable = false)
+    private Long lastReadMessageId;
+
+    @Column(name = "read_count", nullable = false)
+    private Long readCount = 0L;
+
+    public ChatReadState() {}
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getGroupId() { return groupId; }
+    public void setGroupId(Long groupId) { this.groupId = groupId; }
+
+    public Long getLastReadMessageId() { return lastReadMessageId; }
+    public void setLastReadMessageId(Long lastReadMessageId) { this.lastReadMessageId = lastReadMessageId; }
+
+    public Long getReadCount() { return readCount; }
+    public void setReadCount(Long readCount) { this.readCount = readCount; }
+}
@@ -0,0 +1,61 @@
+package com.studygroup.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Denormalized "last message" of a group plus a running message count, kept up to date on every
+// chat insert so the inbox never has to scan chat_messages.
+@Entity
+@Table(name = "group_chat_summaries")
+public class GroupChatSummary {
+    @Id
+    @Column(name = "group_id")
+    private Long groupId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "last_sender_id")
+    private Long lastSenderId;
+
+    @Column(name = "last_sender_name")
+    private String lastSenderName;
+
+    @Column(name = "last_message_preview", length = 200)
+    private String lastMessagePreview;
+
+    @Column(name = "last_message_type")
+    private String lastMessageType;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "message_count", nullable = false)
+    private Long messageCount = 0L;
+
+    public GroupChatSummary() {}
+
+    public Long getGroupId() { return groupId; }
+    public void setGroupId(Long groupId) { this.groupId = groupId; }
+
+    public Long getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(Long lastMessageId) { this.lastMessageId = lastMessageId; }
+
+    public Long getLastSenderId() { return lastSenderId; }
+    public void setLastSenderId(Long lastSenderId) { this.lastSenderId = lastSenderId; }
+
+    public String getLastSenderName() { return lastSenderName; }
+    public void setLastSenderName(String lastSenderName) { this.lastSenderName = lastSenderName; }
+
+    public String getLastMessagePreview() { return lastMessagePreview; }
+    public void setLastMessagePreview(String lastMessagePreview) { this.lastMessagePreview = lastMessagePreview; }
+
+    public String getLastMessageType() { return lastMessageType; }
+    public void setLastMessageType(String lastMessageType) { this.lastMessageType = lastMessageType; }
+
+    public LocalDateTime getLastMessageAt() { return lastMessageAt; }
+    public void setLastMessageAt(LocalDateTime lastMessageAt) { this.lastMessageAt = lastMessageAt; }
+
+    public Long getMessageCount() { return messageCount; }
+    public void setMessageCount(Long messageCount) { this.messageCount = messageCount; }
+}
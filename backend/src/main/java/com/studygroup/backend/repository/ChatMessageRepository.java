@@ -10,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
@@ -21,5 +22,22 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     @Query("SELECT cm FROM ChatMessage cm WHERE cm.group = :group ORDER BY cm.timestamp DESC")
     List<ChatMessage> findLatestMessages(@Param("group") Group group, Pageable pageable);
 
+    // keyset (seek) queries on (group_id, id), returned as List so no count query is issued
+    List<ChatMessage> findByGroupIdOrderByIdDesc(Long groupId, Pageable pageable);
+
+    List<ChatMessage> findByGroupIdAndIdLessThanOrderByIdDesc(Long groupId, Long beforeId, Pageable pageable);
+
+    List<ChatMessage> findByGroupIdAndIdGreaterThanOrderByIdAsc(Long groupId, Long afterId, Pageable pageable);
+
+    // oldest messages first, read by the cold archive job
+    List<ChatMessage> findByGroupIdOrderByIdAsc(Long groupId, Pageable pageable);
+
+    // gap fill after a reconnect, served by the unique (group_id, seq) index
+    List<ChatMessage> findByGroupIdAndSeqGreaterThanOrderBySeqAsc(Long groupId, Long seq, Pageable pageable);
+
+    Optional<ChatMessage> findByGroupIdAndSenderIdAndClientMessageId(Long groupId, Long senderId, String clientMessageId);
+
+    long countByGroupIdAndIdLessThanEqual(Long groupId, Long id);
+
     void deleteByGroup(Group group);
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.studygroup.backend.repository;
+
+import com.studygroup.backend.entity.ChatReadState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChatReadStateRepository extends JpaRepository<ChatReadState, Long> {
+
+    // read markers only ever move forward
+    @Modifying
+    @Query(value = "INSERT INTO chat_read_states (user_id, group_id, last_read_message_id, read_count) " +
+            "VALUES (:userId, :groupId, :messageId, :readCount) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "read_count = IF(VALUES(last_read_message_id) > last_read_message_id, VALUES(read_count), read_count), " +
+            "last_read_message_id = GREATEST(last_read_message_id, VALUES(last_read_message_id))",
+            nativeQuery = true)
+    void advance(@Param("userId") Long userId,
+                 @Param("groupId") Long groupId,
+                 @Param("messageId") Long messageId,
+                 @Param("readCount") long readCount);
+
+    @Modifying
+    @Query("DELETE FROM ChatReadState r WHERE r.groupId = :groupId")
+    void deleteByGroupId(@Param("groupId") Long groupId);
+}
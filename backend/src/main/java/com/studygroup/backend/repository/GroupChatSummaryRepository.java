@@ -0,0 +1,65 @@
+package com.studygroup.backend.repository;
+
+import com.studygroup.backend.entity.GroupChatSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface GroupChatSummaryRepository extends JpaRepository<GroupChatSummary, Long> {
+
+    // adds messageCount messages to the group, the "last message" columns only move forward
+    @Modifying
+    @Query(value = "INSERT INTO group_chat_summaries (group_id, last_message_id, last_sender_id, last_sender_name, " +
+            "last_message_preview, last_message_type, last_message_at, message_count) " +
+            "VALUES (:groupId, :messageId, :senderId, :senderName, :preview, :type, :sentAt, :messageCount) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "last_sender_id = IF(VALUES(last_message_id) > last_message_id, VALUES(last_sender_id), last_sender_id), " +
+            "last_sender_name = IF(VALUES(last_message_id) > last_message_id, VALUES(last_sender_name), last_sender_name), " +
+            "last_message_preview = IF(VALUES(last_message_id) > last_message_id, VALUES(last_message_preview), last_message_preview), " +
+            "last_message_type = IF(VALUES(last_message_id) > last_message_id, VALUES(last_message_type), last_message_type), " +
+            "last_message_at = IF(VALUES(last_message_id) > last_message_id, VALUES(last_message_at), last_message_at), " +
+            "message_count = message_count + VALUES(message_count), " +
+            "last_message_id = GREATEST(last_message_id, VALUES(last_message_id))",
+            nativeQuery = true)
+    void recordMessages(@Param("groupId") Long groupId,
+                        @Param("messageId") Long messageId,
+                        @Param("senderId") Long senderId,
+                        @Param("senderName") String senderName,
+                        @Param("preview") String preview,
+                        @Param("type") String type,
+                        @Param("sentAt") LocalDateTime sentAt,
+                        @Param("messageCount") long messageCount);
+
+    // one query for the whole inbox: every active group of the user with its summary and unread count
+    @Query(value = "SELECT g.id AS groupId, g.name AS groupName, s.last_message_id AS lastMessageId, " +
+            "s.last_sender_id AS lastSenderId, s.last_sender_name AS lastSenderName, " +
+            "s.last_message_preview AS lastMessagePreview, s.last_message_type AS lastMessageType, " +
+            "s.last_message_at AS lastMessageAt, " +
+            "GREATEST(COALESCE(s.message_count, 0) - COALESCE(r.read_count, 0), 0) AS unreadCount " +
+            "FROM group_members gm " +
+            "JOIN study_groups g ON g.id = gm.group_id " +
+            "LEFT JOIN group_chat_summaries s ON s.group_id = gm.group_id " +
+            "LEFT JOIN chat_read_states r ON r.group_id = gm.group_id AND r.user_id = gm.user_id " +
+            "WHERE gm.user_id = :userId AND gm.status = 'ACTIVE' " +
+            "ORDER BY s.last_message_at IS NULL, s.last_message_at DESC",
+            nativeQuery = true)
+    List<InboxEntry> findInbox(@Param("userId") Long userId);
+
+    interface InboxEntry {
+        Long getGroupId();
+        String getGroupName();
+        Long getLastMessageId();
+        Long getLastSenderId();
+        String getLastSenderName();
+        String getLastMessagePreview();
+        String getLastMessageType();
+        LocalDateTime getLastMessageAt();
+        Long getUnreadCount();
+    }
+}
@@ -40,6 +40,10 @@ public interface GroupMemberRepository extends JpaRepository<GroupMember, Long>
     @Query("SELECT gm FROM GroupMember gm WHERE gm.group.id = :groupId AND gm.status = 'ACTIVE'")
     List<GroupMember> findActiveMembersByGroupId(@Param("groupId") Long groupId);
 
+    // [userId, email] of active members, without loading the user entities
+    @Query("SELECT gm.user.id, gm.user.email FROM GroupMember gm WHERE gm.group.id = :groupId AND gm.status = 'ACTIVE'")
+    List<Object[]> findActiveMemberEmailsByGroupId(@Param("groupId") Long groupId);
+
     @Query("SELECT gm FROM GroupMember gm WHERE gm.group.id = :groupId AND gm.user.id = :userId")
     Optional<GroupMember> findByGroupIdAndUserIdWithStatus(@Param("groupId") Long groupId, @Param("userId") Long userId);
 }
\ No newline at end of file
@@ -0,0 +1,586 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Cold archive for old chat messages. A scheduled job moves the oldest messages of each group out
+// of chat_messages into immutable segment files of deflate-compressed blocks, with a sparse index
+// (first id, last id, count and offset of every block) at the end of each file. Only a prefix in id
+// order is archived, so every id up to the group's archive boundary lives in the archive and
+// everything newer in the table. Reads memory-map the segments and only inflate the blocks a page
+// actually touches; ChatService falls back here when a page reaches past the table. File names
+// carry the id range and the highest seq of the segment, so sequence numbers of a group whose
+// history is entirely archived continue after a restart without opening any file.
+@Service
+public class ChatArchiveService {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int SEGMENT_MAGIC = 0x43484131;
+    // int block count + long index offset + int magic
+    private static final int TRAILER_BYTES = 16;
+    // long first id + long last id + int count + int offset
+    private static final int INDEX_ENTRY_BYTES = 24;
+
+    @Value("${chat.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.archive.dir:data/chat-archive}")
+    private String directory;
+
+    @Value("${chat.archive.older-than-days:90}")
+    private int olderThanDays;
+
+    @Value("${chat.archive.segment-messages:2000}")
+    private int segmentMessages;
+
+    @Value("${chat.archive.block-messages:64}")
+    private int blockMessages;
+
+    @Value("${chat.archive.max-open-segments:64}")
+    private int maxOpenSegments;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // groupId -> segments oldest first, replaced as a whole when a segment is added
+    private final Map<Long, List<SegmentRef>> groups = new ConcurrentHashMap<>();
+
+    // access ordered, the least recently read segment is unmapped first
+    private final LinkedHashMap<Path, Segment> openSegments = new LinkedHashMap<>(16, 0.75f, true);
+
+    private Counter archivedCounter;
+    private Counter blocksReadCounter;
+
+    @PostConstruct
+    public void init() {
+        archivedCounter = meterRegistry.counter("chat.archive.messages.archived");
+        blocksReadCounter = meterRegistry.counter("chat.archive.blocks.read");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // highest archived id of the group, 0 when nothing is archived
+    public long boundary(Long groupId) {
+        if (!enabled) {
+            return 0;
+        }
+        List<SegmentRef> segments = segments(groupId);
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).lastId;
+    }
+
+    // highest archived seq of the group, 0 when nothing is archived
+    public long maxSeq(Long groupId) {
+        if (!enabled) {
+            return 0;
+        }
+        long maxSeq = 0;
+        for (SegmentRef ref : segments(groupId)) {
+            maxSeq = Math.max(maxSeq, ref.maxSeq);
+        }
+        return maxSeq;
+    }
+
+    // newest first, archived messages with id < beforeId (or the newest archived when null)
+    public List<ChatMessage> read(Long groupId, Long beforeId, int limit) {
+        List<ChatMessage> result = new ArrayList<>();
+        if (!enabled || limit <= 0) {
+            return result;
+        }
+
+        List<SegmentRef> segments = segments(groupId);
+        for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+            SegmentRef ref = segments.get(i);
+            if (beforeId != null && ref.firstId >= beforeId) {
+                continue;
+            }
+            Segment segment = open(ref);
+            for (int block = segment.blockCount() - 1; block >= 0 && result.size() < limit; block--) {
+                if (beforeId != null && segment.firstIds[block] >= beforeId) {
+                    continue;
+                }
+                List<ChatMessage> messages = segment.readBlock(block);
+                for (int j = messages.size() - 1; j >= 0 && result.size() < limit; j--) {
+                    if (beforeId == null || messages.get(j).getId() < beforeId) {
+                        result.add(messages.get(j));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // seq order, archived messages with seq > sinceSeq for a client resuming after a long absence.
+    // Segments whose highest seq is not past it are skipped without being opened.
+    public List<ChatMessage> readSince(Long groupId, long sinceSeq, int limit) {
+        List<ChatMessage> result = new ArrayList<>();
+        if (!enabled || limit <= 0) {
+            return result;
+        }
+
+        for (SegmentRef ref : segments(groupId)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (ref.maxSeq <= sinceSeq) {
+                continue;
+            }
+            Segment segment = open(ref);
+            for (int block = 0; block < segment.blockCount() && result.size() < limit; block++) {
+                for (ChatMessage message : segment.readBlock(block)) {
+                    if (message.getSeq() != null && message.getSeq() > sinceSeq && result.size() < limit) {
+                        result.add(message);
+                    }
+                }
+            }
+        }
+        // ids and seqs of concurrent sends can be assigned in opposite orders
+        result.sort(Comparator.comparingLong(ChatMessage::getSeq));
+        return result;
+    }
+
+    // newest first, skipping the newest offset archived messages; whole blocks are skipped by their count
+    public List<ChatMessage> readOffset(Long groupId, long offset, int limit) {
+        List<ChatMessage> result = new ArrayList<>();
+        if (!enabled || limit <= 0) {
+            return result;
+        }
+
+        long skip = offset;
+        List<SegmentRef> segments = segments(groupId);
+        for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+            Segment segment = open(segments.get(i));
+            for (int block = segment.blockCount() - 1; block >= 0 && result.size() < limit; block--) {
+                if (skip >= segment.counts[block]) {
+                    skip -= segment.counts[block];
+                    continue;
+                }
+                List<ChatMessage> messages = segment.readBlock(block);
+                for (int j = messages.size() - 1 - (int) skip; j >= 0 && result.size() < limit; j--) {
+                    result.add(messages.get(j));
+                }
+                skip = 0;
+            }
+        }
+        return result;
+    }
+
+    // every archived message of the group, oldest first, with one inflated block in memory at a time
+    public void forEach(Long groupId, Consumer<ChatMessage> action) {
+        if (!enabled) {
+            return;
+        }
+        for (SegmentRef ref : segments(groupId)) {
+            Segment segment = open(ref);
+            for (int block = 0; block < segment.blockCount(); block++) {
+                segment.readBlock(block).forEach(action);
+            }
+        }
+    }
+
+    // groups with at least one archived segment
+    public List<Long> archivedGroupIds() {
+        List<Long> groupIds = new ArrayList<>();
+        Path root = Paths.get(directory);
+        if (!enabled || !Files.isDirectory(root)) {
+            return groupIds;
+        }
+        try (Stream<Path> listing = Files.list(root)) {
+            listing.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("g\\d+"))
+                    .map(name -> Long.parseLong(name.substring(1)))
+                    .filter(groupId -> !segments(groupId).isEmpty())
+                    .forEach(groupIds::add);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read chat archive: " + e.getMessage());
+        }
+        return groupIds;
+    }
+
+    // archived messages with id <= upToId, only the block the id falls into is inflated
+    public long countUpTo(Long groupId, long upToId) {
+        if (!enabled) {
+            return 0;
+        }
+
+        long count = 0;
+        for (SegmentRef ref : segments(groupId)) {
+            if (ref.firstId > upToId) {
+                break;
+            }
+            Segment segment = open(ref);
+            for (int block = 0; block < segment.blockCount(); block++) {
+                if (segment.firstIds[block] > upToId) {
+                    break;
+                }
+                if (segment.lastIds[block] <= upToId) {
+                    count += segment.counts[block];
+                } else {
+                    for (ChatMessage message : segment.readBlock(block)) {
+                        if (message.getId() <= upToId) {
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.archive.interval-ms:3600000}",
+            initialDelayString = "${chat.archive.initial-delay-ms:60000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(olderThanDays);
+        List<Long> groupIds = jdbcTemplate.queryForList(
+                "SELECT DISTINCT group_id FROM chat_messages WHERE timestamp < ?", Long.class, Timestamp.valueOf(cutoff));
+        for (Long groupId : groupIds) {
+            try {
+                archiveGroup(groupId, cutoff);
+            } catch (Exception e) {
+                System.err.println("Error archiving chat messages of group " + groupId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void archiveGroup(Long groupId, LocalDateTime cutoff) throws IOException {
+        while (true) {
+            // rows left behind when a run stopped between writing a segment and deleting them
+            long boundary = boundary(groupId);
+            if (boundary > 0) {
+                deleteUpTo(groupId, boundary);
+            }
+
+            List<ChatMessage> oldest = chatMessageRepository.findByGroupIdOrderByIdAsc(
+                    groupId, PageRequest.of(0, segmentMessages));
+            // stop at the first message that is still recent, so the archive stays a prefix in id order
+            List<ChatMessage> batch = new ArrayList<>();
+            for (ChatMessage message : oldest) {
+                if (!message.getTimestamp().isBefore(cutoff)) {
+                    break;
+                }
+                batch.add(message);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            SegmentRef ref = writeSegment(groupId, batch);
+            List<SegmentRef> updated = new ArrayList<>(segments(groupId));
+            updated.add(ref);
+            groups.put(groupId, Collections.unmodifiableList(updated));
+
+            deleteUpTo(groupId, ref.lastId);
+            archivedCounter.increment(batch.size());
+
+            if (batch.size() < segmentMessages) {
+                return;
+            }
+        }
+    }
+
+    private void deleteUpTo(Long groupId, long maxId) {
+        jdbcTemplate.update("DELETE FROM chat_messages WHERE group_id = ? AND id <= ?", groupId, maxId);
+    }
+
+    private SegmentRef writeSegment(Long groupId, List<ChatMessage> messages) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        int blockCount = (messages.size() + blockMessages - 1) / blockMessages;
+        ByteArrayOutputStream index = new ByteArrayOutputStream(blockCount * INDEX_ENTRY_BYTES);
+        DataOutputStream indexOut = new DataOutputStream(index);
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            for (int start = 0; start < messages.size(); start += blockMessages) {
+                List<ChatMessage> block = messages.subList(start, Math.min(start + blockMessages, messages.size()));
+
+                ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                DataOutputStream rawOut = new DataOutputStream(raw);
+                for (ChatMessage message : block) {
+                    byte[] payload = ChatCommitLog.encode(message);
+                    rawOut.writeInt(payload.length);
+                    rawOut.write(payload);
+                }
+                byte[] compressed = deflate(deflater, raw.toByteArray());
+
+                indexOut.writeLong(block.get(0).getId());
+                indexOut.writeLong(block.get(block.size() - 1).getId());
+                indexOut.writeInt(block.size());
+                indexOut.writeInt(file.size());
+
+                DataOutputStream fileOut = new DataOutputStream(file);
+                fileOut.writeInt(raw.size());
+                fileOut.writeInt(compressed.length);
+                fileOut.write(compressed);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long indexOffset = file.size();
+        DataOutputStream fileOut = new DataOutputStream(file);
+        fileOut.write(index.toByteArray());
+        fileOut.writeInt(blockCount);
+        fileOut.writeLong(indexOffset);
+        fileOut.writeInt(SEGMENT_MAGIC);
+
+        long firstId = messages.get(0).getId();
+        long lastId = messages.get(messages.size() - 1).getId();
+        long maxSeq = 0;
+        for (ChatMessage message : messages) {
+            if (message.getSeq() != null) {
+                maxSeq = Math.max(maxSeq, message.getSeq());
+            }
+        }
+        Path dir = groupDir(groupId);
+        Files.createDirectories(dir);
+        Path path = dir.resolve(String.format("%020d-%020d-%020d%s", firstId, lastId, maxSeq, SEGMENT_SUFFIX));
+        Path temp = dir.resolve(path.getFileName() + ".tmp");
+
+        // durable before the rows are deleted from the table
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(file.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SegmentRef(firstId, lastId, maxSeq, path);
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    public void deleteGroup(Long groupId) {
+        if (!enabled) {
+            return;
+        }
+        List<SegmentRef> segments = groups.remove(groupId);
+        if (segments == null) {
+            segments = loadSegments(groupId);
+        }
+
+        for (SegmentRef ref : segments) {
+            synchronized (openSegments) {
+                openSegments.remove(ref.path);
+            }
+            try {
+                Files.deleteIfExists(ref.path);
+            } catch (IOException e) {
+                System.err.println("Error deleting chat archive segment " + ref.path + ": " + e.getMessage());
+            }
+        }
+        try {
+            Files.deleteIfExists(groupDir(groupId));
+        } catch (IOException e) {
+            System.err.println("Error deleting chat archive of group " + groupId + ": " + e.getMessage());
+        }
+    }
+
+    private List<SegmentRef> segments(Long groupId) {
+        return groups.computeIfAbsent(groupId, this::loadSegments);
+    }
+
+    private List<SegmentRef> loadSegments(Long groupId) {
+        Path dir = groupDir(groupId);
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+
+        List<SegmentRef> segments = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(dir)) {
+            listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(path -> {
+                String name = path.getFileName().toString();
+                String[] range = name.substring(0, name.length() - SEGMENT_SUFFIX.length()).split("-");
+                // segments written before the seq was part of the name are scanned once
+                long maxSeq = range.length > 2 ? Long.parseLong(range[2]) : scanMaxSeq(path);
+                segments.add(new SegmentRef(Long.parseLong(range[0]), Long.parseLong(range[1]), maxSeq, path));
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read chat archive: " + e.getMessage());
+        }
+        segments.sort(Comparator.comparingLong(ref -> ref.firstId));
+        return Collections.unmodifiableList(segments);
+    }
+
+    private long scanMaxSeq(Path path) {
+        Segment segment = open(new SegmentRef(0, 0, 0, path));
+        long maxSeq = 0;
+        for (int block = 0; block < segment.blockCount(); block++) {
+            for (ChatMessage message : segment.readBlock(block)) {
+                if (message.getSeq() != null) {
+                    maxSeq = Math.max(maxSeq, message.getSeq());
+                }
+            }
+        }
+        return maxSeq;
+    }
+
+    private Segment open(SegmentRef ref) {
+        synchronized (openSegments) {
+            Segment segment = openSegments.get(ref.path);
+            if (segment != null) {
+                return segment;
+            }
+        }
+
+        Segment segment;
+        try (FileChannel channel = FileChannel.open(ref.path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            segment = new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read chat archive: " + e.getMessage());
+        }
+
+        synchronized (openSegments) {
+            openSegments.put(ref.path, segment);
+            if (openSegments.size() > maxOpenSegments) {
+                Iterator<Path> coldest = openSegments.keySet().iterator();
+                coldest.next();
+                coldest.remove();
+            }
+        }
+        return segment;
+    }
+
+    private Path groupDir(Long groupId) {
+        return Paths.get(directory).resolve("g" + groupId);
+    }
+
+    private static class SegmentRef {
+        private final long firstId;
+        private final long lastId;
+        private final long maxSeq;
+        private final Path path;
+
+        SegmentRef(long firstId, long lastId, long maxSeq, Path path) {
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.maxSeq = maxSeq;
+            this.path = path;
+        }
+    }
+
+    // a mapped segment file with its sparse block index read into arrays
+    private class Segment {
+        private final MappedByteBuffer buffer;
+        private final long[] firstIds;
+        private final long[] lastIds;
+        private final int[] counts;
+        private final int[] offsets;
+
+        Segment(MappedByteBuffer buffer) {
+            int trailer = buffer.capacity() - TRAILER_BYTES;
+            if (trailer < 0 || buffer.getInt(trailer + 12) != SEGMENT_MAGIC) {
+                throw new RuntimeException("Corrupt chat archive segment");
+            }
+            int blockCount = buffer.getInt(trailer);
+            int indexOffset = (int) buffer.getLong(trailer + 4);
+
+            this.buffer = buffer;
+            this.firstIds = new long[blockCount];
+            this.lastIds = new long[blockCount];
+            this.counts = new int[blockCount];
+            this.offsets = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                int entry = indexOffset + i * INDEX_ENTRY_BYTES;
+                firstIds[i] = buffer.getLong(entry);
+                lastIds[i] = buffer.getLong(entry + 8);
+                counts[i] = buffer.getInt(entry + 16);
+                offsets[i] = buffer.getInt(entry + 20);
+            }
+        }
+
+        int blockCount() {
+            return offsets.length;
+        }
+
+        // oldest first
+        List<ChatMessage> readBlock(int block) {
+            int offset = offsets[block];
+            byte[] compressed = new byte[buffer.getInt(offset + 4)];
+            buffer.get(offset + 8, compressed);
+            byte[] raw = new byte[buffer.getInt(offset)];
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    length += inflater.inflate(raw, length, raw.length - length);
+                }
+            } catch (DataFormatException e) {
+                throw new RuntimeException("Corrupt chat archive block");
+            } finally {
+                inflater.end();
+            }
+            blocksReadCounter.increment();
+
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            List<ChatMessage> messages = new ArrayList<>(counts[block]);
+            while (in.remaining() >= 4) {
+                int length = in.getInt();
+                messages.add(ChatCommitLog.decode(ByteBuffer.wrap(raw, in.position(), length)));
+                in.position(in.position() + length);
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.studygroup.backend.controller.ChatController;
+import com.studygroup.backend.entity.ChatMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+// Sends chat messages to group subscribers. The message is mapped to the compact payload and
+// encoded to JSON bytes once, and the broker hands that same byte[] to every subscriber session
+// instead of serializing the whole entity graph (group, course, creator, sender profile).
+// With chat.multiplex.enabled the same bytes also go to /user/queue/chat of every connected
+// active member, so a client can use one subscription for all of its groups. Follow-up frames
+// such as link previews take the same two routes, to /topic/group/{id}/{kind} and to
+// /user/queue/chat-{kind}.
+@Service
+public class ChatBroadcastService {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ChatMembershipIndex chatMembershipIndex;
+
+    // with the relay this is the cluster-wide registry, so users connected to other nodes count too
+    @Autowired
+    private SimpUserRegistry simpUserRegistry;
+
+    @Autowired
+    private ChatFrameCoalescer chatFrameCoalescer;
+
+    @Value("${chat.multiplex.enabled:false}")
+    private boolean multiplexEnabled;
+
+    // can be turned off once every client has moved to /user/queue/chat
+    @Value("${chat.multiplex.topic-broadcast:true}")
+    private boolean topicBroadcast;
+
+    public void broadcast(Long groupId, ChatMessage message) {
+        byte[] payload = encode(ChatController.ChatMessagePayload.from(message));
+        if (topicBroadcast || !multiplexEnabled) {
+            send("/topic/group/" + groupId, payload);
+        }
+        if (multiplexEnabled) {
+            sendToMembers(groupId, "/queue/chat", payload);
+        }
+        // clients on /topic/group/{id}/batch receive bursts as one array frame
+        if (chatFrameCoalescer.isEnabled()) {
+            chatFrameCoalescer.add(groupId, payload);
+        }
+    }
+
+    // follow-up frame of a group, e.g. "link-preview", reaches topic and multiplexed clients alike
+    public void broadcastEvent(Long groupId, String kind, Object payload) {
+        byte[] encoded = encode(payload);
+        if (topicBroadcast || !multiplexEnabled) {
+            send("/topic/group/" + groupId + "/" + kind, encoded);
+        }
+        if (multiplexEnabled) {
+            sendToMembers(groupId, "/queue/chat-" + kind, encoded);
+        }
+    }
+
+    private void sendToMembers(Long groupId, String queue, byte[] payload) {
+        String prefix = messagingTemplate.getUserDestinationPrefix();
+        for (ChatMembershipIndex.Member member : chatMembershipIndex.getActiveMembers(groupId)) {
+            // offline members would only cost a user destination resolution
+            if (simpUserRegistry.getUser(member.getEmail()) == null) {
+                continue;
+            }
+            try {
+                send(prefix + member.getEmail() + queue, payload);
+            } catch (Exception e) {
+                System.err.println("Error sending chat message to user queue: " + e.getMessage());
+            }
+        }
+    }
+
+    // personal frame to every session of one user, e.g. acks on /queue/chat-ack
+    public void sendToUser(String email, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(email, destination, payload);
+    }
+
+    public byte[] encode(Object payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode chat message");
+        }
+    }
+
+    // sends an already encoded JSON payload without running the message converters again
+    public void send(String destination, byte[] encodedPayload) {
+        messagingTemplate.send(destination, toMessage(encodedPayload));
+    }
+
+    private Message<byte[]> toMessage(byte[] encodedPayload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(encodedPayload, accessor.getMessageHeaders());
+    }
+}
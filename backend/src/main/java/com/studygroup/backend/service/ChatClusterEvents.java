@@ -0,0 +1,101 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Membership changes that have to reach every node. A change is applied on this node right away;
+// in relay mode it is also published on a broker topic that the system connection of every node
+// is subscribed to (WebSocketConfig registers this handler), so sessions held by other nodes drop
+// the revoked group and every node's ChatMembershipIndex drops the changed group. Applying a
+// change twice is harmless, the own echo is not filtered.
+@Component
+public class ChatClusterEvents implements MessageHandler {
+
+    public static final String DESTINATION = "/topic/chat-cluster";
+
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private ChatMembershipIndex chatMembershipIndex;
+
+    @Autowired
+    @Lazy
+    private ChatBroadcastService chatBroadcastService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // userId null means every member of the group
+    public void revoke(Long userId, Long groupId) {
+        applyRevoke(userId, groupId);
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", "revoke");
+        event.put("groupId", groupId);
+        event.put("userId", userId);
+        publish(event);
+    }
+
+    // active members of the group changed, multiplexed frames must be routed to the new set
+    public void membersChanged(Long groupId) {
+        chatMembershipIndex.invalidate(groupId);
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", "members");
+        event.put("groupId", groupId);
+        publish(event);
+    }
+
+    private void applyRevoke(Long userId, Long groupId) {
+        if (userId != null) {
+            chatSessionRegistry.revoke(userId, groupId);
+        } else {
+            chatSessionRegistry.revokeGroup(groupId);
+        }
+    }
+
+    private void publish(Map<String, Object> event) {
+        if (!"relay".equalsIgnoreCase(brokerMode)) {
+            return;
+        }
+        try {
+            chatBroadcastService.send(DESTINATION, chatBroadcastService.encode(event));
+        } catch (Exception e) {
+            System.err.println("Error publishing chat cluster event: " + e.getMessage());
+        }
+    }
+
+    // events published by any node, delivered on the relay's system connection
+    @Override
+    public void handleMessage(Message<?> message) {
+        if (!(message.getPayload() instanceof byte[] payload)) {
+            return;
+        }
+        try {
+            JsonNode event = objectMapper.readTree(payload);
+            Long groupId = event.path("groupId").asLong();
+            String type = event.path("type").asText();
+            if ("revoke".equals(type)) {
+                JsonNode userId = event.path("userId");
+                applyRevoke(userId.isNumber() ? userId.asLong() : null, groupId);
+            } else if ("members".equals(type)) {
+                chatMembershipIndex.invalidate(groupId);
+            }
+        } catch (Exception e) {
+            System.err.println("Error handling chat cluster event: " + e.getMessage());
+        }
+    }
+}
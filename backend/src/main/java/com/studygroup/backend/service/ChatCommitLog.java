@@ -0,0 +1,866 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Optional append-only commit log as the primary store of chat messages. Groups are spread over a
+// fixed number of partitions, each with its own segment files and a writer thread that appends
+// whatever arrived within the fsync window and syncs once for all of it, so a send waits for one
+// shared fsync instead of a database insert. Recent history is read back from memory-mapped
+// segments through a small per-group index. A projection thread copies the log into chat_messages
+// in batches and remembers its position per partition, so the table catches up after a restart
+// before new messages get ids. Like write-behind this is meant for a single backend instance.
+@Service
+public class ChatCommitLog {
+
+    // int length + int crc32 in front of every record
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MIN_SEGMENT_BYTES = 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "projected.checkpoint";
+
+    @Value("${chat.commit-log.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.commit-log.dir:data/chat-log}")
+    private String directory;
+
+    @Value("${chat.commit-log.partitions:8}")
+    private int partitionCount;
+
+    @Value("${chat.commit-log.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    @Value("${chat.commit-log.retained-segments:4}")
+    private int retainedSegments;
+
+    @Value("${chat.commit-log.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.commit-log.fsync-batch:256}")
+    private int fsyncBatch;
+
+    @Value("${chat.commit-log.fsync-max-wait-ms:2}")
+    private long fsyncMaxWaitMs;
+
+    @Value("${chat.commit-log.append-timeout-ms:2000}")
+    private long appendTimeoutMs;
+
+    @Value("${chat.commit-log.index-per-group:200}")
+    private int indexPerGroup;
+
+    @Value("${chat.commit-log.index-max-groups:10000}")
+    private int indexMaxGroups;
+
+    @Value("${chat.commit-log.projection-batch:500}")
+    private int projectionBatch;
+
+    @Autowired
+    private ChatWriteBehindService chatWriteBehindService;
+
+    @Autowired
+    private ChatSequenceService chatSequenceService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Partition[] partitions;
+
+    // access ordered, the coldest group loses its index first
+    private final LinkedHashMap<Long, GroupIndex> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    // groupId -> highest id at deletion, records up to it are not projected or served any more
+    private final Map<Long, Long> deletedGroups = new ConcurrentHashMap<>();
+
+    private final AtomicLong highestId = new AtomicLong();
+    // groupId -> highest seq found while recovering, only used during init
+    private final Map<Long, Long> recoveredSeqs = new ConcurrentHashMap<>();
+    private final Object projectionSignal = new Object();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    private Timer fsyncTimer;
+    private DistributionSummary fsyncBatchSize;
+    private Counter projectedCounter;
+    private Counter projectionFailedCounter;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        segmentBytes = Math.max(segmentBytes, MIN_SEGMENT_BYTES);
+
+        fsyncTimer = Timer.builder("chat.commit_log.fsync.latency")
+                .description("Time taken to write and fsync one batch of appends")
+                .register(meterRegistry);
+        fsyncBatchSize = DistributionSummary.builder("chat.commit_log.fsync.batch.size")
+                .description("Messages made durable by one fsync")
+                .register(meterRegistry);
+        projectedCounter = meterRegistry.counter("chat.commit_log.projected");
+        projectionFailedCounter = meterRegistry.counter("chat.commit_log.projection.failed");
+
+        Path root = Paths.get(directory);
+        partitions = new Partition[partitionCount];
+        try {
+            for (int i = 0; i < partitionCount; i++) {
+                partitions[i] = new Partition(root.resolve("p" + i));
+                partitions[i].recover();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open chat commit log: " + e.getMessage());
+        }
+
+        // rows the table missed before a restart go in before any new message gets an id
+        for (Partition partition : partitions) {
+            while (projectBatch(partition)) {
+                // keep going until this partition is fully projected
+            }
+            if (partition.stalled) {
+                throw new RuntimeException("Could not project chat commit log into the database");
+            }
+        }
+        chatWriteBehindService.reserveIdsUpTo(highestId.get());
+        // sends never go to the database for a sequence number after this
+        chatSequenceService.preload();
+        recoveredSeqs.forEach(chatSequenceService::advanceTo);
+        recoveredSeqs.clear();
+
+        Gauge.builder("chat.commit_log.projection.lag.bytes", this, ChatCommitLog::projectionLagBytes)
+                .description("Bytes of the log not yet copied into chat_messages")
+                .register(meterRegistry);
+
+        running = true;
+        for (int i = 0; i < partitions.length; i++) {
+            Partition partition = partitions[i];
+            start(new Thread(() -> writeLoop(partition), "chat-commit-log-" + i));
+        }
+        start(new Thread(this::projectLoop, "chat-commit-log-projection"));
+    }
+
+    private void start(Thread thread) {
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // blocks until the message is fsynced, id, seq and timestamp must already be set
+    public void append(ChatMessage message) {
+        Append append = new Append(message, encode(message));
+        Partition partition = partitions[(int) Math.floorMod(message.getGroup().getId(), (long) partitions.length)];
+
+        try {
+            if (!partition.pending.offer(append, appendTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Chat is busy, please try again");
+            }
+            try {
+                append.done.get(appendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // withdrawn before the writer took it, a retry cannot leave a second copy behind
+                if (append.cancel()) {
+                    throw new RuntimeException("Chat is busy, please try again");
+                }
+                // the writer is already fsyncing it, the outcome is only moments away
+                append.done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while storing message");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not store message, please try again");
+        }
+    }
+
+    // newest first, messages with id < beforeId (or the latest when null), or null if the log cannot answer
+    public List<ChatMessage> read(Long groupId, Long beforeId, int limit) {
+        GroupIndex groupIndex = groupIndex(groupId);
+        if (groupIndex == null) {
+            return null;
+        }
+
+        List<Locator> locators = groupIndex.newest(beforeId, limit);
+        if (locators.size() < limit) {
+            return null;
+        }
+        return decodeAll(locators);
+    }
+
+    // newest first, the indexed messages with id > afterId, used to add rows the projection has not written yet
+    public List<ChatMessage> readAfter(Long groupId, long afterId) {
+        GroupIndex groupIndex = groupIndex(groupId);
+        if (groupIndex == null) {
+            return new ArrayList<>();
+        }
+        List<ChatMessage> messages = decodeAll(groupIndex.after(afterId));
+        return messages != null ? messages : new ArrayList<>();
+    }
+
+    public void deleteGroup(Long groupId) {
+        if (!enabled) {
+            return;
+        }
+        deletedGroups.put(groupId, highestId.get());
+        synchronized (index) {
+            index.remove(groupId);
+        }
+    }
+
+    private GroupIndex groupIndex(Long groupId) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (index) {
+            return index.get(groupId);
+        }
+    }
+
+    private List<ChatMessage> decodeAll(List<Locator> locators) {
+        List<ChatMessage> messages = new ArrayList<>(locators.size());
+        for (Locator locator : locators) {
+            // the segment was already projected and removed, the table has the message now
+            if (locator.segment.deleted) {
+                return null;
+            }
+            messages.add(decode(locator.segment.buffer, locator.position));
+        }
+        return messages;
+    }
+
+    private void indexRecord(Long groupId, Locator locator) {
+        Long deletedUpTo = deletedGroups.get(groupId);
+        if (deletedUpTo != null && locator.id <= deletedUpTo) {
+            return;
+        }
+
+        GroupIndex groupIndex;
+        synchronized (index) {
+            groupIndex = index.computeIfAbsent(groupId, id -> new GroupIndex());
+            if (index.size() > indexMaxGroups) {
+                Iterator<Long> coldest = index.keySet().iterator();
+                coldest.next();
+                coldest.remove();
+            }
+        }
+        groupIndex.add(locator, indexPerGroup);
+    }
+
+    private void writeLoop(Partition partition) {
+        List<Append> batch = new ArrayList<>(fsyncBatch);
+        while (running || !partition.pending.isEmpty()) {
+            try {
+                Append first = partition.pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // concurrent senders that arrive within the window share this fsync
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fsyncMaxWaitMs);
+                while (batch.size() < fsyncBatch) {
+                    partition.pending.drainTo(batch, fsyncBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= fsyncBatch || remaining <= 0) {
+                        break;
+                    }
+                    Append next = partition.pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                write(partition, batch);
+            } catch (InterruptedException e) {
+                running = false;
+                if (!batch.isEmpty()) {
+                    write(partition, batch);
+                }
+            } catch (Exception e) {
+                System.err.println("Chat commit log error: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(Partition partition, List<Append> batch) {
+        // senders that gave up waiting got an error, their records must not show up later
+        batch.removeIf(append -> !append.claim());
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Locator> locators;
+        try {
+            locators = partition.write(batch);
+        } catch (IOException e) {
+            System.err.println("Chat commit log write failed: " + e.getMessage());
+            for (Append append : batch) {
+                append.done.completeExceptionally(e);
+            }
+            return;
+        }
+        fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        fsyncBatchSize.record(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            Append append = batch.get(i);
+            indexRecord(append.message.getGroup().getId(), locators.get(i));
+            highestId.accumulateAndGet(append.message.getId(), Math::max);
+            append.done.complete(null);
+        }
+        synchronized (projectionSignal) {
+            projectionSignal.notifyAll();
+        }
+    }
+
+    private void projectLoop() {
+        while (running) {
+            try {
+                boolean progressed = false;
+                boolean stalled = false;
+                for (Partition partition : partitions) {
+                    progressed |= projectBatch(partition);
+                    stalled |= partition.stalled;
+                }
+                if (stalled) {
+                    // most likely the database is unreachable, the log keeps everything meanwhile
+                    Thread.sleep(1000);
+                } else if (!progressed) {
+                    synchronized (projectionSignal) {
+                        projectionSignal.wait(100);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("Chat commit log projection error: " + e.getMessage());
+            }
+        }
+    }
+
+    // copies the next batch of one partition into the table, returns true if the cursor moved
+    private boolean projectBatch(Partition partition) {
+        Segment segment = partition.cursorSegment;
+        int position = partition.cursorPosition;
+        List<ChatMessage> batch = new ArrayList<>();
+
+        while (batch.size() < projectionBatch) {
+            if (position >= segment.size) {
+                Segment next = partition.after(segment);
+                if (next == null) {
+                    break;
+                }
+                if (position < segment.size) {
+                    // the segment was sealed with more records in the meantime
+                    continue;
+                }
+                segment = next;
+                position = 0;
+                continue;
+            }
+
+            ChatMessage message = decode(segment.buffer, position);
+            position += RECORD_HEADER_BYTES + segment.buffer.getInt(position);
+            Long deletedUpTo = deletedGroups.get(message.getGroup().getId());
+            if (deletedUpTo == null || message.getId() > deletedUpTo) {
+                batch.add(message);
+            }
+        }
+
+        if (segment == partition.cursorSegment && position == partition.cursorPosition) {
+            return false;
+        }
+
+        if (!batch.isEmpty()) {
+            int[] failed = new int[1];
+            chatWriteBehindService.store(batch, (message, status) -> {
+                if ("FAILED".equals(status)) {
+                    failed[0]++;
+                }
+            });
+
+            // nothing went in: retry the same batch later unless the database is fine and the rows are bad
+            if (failed[0] == batch.size() && !databaseReachable()) {
+                partition.stalled = true;
+                return false;
+            }
+            projectionFailedCounter.increment(failed[0]);
+            projectedCounter.increment(batch.size() - failed[0]);
+        }
+        partition.stalled = false;
+        partition.advance(segment, position);
+        return true;
+    }
+
+    private boolean databaseReachable() {
+        try {
+            jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private double projectionLagBytes() {
+        long lag = 0;
+        for (Partition partition : partitions) {
+            lag += partition.lagBytes();
+        }
+        return lag;
+    }
+
+    // record payload, also the format of the cold archive
+    static byte[] encode(ChatMessage message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            LocalDateTime timestamp = message.getTimestamp();
+            out.writeLong(message.getId());
+            out.writeLong(message.getSeq() != null ? message.getSeq() : -1);
+            out.writeLong(message.getGroup().getId());
+            out.writeLong(message.getSender().getId());
+            out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(timestamp.getNano());
+            out.writeLong(message.getFileSize() != null ? message.getFileSize() : -1);
+            writeString(out, message.getType().name());
+            writeString(out, message.getContent());
+            writeString(out, message.getFileUrl());
+            writeString(out, message.getFileName());
+            writeString(out, message.getFileType());
+            writeString(out, message.getClientMessageId());
+            writeString(out, message.getSender().getName());
+            writeString(out, message.getSender().getEmail());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not encode chat message");
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static ChatMessage decode(MappedByteBuffer buffer, int position) {
+        byte[] payload = new byte[buffer.getInt(position)];
+        buffer.get(position + RECORD_HEADER_BYTES, payload);
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    // group and sender only carry ids, name and email, callers load the entities if they need more
+    static ChatMessage decode(ByteBuffer in) {
+        ChatMessage message = new ChatMessage();
+        message.setId(in.getLong());
+        long seq = in.getLong();
+        message.setSeq(seq >= 0 ? seq : null);
+
+        Group group = new Group();
+        group.setId(in.getLong());
+        message.setGroup(group);
+
+        User sender = new User();
+        sender.setId(in.getLong());
+        message.setSender(sender);
+
+        long epochSecond = in.getLong();
+        message.setTimestamp(LocalDateTime.ofEpochSecond(epochSecond, in.getInt(), ZoneOffset.UTC));
+        long fileSize = in.getLong();
+        message.setFileSize(fileSize >= 0 ? fileSize : null);
+        message.setType(MessageType.valueOf(readString(in)));
+        message.setContent(readString(in));
+        message.setFileUrl(readString(in));
+        message.setFileName(readString(in));
+        message.setFileType(readString(in));
+        message.setClientMessageId(readString(in));
+        sender.setName(readString(in));
+        sender.setEmail(readString(in));
+        return message;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        // writers drain what is already queued, the projection resumes from its checkpoint next start
+        running = false;
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+    }
+
+    private class Partition {
+        private final Path dir;
+        private final BlockingQueue<Append> pending = new ArrayBlockingQueue<>(queueCapacity);
+        private final List<Segment> segments = new CopyOnWriteArrayList<>();
+        private volatile Segment active;
+
+        // projection position, only touched by the projection (and by recovery before it starts)
+        private Segment cursorSegment;
+        private int cursorPosition;
+        private boolean stalled;
+
+        Partition(Path dir) {
+            this.dir = dir;
+        }
+
+        void recover() throws IOException {
+            Files.createDirectories(dir);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(dir)) {
+                files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .toList();
+            }
+
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Segment segment = Segment.open(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())),
+                        file, segmentBytes);
+                scan(segment);
+                segments.add(segment);
+            }
+            if (segments.isEmpty()) {
+                segments.add(Segment.open(0, segmentPath(0), segmentBytes));
+            }
+            active = segments.get(segments.size() - 1);
+
+            cursorSegment = segments.get(0);
+            cursorPosition = 0;
+            Path checkpoint = dir.resolve(CHECKPOINT_FILE);
+            if (Files.exists(checkpoint)) {
+                String[] parts = Files.readString(checkpoint).trim().split(":");
+                for (Segment segment : segments) {
+                    if (segment.number == Long.parseLong(parts[0])) {
+                        cursorSegment = segment;
+                        cursorPosition = Math.min(Integer.parseInt(parts[1]), segment.size);
+                    }
+                }
+            }
+        }
+
+        // finds the end of the valid records and indexes them, a torn write at the end fails its
+        // checksum and is overwritten by the next append
+        private void scan(Segment segment) {
+            MappedByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(position + RECORD_HEADER_BYTES, payload);
+                if (checksum(payload) != buffer.getInt(position + 4)) {
+                    break;
+                }
+
+                ByteBuffer fields = ByteBuffer.wrap(payload);
+                long id = fields.getLong(0);
+                long seq = fields.getLong(8);
+                long groupId = fields.getLong(16);
+                recoveredSeqs.merge(groupId, seq, Math::max);
+                indexRecord(groupId, new Locator(segment, position, id));
+                highestId.accumulateAndGet(id, Math::max);
+                position += RECORD_HEADER_BYTES + length;
+            }
+            segment.size = position;
+        }
+
+        // only called from this partition's writer thread
+        List<Locator> write(List<Append> batch) throws IOException {
+            Segment segment = active;
+            int position = segment.size;
+            List<Locator> locators = new ArrayList<>(batch.size());
+
+            for (Append append : batch) {
+                int length = RECORD_HEADER_BYTES + append.payload.length;
+                if (position + length > segment.buffer.capacity()) {
+                    segment.channel.force(false);
+                    segment.size = position;
+                    segment = roll(segment);
+                    position = 0;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(length);
+                record.putInt(append.payload.length);
+                record.putInt(checksum(append.payload));
+                record.put(append.payload);
+                record.flip();
+
+                locators.add(new Locator(segment, position, append.message.getId()));
+                while (record.hasRemaining()) {
+                    position += segment.channel.write(record, position);
+                }
+            }
+
+            segment.channel.force(false);
+            segment.size = position;
+            return locators;
+        }
+
+        private Segment roll(Segment current) throws IOException {
+            long number = current.number + 1;
+            Segment next = Segment.open(number, segmentPath(number), segmentBytes);
+            segments.add(next);
+            active = next;
+            return next;
+        }
+
+        // the segment that follows, null while the given one is still being written
+        Segment after(Segment segment) {
+            if (segment == active) {
+                return null;
+            }
+            int i = segments.indexOf(segment);
+            return i >= 0 && i + 1 < segments.size() ? segments.get(i + 1) : null;
+        }
+
+        void advance(Segment segment, int position) {
+            cursorSegment = segment;
+            cursorPosition = position;
+            try {
+                Path checkpoint = dir.resolve(CHECKPOINT_FILE);
+                Path temp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+                Files.writeString(temp, segment.number + ":" + position);
+                Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // a stale checkpoint only means some rows are projected again, duplicates are ignored
+                System.err.println("Error writing chat commit log checkpoint: " + e.getMessage());
+            }
+            removeProjectedSegments();
+        }
+
+        // keeps the newest segments for reads, older ones go once they are fully projected
+        private void removeProjectedSegments() {
+            while (segments.size() > retainedSegments) {
+                Segment oldest = segments.get(0);
+                if (oldest == cursorSegment || oldest == active) {
+                    return;
+                }
+                segments.remove(0);
+                oldest.delete();
+            }
+        }
+
+        long lagBytes() {
+            long lag = 0;
+            boolean counting = false;
+            for (Segment segment : segments) {
+                if (segment == cursorSegment) {
+                    lag += segment.size - cursorPosition;
+                    counting = true;
+                } else if (counting) {
+                    lag += segment.size;
+                }
+            }
+            return lag;
+        }
+
+        private Path segmentPath(long number) {
+            return dir.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+        }
+
+        void close() {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    private static class Segment {
+        private final long number;
+        private final Path path;
+        private final FileChannel channel;
+        // mapped over the whole preallocated file, reads never go through the channel
+        private final MappedByteBuffer buffer;
+        // end of the fsynced records, readers and the projection never look past it
+        private volatile int size;
+        private volatile boolean deleted;
+
+        private Segment(long number, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(long number, Path path, int segmentBytes) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long length = Math.max(channel.size(), segmentBytes);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            return new Segment(number, path, channel, buffer);
+        }
+
+        void delete() {
+            deleted = true;
+            close();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Error deleting chat commit log segment " + path + ": " + e.getMessage());
+            }
+        }
+
+        // the mapping stays valid after the channel is closed, it goes away with the last reference
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing chat commit log segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Locator {
+        private final Segment segment;
+        private final int position;
+        private final long id;
+
+        Locator(Segment segment, int position, long id) {
+            this.segment = segment;
+            this.position = position;
+            this.id = id;
+        }
+    }
+
+    // latest record positions of one group, oldest first
+    private static class GroupIndex {
+        private final List<Locator> locators = new ArrayList<>();
+
+        synchronized void add(Locator locator, int capacity) {
+            int i = locators.size();
+            // appends of one group normally arrive in id order, only file uploads can overtake
+            while (i > 0 && locators.get(i - 1).id > locator.id) {
+                i--;
+            }
+            locators.add(i, locator);
+            if (locators.size() > capacity) {
+                locators.remove(0);
+            }
+        }
+
+        synchronized List<Locator> newest(Long beforeId, int limit) {
+            List<Locator> result = new ArrayList<>(limit);
+            for (int i = locators.size() - 1; i >= 0 && result.size() < limit; i--) {
+                Locator locator = locators.get(i);
+                if (beforeId == null || locator.id < beforeId) {
+                    result.add(locator);
+                }
+            }
+            return result;
+        }
+
+        synchronized List<Locator> after(long afterId) {
+            List<Locator> result = new ArrayList<>();
+            for (int i = locators.size() - 1; i >= 0 && locators.get(i).id > afterId; i--) {
+                result.add(locators.get(i));
+            }
+            return result;
+        }
+    }
+
+    private static class Append {
+        private static final int QUEUED = 0;
+        private static final int WRITING = 1;
+        private static final int CANCELLED = 2;
+
+        private final ChatMessage message;
+        private final byte[] payload;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        Append(ChatMessage message, byte[] payload) {
+            this.message = message;
+            this.payload = payload;
+        }
+
+        // writer side, false if the sender already gave up
+        boolean claim() {
+            return state.compareAndSet(QUEUED, WRITING);
+        }
+
+        // sender side, false if the writer already took it
+        boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.studygroup.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Recently seen client message ids, so a send retried after a reconnect is acknowledged instead
+// of being inserted and broadcast again. Ids are scoped to the group, a client reusing its own
+// counter in another group is not a retry. Bounded by entry count and by a time window, older
+// retries are still caught by the unique (group_id, sender_id, client_message_id) index.
+@Component
+public class ChatDedupeService {
+
+    public static final int MAX_CLIENT_ID_LENGTH = 64;
+
+    @Value("${chat.dedupe.window-ms:600000}")
+    private long windowMs;
+
+    @Value("${chat.dedupe.max-entries:100000}")
+    private int maxEntries;
+
+    // how long a retry's ack waits for the first attempt to be saved before it goes out as in flight
+    @Value("${chat.dedupe.in-flight-wait-ms:1000}")
+    private long inFlightWaitMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // insertion ordered, so the oldest claims are at the head
+    private final LinkedHashMap<String, Entry> seen = new LinkedHashMap<>();
+
+    private Counter duplicateCounter;
+
+    @PostConstruct
+    public void init() {
+        duplicateCounter = meterRegistry.counter("chat.dedupe.duplicates");
+    }
+
+    // null when this is the first time the id is seen, otherwise the earlier claim. Its message
+    // id is still null while the first attempt is being saved.
+    public Entry claim(Long groupId, Long senderId, String clientMessageId) {
+        String key = key(groupId, senderId, clientMessageId);
+        long now = System.currentTimeMillis();
+        synchronized (seen) {
+            expire(now);
+            Entry existing = seen.get(key);
+            if (existing != null) {
+                duplicateCounter.increment();
+                return existing;
+            }
+            seen.put(key, new Entry(now));
+            return null;
+        }
+    }
+
+    public void complete(Long groupId, Long senderId, String clientMessageId, Long messageId) {
+        if (clientMessageId == null) {
+            return;
+        }
+        synchronized (seen) {
+            Entry entry = seen.get(key(groupId, senderId, clientMessageId));
+            if (entry != null) {
+                entry.settle(messageId);
+            }
+        }
+    }
+
+    // the first attempt failed, let the next retry go through
+    public void release(Long groupId, Long senderId, String clientMessageId) {
+        if (clientMessageId == null) {
+            return;
+        }
+        Entry entry;
+        synchronized (seen) {
+            entry = seen.remove(key(groupId, senderId, clientMessageId));
+        }
+        if (entry != null) {
+            entry.settle(null);
+        }
+    }
+
+    // completes with the message id of the earlier claim once its attempt is saved, or with null
+    // if it is still in flight after the wait or has failed. Nothing blocks while waiting, so a
+    // burst of retries does not hold the inbound channel threads.
+    public CompletableFuture<Long> messageIdOf(Entry entry) {
+        return entry.messageId.copy().completeOnTimeout(null, inFlightWaitMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordDuplicate() {
+        duplicateCounter.increment();
+    }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Entry>> iterator = seen.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry oldest = iterator.next().getValue();
+            if (seen.size() <= maxEntries && oldest.claimedAt >= now - windowMs) {
+                return;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static String key(Long groupId, Long senderId, String clientMessageId) {
+        return groupId + ":" + senderId + ":" + clientMessageId;
+    }
+
+    public static class Entry {
+        private final long claimedAt;
+        private final CompletableFuture<Long> messageId = new CompletableFuture<>();
+
+        Entry(long claimedAt) {
+            this.claimedAt = claimedAt;
+        }
+
+        public Long getMessageId() { return messageId.getNow(null); }
+
+        private void settle(Long id) {
+            messageId.complete(id);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.studygroup.backend.entity.ChatMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+// Streams a group's whole chat history as NDJSON (one JSON object per line).
+// Archived messages come first, one inflated block at a time, then the table rows through a
+// forward-only MySQL streaming cursor, all written straight to the response, so memory use stays
+// flat however many messages the group has.
+@Service
+public class ChatExportService {
+
+    private static final String EXPORT_SQL = "SELECT m.id, m.sender_id, u.name AS sender_name, m.content, m.type, " +
+            "m.file_url, m.file_name, m.file_type, m.file_size, m.timestamp " +
+            "FROM chat_messages m JOIN users u ON u.id = m.sender_id WHERE m.group_id = ? AND m.id > ? ORDER BY m.id";
+
+    // rows between explicit flushes of the response
+    private static final int FLUSH_EVERY = 1000;
+
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    public ChatExportService(DataSource dataSource) {
+        // Integer.MIN_VALUE makes MySQL Connector/J stream rows one by one instead of buffering the result
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    public long exportGroupMessages(Long groupId, OutputStream out) throws IOException {
+        long[] count = {0};
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            // the stream belongs to the caller, which may still need to finish a gzip trailer
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // root level objects are separated by newlines instead of Jackson's default space
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            chatArchiveService.forEach(groupId, message -> {
+                try {
+                    writeMessage(generator, message);
+                    if (++count[0] % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // rows a stopped archive run left behind are already in the archive
+            long boundary = chatArchiveService.boundary(groupId);
+            streamingJdbcTemplate.query(EXPORT_SQL, rs -> {
+                try {
+                    writeRow(generator, rs);
+                    if (++count[0] % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, groupId, boundary);
+            if (count[0] > 0) {
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    private void writeRow(JsonGenerator generator, ResultSet rs) throws SQLException, IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", rs.getLong("id"));
+        generator.writeNumberField("senderId", rs.getLong("sender_id"));
+        generator.writeStringField("senderName", rs.getString("sender_name"));
+        generator.writeStringField("content", rs.getString("content"));
+        generator.writeStringField("type", rs.getString("type"));
+        writeOptional(generator, "fileUrl", rs.getString("file_url"));
+        writeOptional(generator, "fileName", rs.getString("file_name"));
+        writeOptional(generator, "fileType", rs.getString("file_type"));
+        long fileSize = rs.getLong("file_size");
+        if (!rs.wasNull()) {
+            generator.writeNumberField("fileSize", fileSize);
+        }
+        Timestamp timestamp = rs.getTimestamp("timestamp");
+        writeOptional(generator, "timestamp", timestamp != null ? timestamp.toLocalDateTime().toString() : null);
+        generator.writeEndObject();
+    }
+
+    private void writeMessage(JsonGenerator generator, ChatMessage message) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", message.getId());
+        generator.writeNumberField("senderId", message.getSender().getId());
+        generator.writeStringField("senderName", message.getSender().getName());
+        generator.writeStringField("content", message.getContent());
+        generator.writeStringField("type", message.getType().name());
+        writeOptional(generator, "fileUrl", message.getFileUrl());
+        writeOptional(generator, "fileName", message.getFileName());
+        writeOptional(generator, "fileType", message.getFileType());
+        if (message.getFileSize() != null) {
+            generator.writeNumberField("fileSize", message.getFileSize());
+        }
+        writeOptional(generator, "timestamp", message.getTimestamp() != null ? message.getTimestamp().toString() : null);
+        generator.writeEndObject();
+    }
+
+    private void writeOptional(JsonGenerator generator, String field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.studygroup.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Optional batching of chat frames for bursty groups. Messages of a group that arrive within the
+// window are sent as one JSON array frame on /topic/group/{id}/batch, so every subscriber gets one
+// frame and one socket write per burst instead of one per message. A STOMP MESSAGE frame belongs
+// to a single subscription, so frames are coalesced per group destination, which for a session is
+// the same as coalescing everything queued for it on that subscription. The payloads are already
+// encoded, the array is built by joining the bytes without parsing them again. Groups nobody
+// follows on /batch cost nothing: subscriptions to it are counted from the STOMP events, and with
+// the relay the cluster-wide user registry is asked as well, at most once per second and group.
+@Component
+public class ChatFrameCoalescer {
+
+    private static final Pattern BATCH_TOPIC = Pattern.compile("^/topic/group/(\\d+)/batch$");
+
+    @Value("${chat.coalesce.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.coalesce.window-ms:10}")
+    private long windowMs;
+
+    @Value("${chat.coalesce.max-batch:50}")
+    private int maxBatch;
+
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Autowired
+    @Lazy
+    private ChatBroadcastService chatBroadcastService;
+
+    @Autowired
+    @Lazy
+    private SimpUserRegistry simpUserRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Long, Batch> batches = new ConcurrentHashMap<>();
+
+    // groupId -> local /batch subscriptions, and sessionId -> subscriptionId -> groupId to undo them
+    private final Map<Long, AtomicInteger> localSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> subscriptions = new ConcurrentHashMap<>();
+
+    // relay only: groupId -> time until which the last cluster-wide answer is reused
+    private final Map<Long, RemoteCheck> remoteChecks = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private DistributionSummary batchSize;
+    private Counter framesCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        batchSize = DistributionSummary.builder("chat.coalesce.batch.size")
+                .description("Messages per coalesced frame")
+                .register(meterRegistry);
+        framesCounter = meterRegistry.counter("chat.coalesce.frames");
+        failedCounter = meterRegistry.counter("chat.coalesce.frames.failed");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void add(Long groupId, byte[] encodedPayload) {
+        if (!hasBatchSubscribers(groupId)) {
+            return;
+        }
+
+        Batch batch;
+        while (true) {
+            batch = batches.computeIfAbsent(groupId, id -> new Batch());
+            synchronized (batch) {
+                // retired by a drain that found it idle, a new batch replaces it in the map
+                if (batch.retired) {
+                    continue;
+                }
+                batch.payloads.add(encodedPayload);
+                if (batch.payloads.size() >= maxBatch) {
+                    flush(batch);
+                } else if (batch.timer == null) {
+                    schedule(groupId, batch);
+                }
+            }
+            break;
+        }
+        drain(groupId, batch);
+    }
+
+    private void schedule(Long groupId, Batch batch) {
+        long generation = batch.generation;
+        batch.timer = scheduler.schedule(() -> {
+            synchronized (batch) {
+                // a max-batch flush already took what this timer was started for
+                if (batch.generation != generation) {
+                    return;
+                }
+                flush(batch);
+            }
+            drain(groupId, batch);
+        }, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    // caller holds the batch lock; only queues the frame, drain sends it
+    private void flush(Batch batch) {
+        batch.generation++;
+        if (batch.timer != null) {
+            batch.timer.cancel(false);
+            batch.timer = null;
+        }
+        if (batch.payloads.isEmpty()) {
+            return;
+        }
+        batch.ready.add(new ArrayList<>(batch.payloads));
+        batch.payloads.clear();
+    }
+
+    // Sends queued frames without holding the batch lock, so adds to the group are not blocked by
+    // a slow broker. One thread drains at a time, which keeps the frames of a group in order; a
+    // thread that queues a frame while another one is sending leaves it to that one.
+    private void drain(Long groupId, Batch batch) {
+        synchronized (batch) {
+            if (batch.draining || batch.ready.isEmpty()) {
+                return;
+            }
+            batch.draining = true;
+        }
+
+        while (true) {
+            List<byte[]> payloads;
+            synchronized (batch) {
+                payloads = batch.ready.poll();
+                if (payloads == null) {
+                    batch.draining = false;
+                    retireIfIdle(groupId, batch);
+                    return;
+                }
+            }
+            send(groupId, payloads);
+        }
+    }
+
+    // caller holds the batch lock; a group that went quiet does not keep its batch forever
+    private void retireIfIdle(Long groupId, Batch batch) {
+        if (batch.payloads.isEmpty() && batch.timer == null) {
+            batch.retired = true;
+            batches.remove(groupId, batch);
+        }
+    }
+
+    private void send(Long groupId, List<byte[]> payloads) {
+        try {
+            chatBroadcastService.send("/topic/group/" + groupId + "/batch", join(payloads));
+            batchSize.record(payloads.size());
+            framesCounter.increment();
+        } catch (Exception e) {
+            failedCounter.increment();
+        }
+    }
+
+    private boolean hasBatchSubscribers(Long groupId) {
+        AtomicInteger local = localSubscribers.get(groupId);
+        if (local != null && local.get() > 0) {
+            return true;
+        }
+        if (!"relay".equalsIgnoreCase(brokerMode)) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        RemoteCheck check = remoteChecks.get(groupId);
+        if (check == null || check.validUntil < now) {
+            String destination = "/topic/group/" + groupId + "/batch";
+            boolean subscribed = !simpUserRegistry.findSubscriptions(
+                    subscription -> destination.equals(subscription.getDestination())).isEmpty();
+            check = new RemoteCheck(subscribed, now + 1000);
+            remoteChecks.put(groupId, check);
+        }
+        return check.subscribed;
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Matcher matcher = BATCH_TOPIC.matcher(destination);
+        if (!matcher.matches()) {
+            return;
+        }
+
+        Long groupId = Long.parseLong(matcher.group(1));
+        Long previous = subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), groupId);
+        if (previous != null) {
+            release(previous);
+        }
+        localSubscribers.computeIfAbsent(groupId, id -> new AtomicInteger()).incrementAndGet();
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, Long> sessionSubscriptions = accessor.getSessionId() != null
+                ? subscriptions.get(accessor.getSessionId()) : null;
+        if (sessionSubscriptions == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Long groupId = sessionSubscriptions.remove(accessor.getSubscriptionId());
+        if (groupId != null) {
+            release(groupId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Long> sessionSubscriptions = subscriptions.remove(event.getSessionId());
+        if (sessionSubscriptions != null) {
+            sessionSubscriptions.values().forEach(this::release);
+        }
+    }
+
+    private void release(Long groupId) {
+        localSubscribers.computeIfPresent(groupId, (id, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    private static byte[] join(List<byte[]> payloads) {
+        int length = 2 + Math.max(0, payloads.size() - 1);
+        for (byte[] payload : payloads) {
+            length += payload.length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        out.write('[');
+        for (int i = 0; i < payloads.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(payloads.get(i));
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private static class Batch {
+        private final List<byte[]> payloads = new ArrayList<>();
+        // flushed frames waiting to be sent, in order
+        private final Queue<List<byte[]>> ready = new ArrayDeque<>();
+        // pending window timer, cancelled when a full batch is flushed early
+        private ScheduledFuture<?> timer;
+        private long generation;
+        private boolean draining;
+        private boolean retired;
+    }
+
+    private static class RemoteCheck {
+        private final boolean subscribed;
+        private final long validUntil;
+
+        RemoteCheck(boolean subscribed, long validUntil) {
+            this.subscribed = subscribed;
+            this.validUntil = validUntil;
+        }
+    }
+}
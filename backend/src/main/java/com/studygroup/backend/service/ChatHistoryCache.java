@@ -0,0 +1,241 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the most recent messages of each group in memory so opening a chat does not hit the database.
+// Groups are evicted least recently used first, bounded by group count and by an estimated byte budget.
+@Component
+public class ChatHistoryCache {
+
+    // rough per-message overhead of the entity, its boxed fields and the deque slot
+    private static final int MESSAGE_OVERHEAD_BYTES = 256;
+
+    @Value("${chat.history-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.history-cache.group-capacity:100}")
+    private int groupCapacity;
+
+    @Value("${chat.history-cache.max-groups:1000}")
+    private int maxGroups;
+
+    @Value("${chat.history-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    // access ordered, so iteration starts from the coldest group
+    private final LinkedHashMap<Long, GroupBuffer> groups = new LinkedHashMap<>(16, 0.75f, true);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getGroupCapacity() {
+        return groupCapacity;
+    }
+
+    // newest first, messages with id < beforeId (or the latest when null), or null if the cache cannot answer
+    public List<ChatMessage> read(Long groupId, Long beforeId, int limit) {
+        if (!enabled || limit > groupCapacity) {
+            return null;
+        }
+
+        GroupBuffer buffer;
+        synchronized (groups) {
+            buffer = groups.get(groupId);
+        }
+        return buffer != null ? buffer.read(beforeId, limit) : null;
+    }
+
+    // registers an empty buffer before the database read so messages saved meanwhile are not missed
+    public boolean startWarming(Long groupId) {
+        if (!enabled) {
+            return false;
+        }
+        synchronized (groups) {
+            if (groups.containsKey(groupId)) {
+                return false;
+            }
+            groups.put(groupId, new GroupBuffer());
+        }
+        evictIfNeeded();
+        return true;
+    }
+
+    // latestMessages is newest first, as returned by the repository
+    public void finishWarming(Long groupId, List<ChatMessage> latestMessages) {
+        GroupBuffer buffer;
+        synchronized (groups) {
+            buffer = groups.get(groupId);
+        }
+        if (buffer != null) {
+            buffer.fill(latestMessages, latestMessages.size() < groupCapacity);
+            evictIfNeeded();
+        }
+    }
+
+    public void append(ChatMessage message) {
+        if (!enabled || message.getGroup() == null) {
+            return;
+        }
+
+        GroupBuffer buffer;
+        synchronized (groups) {
+            // do not refresh the LRU position on writes, only reads keep a group hot
+            buffer = groups.get(message.getGroup().getId());
+        }
+        if (buffer != null) {
+            buffer.append(message);
+            evictIfNeeded();
+        }
+    }
+
+    public void evict(Long groupId) {
+        GroupBuffer buffer;
+        synchronized (groups) {
+            buffer = groups.remove(groupId);
+        }
+        if (buffer != null) {
+            buffer.clear();
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (true) {
+            GroupBuffer coldest;
+            synchronized (groups) {
+                if (groups.size() <= maxGroups && totalBytes.get() <= maxBytes || groups.isEmpty()) {
+                    return;
+                }
+                Iterator<Map.Entry<Long, GroupBuffer>> iterator = groups.entrySet().iterator();
+                coldest = iterator.next().getValue();
+                iterator.remove();
+            }
+            coldest.clear();
+        }
+    }
+
+    private static long estimateBytes(ChatMessage message) {
+        long bytes = MESSAGE_OVERHEAD_BYTES;
+        bytes += length(message.getContent());
+        bytes += length(message.getFileUrl());
+        bytes += length(message.getFileName());
+        bytes += length(message.getFileType());
+        return bytes;
+    }
+
+    private static long length(String value) {
+        return value != null ? 2L * value.length() : 0;
+    }
+
+    private class GroupBuffer {
+        // oldest first
+        private final ArrayDeque<ChatMessage> messages = new ArrayDeque<>();
+        private long bytes;
+        private boolean warm;
+        // true when the buffer holds the whole history of the group
+        private boolean complete;
+
+        synchronized List<ChatMessage> read(Long beforeId, int limit) {
+            if (!warm) {
+                return null;
+            }
+
+            List<ChatMessage> result = new ArrayList<>(limit);
+            Iterator<ChatMessage> iterator = messages.descendingIterator();
+            while (iterator.hasNext() && result.size() < limit) {
+                ChatMessage message = iterator.next();
+                if (beforeId == null || message.getId() < beforeId) {
+                    result.add(message);
+                }
+            }
+
+            // a short answer is only correct if nothing older exists outside the buffer
+            if (result.size() < limit && !complete) {
+                return null;
+            }
+            return result;
+        }
+
+        synchronized void fill(List<ChatMessage> latestMessages, boolean wholeHistory) {
+            long newestLoadedId = latestMessages.isEmpty() ? Long.MIN_VALUE : latestMessages.get(0).getId();
+
+            ArrayDeque<ChatMessage> appendedMeanwhile = new ArrayDeque<>();
+            for (ChatMessage message : messages) {
+                if (message.getId() > newestLoadedId) {
+                    appendedMeanwhile.add(message);
+                }
+            }
+            clearContents();
+
+            for (int i = latestMessages.size() - 1; i >= 0; i--) {
+                add(latestMessages.get(i));
+            }
+            for (ChatMessage message : appendedMeanwhile) {
+                add(message);
+            }
+            complete = wholeHistory;
+            warm = true;
+            trim();
+        }
+
+        // ids commit out of order (a file upload can finish after a later chat send), so a late
+        // message goes to its sorted place instead of being dropped
+        synchronized void append(ChatMessage message) {
+            ChatMessage first = messages.peekFirst();
+            if (first != null && message.getId() < first.getId() && !complete) {
+                // older than the buffered window, reads that reach back that far go to the database
+                return;
+            }
+
+            ArrayDeque<ChatMessage> newer = new ArrayDeque<>();
+            while (!messages.isEmpty() && messages.peekLast().getId() >= message.getId()) {
+                newer.push(messages.removeLast());
+            }
+            boolean duplicate = !newer.isEmpty() && newer.peek().getId().equals(message.getId());
+            if (!duplicate) {
+                add(message);
+            }
+            messages.addAll(newer);
+            trim();
+        }
+
+        synchronized void clear() {
+            clearContents();
+            warm = false;
+        }
+
+        private void add(ChatMessage message) {
+            long size = estimateBytes(message);
+            messages.addLast(message);
+            bytes += size;
+            totalBytes.addAndGet(size);
+        }
+
+        private void trim() {
+            while (messages.size() > groupCapacity) {
+                long size = estimateBytes(messages.removeFirst());
+                bytes -= size;
+                totalBytes.addAndGet(-size);
+                complete = false;
+            }
+        }
+
+        private void clearContents() {
+            messages.clear();
+            totalBytes.addAndGet(-bytes);
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.config.GroupOrderedInboundExecutor;
+import com.studygroup.backend.controller.ChatController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Sends the latest messages of a group right after the client subscribes to /topic/group/{id},
+// so opening a chat needs no separate REST call. Clients opt in with a "history" header on the
+// SUBSCRIBE frame (the number of messages, or "true" for the default). The batch is delivered as
+// one MESSAGE frame on that same subscription, marked with a "history" header, and is read from
+// the history cache when the group is warm. It runs on the session's inbound lane, after the
+// broker has registered the subscription, so nothing sent afterwards can fall between the two.
+@Service
+public class ChatHistoryPushService {
+
+    private static final Pattern GROUP_TOPIC = Pattern.compile("^/topic/group/(\\d+)(/batch)?$");
+    private static final String HISTORY_HEADER = "history";
+
+    @Value("${chat.history-push.default-size:50}")
+    private int defaultSize;
+
+    @Value("${chat.history-push.max-size:100}")
+    private int maxSize;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private ChatBroadcastService chatBroadcastService;
+
+    @Autowired
+    private GroupOrderedInboundExecutor groupOrderedInboundExecutor;
+
+    @Autowired
+    @Lazy
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String requested = accessor.getFirstNativeHeader(HISTORY_HEADER);
+        String destination = accessor.getDestination();
+        if (requested == null || destination == null) {
+            return;
+        }
+
+        Matcher matcher = GROUP_TOPIC.matcher(destination);
+        int size = sizeOf(requested);
+        if (!matcher.matches() || size <= 0) {
+            return;
+        }
+
+        Long groupId;
+        try {
+            groupId = Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+        groupOrderedInboundExecutor.execute(sessionId, () -> push(groupId, destination, sessionId, subscriptionId, size));
+    }
+
+    private void push(Long groupId, String destination, String sessionId, String subscriptionId, int size) {
+        try {
+            ChatService.MessagePage page = chatService.getGroupMessagesPage(groupId, null, null, size);
+            List<ChatController.ChatMessagePayload> messages = page.getMessages().stream()
+                    .map(ChatController.ChatMessagePayload::from)
+                    .collect(Collectors.toList());
+
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("groupId", groupId);
+            payload.put("history", true);
+            payload.put("messages", messages);
+            payload.put("nextCursor", page.getNextCursor());
+            payload.put("prevCursor", page.getPrevCursor());
+            payload.put("hasMore", page.isHasMore());
+
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(sessionId);
+            headers.setSubscriptionId(subscriptionId);
+            headers.setDestination(destination);
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            headers.setNativeHeader(HISTORY_HEADER, "true");
+            headers.setLeaveMutable(true);
+            clientOutboundChannel.send(MessageBuilder.createMessage(
+                    chatBroadcastService.encode(payload), headers.getMessageHeaders()));
+        } catch (Exception e) {
+            System.err.println("Error pushing chat history: " + e.getMessage());
+        }
+    }
+
+    private int sizeOf(String requested) {
+        if ("true".equalsIgnoreCase(requested)) {
+            return defaultSize;
+        }
+        try {
+            return Math.min(Integer.parseInt(requested.trim()), maxSize);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.GroupChatSummary;
+import com.studygroup.backend.repository.ChatMessageRepository;
+import com.studygroup.backend.repository.ChatReadStateRepository;
+import com.studygroup.backend.repository.GroupChatSummaryRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Chat inbox: last message and unread count of every group of a user. Both sides are
+// denormalized so the inbox is a single query:
+//   group_chat_summaries - last message and running message count per group
+//   chat_read_states     - per user and group, the last read message id and the message count
+//                          at that point, so unread = message_count - read_count
+// Both change far more often than the inbox is read, so they are coalesced in memory and written
+// by scheduled flushes: one summary upsert per group with the messages committed since the last
+// flush, and only the highest read id per user and group. Summaries only count committed
+// messages; a crash loses at most one interval of counts, which skews those groups' unread numbers.
+@Service
+public class ChatInboxService implements ApplicationRunner {
+
+    private static final int PREVIEW_LENGTH = 200;
+
+    // one-off backfill for groups that already had messages before summaries existed
+    private static final String BACKFILL_SQL = "INSERT IGNORE INTO group_chat_summaries " +
+            "(group_id, last_message_id, last_sender_id, last_sender_name, last_message_preview, " +
+            "last_message_type, last_message_at, message_count) " +
+            "SELECT m.group_id, m.id, m.sender_id, u.name, LEFT(m.content, " + PREVIEW_LENGTH + "), m.type, m.timestamp, c.message_count " +
+            "FROM (SELECT group_id, MAX(id) AS max_id, COUNT(*) AS message_count FROM chat_messages GROUP BY group_id) c " +
+            "JOIN chat_messages m ON m.id = c.max_id " +
+            "LEFT JOIN users u ON u.id = m.sender_id";
+
+    // existing members start with everything read, not with the group's whole history unread
+    private static final String BACKFILL_READ_STATES_SQL = "INSERT IGNORE INTO chat_read_states " +
+            "(user_id, group_id, last_read_message_id, read_count) " +
+            "SELECT gm.user_id, s.group_id, s.last_message_id, s.message_count " +
+            "FROM group_chat_summaries s JOIN group_members gm ON gm.group_id = s.group_id " +
+            "WHERE gm.status = 'ACTIVE'";
+
+    @Autowired
+    private GroupChatSummaryRepository groupChatSummaryRepository;
+
+    @Autowired
+    private ChatReadStateRepository chatReadStateRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    // userId -> groupId -> highest message id read, only ever mutated inside compute()
+    private final Map<Long, Map<Long, Long>> pendingReads = new ConcurrentHashMap<>();
+
+    // groupId -> committed messages not yet added to the summary, only ever mutated inside compute()
+    private final Map<Long, PendingSummary> pendingSummaries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            if (groupChatSummaryRepository.count() == 0) {
+                int[] backfilled = new int[2];
+                transactionTemplate.executeWithoutResult(status -> {
+                    backfilled[0] = jdbcTemplate.update(BACKFILL_SQL);
+                    backfilled[1] = backfilled[0] > 0 ? jdbcTemplate.update(BACKFILL_READ_STATES_SQL) : 0;
+                });
+                if (backfilled[0] > 0) {
+                    System.out.println("Backfilled chat summaries for " + backfilled[0] + " groups and "
+                            + backfilled[1] + " read states");
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error backfilling chat summaries: " + e.getMessage());
+        }
+    }
+
+    // call in the transaction that inserts the messages, they are only counted once it commits
+    public void recordMessages(List<ChatMessage> messages) {
+        Map<Long, PendingSummary> byGroup = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            byGroup.merge(message.getGroup().getId(), new PendingSummary(message, 1), PendingSummary::merge);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    byGroup.forEach(ChatInboxService.this::queueSummary);
+                }
+            });
+        } else {
+            byGroup.forEach(this::queueSummary);
+        }
+    }
+
+    private void queueSummary(Long groupId, PendingSummary summary) {
+        pendingSummaries.merge(groupId, summary, PendingSummary::merge);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.inbox.summary-flush-interval-ms:1000}")
+    public void flushSummaries() {
+        for (Long groupId : pendingSummaries.keySet()) {
+            PendingSummary summary = pendingSummaries.remove(groupId);
+            if (summary == null) {
+                continue;
+            }
+            try {
+                ChatMessage latest = summary.latest;
+                transactionTemplate.executeWithoutResult(status -> groupChatSummaryRepository.recordMessages(
+                        groupId,
+                        latest.getId(),
+                        latest.getSender().getId(),
+                        latest.getSender().getName(),
+                        preview(latest.getContent()),
+                        latest.getType().name(),
+                        latest.getTimestamp(),
+                        summary.count));
+            } catch (Exception e) {
+                // kept for the next round so the count is not lost
+                queueSummary(groupId, summary);
+                System.err.println("Error saving chat summary of group " + groupId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // cheap enough to call for every read marker frame, nothing touches the database here
+    public void markRead(Long userId, Long groupId, Long messageId) {
+        if (userId == null || groupId == null || messageId == null) {
+            return;
+        }
+        pendingReads.compute(userId, (id, reads) -> {
+            Map<Long, Long> updated = reads != null ? reads : new HashMap<>();
+            updated.merge(groupId, messageId, Math::max);
+            return updated;
+        });
+    }
+
+    @Transactional
+    public List<GroupChatSummaryRepository.InboxEntry> getInbox(Long userId) {
+        // make recent messages and the user's own latest read markers visible before answering
+        flushSummaries();
+        flushUser(userId);
+        return groupChatSummaryRepository.findInbox(userId);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.inbox.read-flush-interval-ms:2000}")
+    public void flushReads() {
+        // read markers are resolved against the summaries, bring those up to date first
+        flushSummaries();
+        for (Long userId : pendingReads.keySet()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> flushUser(userId));
+            } catch (Exception e) {
+                System.err.println("Error saving chat read markers: " + e.getMessage());
+            }
+        }
+    }
+
+    private void flushUser(Long userId) {
+        Map<Long, Long> reads = pendingReads.remove(userId);
+        if (reads == null) {
+            return;
+        }
+
+        for (Map.Entry<Long, Long> read : reads.entrySet()) {
+            Long groupId = read.getKey();
+            GroupChatSummary summary = groupChatSummaryRepository.findById(groupId).orElse(null);
+            // the message read was committed after the last summary flush, try again next round
+            if (pendingSummaries.containsKey(groupId)
+                    && (summary == null || read.getValue() > summary.getLastMessageId())) {
+                markRead(userId, groupId, read.getValue());
+                continue;
+            }
+            if (summary == null) {
+                continue;
+            }
+
+            // reading the latest message is the common case and needs no count
+            long messageId;
+            long readCount;
+            if (read.getValue() >= summary.getLastMessageId()) {
+                messageId = summary.getLastMessageId();
+                readCount = summary.getMessageCount();
+            } else {
+                messageId = read.getValue();
+                // archived messages left the table but still count as read
+                readCount = chatMessageRepository.countByGroupIdAndIdLessThanEqual(groupId, messageId)
+                        + chatArchiveService.countUpTo(groupId, messageId);
+            }
+            chatReadStateRepository.advance(userId, groupId, messageId, readCount);
+        }
+    }
+
+    @Transactional
+    public void deleteGroup(Long groupId) {
+        pendingSummaries.remove(groupId);
+        groupChatSummaryRepository.deleteById(groupId);
+        chatReadStateRepository.deleteByGroupId(groupId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushReads();
+    }
+
+    private String preview(String content) {
+        if (content == null) {
+            return null;
+        }
+        return content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+    }
+
+    private static class PendingSummary {
+        private final ChatMessage latest;
+        private final long count;
+
+        PendingSummary(ChatMessage latest, long count) {
+            this.latest = latest;
+            this.count = count;
+        }
+
+        static PendingSummary merge(PendingSummary a, PendingSummary b) {
+            ChatMessage latest = b.latest.getId() > a.latest.getId() ? b.latest : a.latest;
+            return new PendingSummary(latest, a.count + b.count);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.repository.GroupMemberRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Active members of each group (id and email), cached for routing chat frames to per-user
+// queues. Entries are dropped on every node after each committed membership change (GroupService
+// goes through ChatClusterEvents), expire after a TTL as a safety net, and the least recently
+// used groups are evicted past max-groups.
+@Component
+public class ChatMembershipIndex {
+
+    @Value("${chat.multiplex.index-ttl-ms:300000}")
+    private long ttlMs;
+
+    @Value("${chat.multiplex.index-max-groups:5000}")
+    private int maxGroups;
+
+    @Autowired
+    private GroupMemberRepository groupMemberRepository;
+
+    // bumped on every invalidation, a load that raced with one is used once but not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LinkedHashMap<Long, Entry> groups = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > maxGroups;
+        }
+    };
+
+    public List<Member> getActiveMembers(Long groupId) {
+        long now = System.currentTimeMillis();
+        synchronized (groups) {
+            Entry entry = groups.get(groupId);
+            if (entry != null && entry.expiresAt > now) {
+                return entry.members;
+            }
+        }
+
+        long loadedGeneration = generation.get();
+        List<Member> members = new ArrayList<>();
+        for (Object[] row : groupMemberRepository.findActiveMemberEmailsByGroupId(groupId)) {
+            members.add(new Member((Long) row[0], (String) row[1]));
+        }
+        members = Collections.unmodifiableList(members);
+
+        synchronized (groups) {
+            if (generation.get() == loadedGeneration) {
+                groups.put(groupId, new Entry(members, now + ttlMs));
+            }
+        }
+        return members;
+    }
+
+    public void invalidate(Long groupId) {
+        synchronized (groups) {
+            generation.incrementAndGet();
+            groups.remove(groupId);
+        }
+    }
+
+    public static class Member {
+        private final Long userId;
+        private final String email;
+
+        public Member(Long userId, String email) {
+            this.userId = userId;
+            this.email = email;
+        }
+
+        public Long getUserId() { return userId; }
+        public String getEmail() { return email; }
+    }
+
+    private static class Entry {
+        private final List<Member> members;
+        private final long expiresAt;
+
+        Entry(List<Member> members, long expiresAt) {
+            this.members = members;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
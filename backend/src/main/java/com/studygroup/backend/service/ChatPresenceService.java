@@ -0,0 +1,204 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Online presence and typing indicators per group, kept only in memory and driven by STOMP
+// subscribe/unsubscribe/disconnect events. Changes only mark a group dirty, a scheduled flush
+// sends at most one snapshot per group to /topic/group/{id}/presence every flush interval.
+@Service
+public class ChatPresenceService {
+
+    private static final Pattern GROUP_TOPIC = Pattern.compile("^/topic/group/(\\d+)(/batch)?$");
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private ChatBroadcastService chatBroadcastService;
+
+    @Value("${chat.presence.typing-timeout-ms:5000}")
+    private long typingTimeoutMs;
+
+    private final Map<Long, GroupPresence> groups = new ConcurrentHashMap<>();
+
+    // sessionId -> subscriptionId -> groupId, needed to resolve UNSUBSCRIBE and disconnects
+    private final Map<String, Map<String, Long>> subscriptions = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        Matcher matcher = GROUP_TOPIC.matcher(destination);
+        ChatSessionRegistry.SessionInfo session = chatSessionRegistry.getSession(accessor.getSessionId());
+        if (!matcher.matches() || session == null) {
+            return;
+        }
+
+        Long groupId = Long.parseLong(matcher.group(1));
+        subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), groupId);
+        // joined inside compute, flush could otherwise drop the group as empty between lookup and join
+        groups.compute(groupId, (id, presence) -> {
+            GroupPresence current = presence != null ? presence : new GroupPresence();
+            current.join(accessor.getSessionId(), session.getUserId());
+            return current;
+        });
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, Long> sessionSubscriptions = accessor.getSessionId() != null
+                ? subscriptions.get(accessor.getSessionId()) : null;
+        if (sessionSubscriptions == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        Long groupId = sessionSubscriptions.remove(accessor.getSubscriptionId());
+        if (groupId != null) {
+            leave(groupId, accessor.getSessionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Long> sessionSubscriptions = subscriptions.remove(event.getSessionId());
+        if (sessionSubscriptions != null) {
+            for (Long groupId : sessionSubscriptions.values()) {
+                leave(groupId, event.getSessionId());
+            }
+        }
+    }
+
+    public void setTyping(Long groupId, User user, boolean typing) {
+        GroupPresence presence = groups.get(groupId);
+        if (presence != null) {
+            presence.setTyping(user, typing, System.currentTimeMillis() + typingTimeoutMs);
+        }
+    }
+
+    private void leave(Long groupId, String sessionId) {
+        GroupPresence presence = groups.get(groupId);
+        if (presence != null) {
+            presence.leave(sessionId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:300}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, GroupPresence> entry : groups.entrySet()) {
+            GroupPresence presence = entry.getValue();
+            presence.expireTyping(now);
+            if (!presence.dirty.compareAndSet(true, false)) {
+                continue;
+            }
+
+            Long groupId = entry.getKey();
+            groups.computeIfPresent(groupId, (id, current) -> current.isEmpty() ? null : current);
+
+            try {
+                chatBroadcastService.send("/topic/group/" + groupId + "/presence",
+                        chatBroadcastService.encode(presence.snapshot(groupId)));
+            } catch (Exception e) {
+                System.err.println("Error sending presence update: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class GroupPresence {
+        // sessionId -> userId, one user can be online from several tabs
+        private final Map<String, Long> sessions = new ConcurrentHashMap<>();
+        // userId -> typing state, entries expire if the client never sends "stopped typing"
+        private final Map<Long, Typing> typing = new ConcurrentHashMap<>();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        void join(String sessionId, Long userId) {
+            if (sessions.put(sessionId, userId) == null) {
+                dirty.set(true);
+            }
+        }
+
+        void leave(String sessionId) {
+            Long userId = sessions.remove(sessionId);
+            if (userId != null) {
+                if (!sessions.containsValue(userId)) {
+                    typing.remove(userId);
+                }
+                dirty.set(true);
+            }
+        }
+
+        void setTyping(User user, boolean isTyping, long expiresAt) {
+            if (isTyping) {
+                if (typing.put(user.getId(), new Typing(user.getName(), expiresAt)) == null) {
+                    dirty.set(true);
+                }
+            } else if (typing.remove(user.getId()) != null) {
+                dirty.set(true);
+            }
+        }
+
+        void expireTyping(long now) {
+            if (typing.values().removeIf(entry -> entry.expiresAt < now)) {
+                dirty.set(true);
+            }
+        }
+
+        boolean isEmpty() {
+            return sessions.isEmpty() && typing.isEmpty();
+        }
+
+        Map<String, Object> snapshot(Long groupId) {
+            Set<Long> online = new HashSet<>(sessions.values());
+
+            List<Map<String, Object>> typingUsers = new ArrayList<>();
+            typing.forEach((userId, entry) -> {
+                Map<String, Object> typingUser = new HashMap<>();
+                typingUser.put("userId", userId);
+                typingUser.put("name", entry.name);
+                typingUsers.add(typingUser);
+            });
+
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("groupId", groupId);
+            snapshot.put("online", online);
+            snapshot.put("typing", typingUsers);
+            return snapshot;
+        }
+    }
+
+    private static class Typing {
+        private final String name;
+        private final long expiresAt;
+
+        Typing(String name, long expiresAt) {
+            this.name = name;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParserBase;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Full-text search over chat messages backed by an on-disk Lucene index.
+// New messages are indexed asynchronously, searches read from a near-real-time searcher that is
+// refreshed every second. Start the app with --rebuild-chat-index to re-index the whole table
+// together with the cold archive. The rebuild writes into a separate directory while live
+// indexing carries on, then swaps the result in and replays the updates made in the meantime.
+// Updates dropped because the indexing queue was full are counted and leave a marker next to the
+// index, the index is then rebuilt in the background once the queue has drained and on next start.
+@Service
+public class ChatSearchService implements ApplicationRunner {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_GROUP_ID = "groupId";
+    private static final String FIELD_SENDER_ID = "senderId";
+    private static final String FIELD_SENDER_NAME = "senderName";
+    private static final String FIELD_CONTENT = "content";
+    private static final String FIELD_FILE_NAME = "fileName";
+    private static final String FIELD_TYPE = "type";
+    private static final String FIELD_TIMESTAMP = "timestamp";
+
+    private static final int REBUILD_CHUNK_SIZE = 10000;
+
+    private static final String REBUILD_SQL = "SELECT m.id, m.group_id, m.sender_id, u.name, m.content, " +
+            "m.file_name, m.type, m.timestamp FROM chat_messages m JOIN users u ON u.id = m.sender_id " +
+            "WHERE m.id BETWEEN ? AND ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.search.index-dir:./data/chat-index}")
+    private String indexDir;
+
+    @Value("${chat.search.indexing-queue-capacity:10000}")
+    private int indexingQueueCapacity;
+
+    @Value("${chat.search.rebuild-threads:4}")
+    private int rebuildThreads;
+
+    // rebuild in the background after updates were dropped, otherwise only at the next start
+    @Value("${chat.search.auto-rebuild:true}")
+    private boolean autoRebuild;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private FSDirectory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private ThreadPoolExecutor indexer;
+
+    // guards writer changes, commits and refreshes so none of them sees a half swapped index
+    private final Object indexLock = new Object();
+    // live updates made while a rebuild runs, replayed on top of the rebuilt index
+    private List<IndexUpdate> pendingUpdates;
+
+    // set once an update was dropped, the index misses messages until it is rebuilt
+    private final AtomicBoolean rebuildNeeded = new AtomicBoolean();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private Counter droppedCounter;
+
+    private interface IndexUpdate {
+        void apply(IndexWriter target) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path path = Paths.get(indexDir);
+        directory = FSDirectory.open(path);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+
+        droppedCounter = meterRegistry.counter("chat.search.index.dropped");
+        Gauge.builder("chat.search.index.rebuild_needed", rebuildNeeded, flag -> flag.get() ? 1 : 0)
+                .description("1 while the chat index misses dropped updates")
+                .register(meterRegistry);
+        // a previous run dropped updates and stopped before rebuilding
+        rebuildNeeded.set(Files.exists(rebuildMarker()));
+
+        // single thread keeps index updates off the send path, drops work rather than block when saturated
+        indexer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(indexingQueueCapacity), r -> {
+                    Thread thread = new Thread(r, "chat-search-indexer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, executor) -> {
+                    if (!executor.isShutdown()) {
+                        dropped();
+                    }
+                });
+    }
+
+    private void dropped() {
+        droppedCounter.increment();
+        if (!rebuildNeeded.compareAndSet(false, true)) {
+            return;
+        }
+        System.err.println("Chat indexing queue is full, the chat index will be rebuilt");
+        try {
+            Files.createFile(rebuildMarker());
+        } catch (FileAlreadyExistsException e) {
+            // left by an earlier drop
+        } catch (IOException e) {
+            System.err.println("Error marking chat index for rebuild: " + e.getMessage());
+        }
+    }
+
+    private Path rebuildMarker() {
+        return Paths.get(indexDir + ".rebuild-needed");
+    }
+
+    public boolean isRebuildNeeded() {
+        return rebuildNeeded.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void index(ChatMessage message) {
+        if (!enabled || message.getId() == null) {
+            return;
+        }
+
+        Document document = toDocument(message.getId(), message.getGroup().getId(), message.getSender().getId(),
+                message.getSender().getName(), message.getContent(), message.getFileName(),
+                message.getType().name(), message.getTimestamp() != null ? message.getTimestamp().toString() : null);
+        indexer.execute(() -> {
+            try {
+                update(target -> target.updateDocument(new Term(FIELD_ID, document.get(FIELD_ID)), document));
+            } catch (IOException e) {
+                System.err.println("Failed to index chat message " + message.getId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    public void deleteGroup(Long groupId) {
+        if (!enabled) {
+            return;
+        }
+        indexer.execute(() -> {
+            try {
+                update(target -> target.deleteDocuments(new Term(FIELD_GROUP_ID, groupId.toString())));
+            } catch (IOException e) {
+                System.err.println("Failed to remove group " + groupId + " from chat index: " + e.getMessage());
+            }
+        });
+    }
+
+    private void update(IndexUpdate update) throws IOException {
+        synchronized (indexLock) {
+            update.apply(writer);
+            if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+            }
+        }
+    }
+
+    // ranked, highlighted results for one group
+    public Map<String, Object> search(Long groupId, String queryText, int page, int size) {
+        if (!enabled) {
+            throw new RuntimeException("Chat search is disabled");
+        }
+        if (queryText == null || queryText.trim().isEmpty()) {
+            throw new RuntimeException("Search query is required");
+        }
+
+        Query textQuery = parseQuery(queryText.trim());
+        Query query = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(FIELD_GROUP_ID, groupId.toString())), BooleanClause.Occur.FILTER)
+                .add(textQuery, BooleanClause.Occur.MUST)
+                .build();
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            // the controller bounds the depth, this only keeps a direct caller from overflowing
+            int depth = (int) Math.min((long) (page + 1) * size, Integer.MAX_VALUE);
+            TopDocs topDocs = searcher.search(query, depth);
+
+            Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter("<mark>", "</mark>"),
+                    new SimpleHTMLEncoder(), new QueryScorer(textQuery));
+
+            List<Map<String, Object>> results = new ArrayList<>();
+            ScoreDoc[] hits = topDocs.scoreDocs;
+            for (long i = (long) page * size; i < hits.length; i++) {
+                ScoreDoc hit = hits[(int) i];
+                Document document = searcher.storedFields().document(hit.doc);
+                String content = document.get(FIELD_CONTENT);
+
+                String highlight = content != null
+                        ? highlighter.getBestFragment(analyzer, FIELD_CONTENT, content)
+                        : null;
+
+                Map<String, Object> result = new HashMap<>();
+                result.put("messageId", Long.parseLong(document.get(FIELD_ID)));
+                result.put("senderId", Long.parseLong(document.get(FIELD_SENDER_ID)));
+                result.put("senderName", document.get(FIELD_SENDER_NAME));
+                result.put("type", document.get(FIELD_TYPE));
+                result.put("content", content);
+                result.put("fileName", document.get(FIELD_FILE_NAME));
+                result.put("timestamp", document.get(FIELD_TIMESTAMP));
+                result.put("highlight", highlight != null || content == null ? highlight : SimpleHTMLEncoder.htmlEncode(content));
+                result.put("score", hit.score);
+                results.add(result);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("results", results);
+            response.put("totalHits", topDocs.totalHits.value);
+            response.put("page", page);
+            response.put("size", size);
+            return response;
+        } catch (Exception e) {
+            throw new RuntimeException("Search failed: " + e.getMessage());
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    System.err.println("Error releasing chat searcher: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Query parseQuery(String queryText) {
+        MultiFieldQueryParser parser = new MultiFieldQueryParser(new String[]{FIELD_CONTENT, FIELD_FILE_NAME}, analyzer);
+        parser.setDefaultOperator(QueryParserBase.AND_OPERATOR);
+        try {
+            return parser.parse(queryText);
+        } catch (ParseException e) {
+            // fall back to plain terms when the input is not valid query syntax
+            try {
+                return parser.parse(QueryParserBase.escape(queryText));
+            } catch (ParseException ex) {
+                throw new RuntimeException("Invalid search query");
+            }
+        }
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void refreshSearcher() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            synchronized (indexLock) {
+                searcherManager.maybeRefresh();
+            }
+        } catch (IOException e) {
+            System.err.println("Error refreshing chat searcher: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelay = 30000)
+    public void commitIndex() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            synchronized (indexLock) {
+                writer.commit();
+            }
+        } catch (IOException e) {
+            System.err.println("Error committing chat index: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled && (args.containsOption("rebuild-chat-index") || rebuildNeeded.get())) {
+            rebuildIndex();
+        }
+    }
+
+    // off the scheduler thread, a rebuild of a large history takes minutes
+    @Scheduled(fixedDelayString = "${chat.search.rebuild-check-ms:60000}")
+    public void rebuildIfNeeded() {
+        if (!enabled || !autoRebuild || !rebuildNeeded.get() || rebuilding.get() || !indexer.getQueue().isEmpty()) {
+            return;
+        }
+        Thread thread = new Thread(this::rebuildIndex, "chat-search-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // re-indexes chat_messages in id ranges and the archive group by group on a pool of threads into
+    // a fresh directory, IndexWriter is safe to share. Searches and live indexing keep using the
+    // current index until the rebuilt one is swapped in.
+    public void rebuildIndex() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Path rebuildPath = Paths.get(indexDir + "-rebuild");
+        synchronized (indexLock) {
+            pendingUpdates = new ArrayList<>();
+        }
+        // updates dropped from now on are not replayed either and flag the index again
+        rebuildNeeded.set(false);
+
+        try {
+            long start = System.currentTimeMillis();
+            int indexed;
+            try (FSDirectory rebuildDirectory = FSDirectory.open(rebuildPath)) {
+                IndexWriterConfig config = new IndexWriterConfig(analyzer);
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                try (IndexWriter rebuildWriter = new IndexWriter(rebuildDirectory, config)) {
+                    indexed = indexAll(rebuildWriter);
+                    rebuildWriter.commit();
+                }
+                swapIn(rebuildDirectory);
+            }
+            System.out.println("Chat index rebuilt: " + indexed + " messages in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            if (!rebuildNeeded.get()) {
+                Files.deleteIfExists(rebuildMarker());
+            }
+        } catch (Exception e) {
+            rebuildNeeded.set(true);
+            System.err.println("Chat index rebuild failed: " + e.getMessage());
+        } finally {
+            synchronized (indexLock) {
+                pendingUpdates = null;
+            }
+            rebuilding.set(false);
+            try {
+                IOUtils.rm(rebuildPath);
+            } catch (IOException e) {
+                System.err.println("Error removing chat index rebuild directory: " + e.getMessage());
+            }
+        }
+    }
+
+    private int indexAll(IndexWriter target) throws Exception {
+        Long minId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM chat_messages", Long.class);
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM chat_messages", Long.class);
+
+        ExecutorService pool = Executors.newFixedThreadPool(rebuildThreads);
+        try {
+            List<Future<Integer>> chunks = new ArrayList<>();
+            if (minId != null && maxId != null) {
+                for (long from = minId; from <= maxId; from += REBUILD_CHUNK_SIZE) {
+                    long to = Math.min(from + REBUILD_CHUNK_SIZE - 1, maxId);
+                    long chunkStart = from;
+                    chunks.add(pool.submit(() -> indexRange(target, chunkStart, to)));
+                }
+            }
+
+            int indexed = 0;
+            for (Future<Integer> chunk : chunks) {
+                indexed += chunk.get();
+            }
+
+            // after the table, so the archive's updates replace any row indexed twice
+            chunks.clear();
+            for (Long groupId : chatArchiveService.archivedGroupIds()) {
+                chunks.add(pool.submit(() -> indexArchivedGroup(target, groupId)));
+            }
+            for (Future<Integer> chunk : chunks) {
+                indexed += chunk.get();
+            }
+            return indexed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // replaces the live index with the rebuilt one and replays what was indexed or deleted while
+    // the rebuild ran, all under the lock so no refresh or commit sees the emptied index
+    private void swapIn(FSDirectory rebuildDirectory) throws IOException {
+        synchronized (indexLock) {
+            writer.deleteAll();
+            writer.addIndexes(rebuildDirectory);
+            for (IndexUpdate update : pendingUpdates) {
+                update.apply(writer);
+            }
+            pendingUpdates = null;
+            writer.commit();
+            searcherManager.maybeRefresh();
+        }
+    }
+
+    private int indexRange(IndexWriter target, long fromId, long toId) {
+        List<Document> documents = jdbcTemplate.query(REBUILD_SQL, (rs, rowNum) -> {
+            Timestamp timestamp = rs.getTimestamp("timestamp");
+            return toDocument(rs.getLong("id"), rs.getLong("group_id"), rs.getLong("sender_id"),
+                    rs.getString("name"), rs.getString("content"), rs.getString("file_name"),
+                    rs.getString("type"), timestamp != null ? timestamp.toLocalDateTime().toString() : null);
+        }, fromId, toId);
+
+        try {
+            target.addDocuments(documents);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to index messages " + fromId + "-" + toId);
+        }
+        return documents.size();
+    }
+
+    // updates instead of adds, rows a stopped archive run left in the table were already indexed
+    private int indexArchivedGroup(IndexWriter target, Long groupId) {
+        int[] indexed = {0};
+        chatArchiveService.forEach(groupId, message -> {
+            Document document = toDocument(message.getId(), groupId, message.getSender().getId(),
+                    message.getSender().getName(), message.getContent(), message.getFileName(),
+                    message.getType().name(), message.getTimestamp() != null ? message.getTimestamp().toString() : null);
+            try {
+                target.updateDocument(new Term(FIELD_ID, document.get(FIELD_ID)), document);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to index archived messages of group " + groupId);
+            }
+            indexed[0]++;
+        });
+        return indexed[0];
+    }
+
+    private Document toDocument(Long id, Long groupId, Long senderId, String senderName, String content,
+                                String fileName, String type, String timestamp) {
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, id.toString(), Field.Store.YES));
+        document.add(new StringField(FIELD_GROUP_ID, groupId.toString(), Field.Store.YES));
+        document.add(new StoredField(FIELD_SENDER_ID, senderId.toString()));
+        if (senderName != null) {
+            document.add(new StoredField(FIELD_SENDER_NAME, senderName));
+        }
+        if (content != null) {
+            document.add(new TextField(FIELD_CONTENT, content, Field.Store.YES));
+        }
+        if (fileName != null) {
+            document.add(new TextField(FIELD_FILE_NAME, fileName, Field.Store.YES));
+        }
+        document.add(new StoredField(FIELD_TYPE, type));
+        if (timestamp != null) {
+            document.add(new StoredField(FIELD_TIMESTAMP, timestamp));
+        }
+        return document;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            indexer.shutdown();
+            indexer.awaitTermination(10, TimeUnit.SECONDS);
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        } catch (Exception e) {
+            System.err.println("Error closing chat index: " + e.getMessage());
+        }
+    }
+}
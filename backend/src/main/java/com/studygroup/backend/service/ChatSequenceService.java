@@ -0,0 +1,107 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.repository.ChatMessageRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands out per-group sequence numbers (1, 2, 3, ...) for chat messages, so clients can detect
+// missed frames and resume with ?since=<seq>. Counters live in memory and are seeded from
+// MAX(seq) of the table and the cold archive the first time a group is used. Seeding is guarded
+// by lock stripes, so groups that hash to different stripes never wait on each other and a group
+// is only seeded once. Like the write-behind ids this assumes a single backend instance, the
+// unique (group_id, seq) index rejects collisions otherwise.
+@Service
+public class ChatSequenceService {
+
+    private static final int STRIPES = 64;
+
+    // numbers the history that existed before sequences were introduced, in id order per group
+    private static final String BACKFILL_SQL = "UPDATE chat_messages m " +
+            "JOIN (SELECT id, ROW_NUMBER() OVER (PARTITION BY group_id ORDER BY id) AS rn " +
+            "FROM chat_messages WHERE seq IS NULL) r ON r.id = m.id " +
+            "SET m.seq = r.rn";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    // makes sure Hibernate has created the seq column before the backfill runs
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    private final Map<Long, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final Object[] stripes = new Object[STRIPES];
+
+    // every group with history has a counter, the rest start at zero without asking the database
+    private volatile boolean preloaded;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+
+        // runs before the web server accepts traffic, so no sequence has been handed out yet
+        try {
+            Integer unnumbered = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM chat_messages WHERE seq IS NULL", Integer.class);
+            if (unnumbered != null && unnumbered > 0) {
+                int updated = jdbcTemplate.update(BACKFILL_SQL);
+                System.out.println("Assigned chat sequence numbers to " + updated + " messages");
+            }
+        } catch (Exception e) {
+            System.err.println("Error backfilling chat sequence numbers: " + e.getMessage());
+        }
+    }
+
+    public long next(Long groupId) {
+        AtomicLong counter = counters.get(groupId);
+        if (counter == null) {
+            counter = seed(groupId);
+        }
+        return counter.incrementAndGet();
+    }
+
+    private AtomicLong seed(Long groupId) {
+        synchronized (stripes[Math.floorMod(Long.hashCode(groupId), STRIPES)]) {
+            AtomicLong counter = counters.get(groupId);
+            if (counter == null) {
+                Long maxSeq = preloaded ? Long.valueOf(0) : jdbcTemplate.queryForObject(
+                        "SELECT COALESCE(MAX(seq), 0) FROM chat_messages WHERE group_id = ?", Long.class, groupId);
+                // a group whose whole history was archived has no rows left to seed from
+                long archived = chatArchiveService.maxSeq(groupId);
+                counter = new AtomicLong(Math.max(maxSeq != null ? maxSeq : 0, archived));
+                counters.put(groupId, counter);
+            }
+            return counter;
+        }
+    }
+
+    // seeds every group at once so later sends never query chat_messages, used by the commit log
+    // whose sends must keep working while the database is down
+    public void preload() {
+        jdbcTemplate.query("SELECT group_id, MAX(seq) FROM chat_messages GROUP BY group_id", row -> {
+            advanceTo(row.getLong(1), row.getLong(2));
+        });
+        preloaded = true;
+    }
+
+    // makes sure the next number handed out for the group is above seq
+    public void advanceTo(Long groupId, long seq) {
+        AtomicLong counter = counters.computeIfAbsent(groupId, id -> new AtomicLong());
+        counter.accumulateAndGet(seq, Math::max);
+    }
+
+    // history was deleted, numbering starts over
+    public void reset(Long groupId) {
+        counters.remove(groupId);
+    }
+}
@@ -5,14 +5,32 @@ import com.studygroup.backend.repository.ChatMessageRepository;
 import com.studygroup.backend.repository.GroupRepository;
 import com.studygroup.backend.repository.UserRepository;
 import com.studygroup.backend.controller.ChatController;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 @Service
@@ -31,29 +49,65 @@ public class ChatService {
     @Autowired
     private GroupService groupService;
 
+    @Autowired
+    private ChatWriteBehindService chatWriteBehindService;
+
+    @Autowired
+    private ChatHistoryCache chatHistoryCache;
+
+    @Autowired
+    private ChatSearchService chatSearchService;
+
+    @Autowired
+    private ChatInboxService chatInboxService;
+
+    @Autowired
+    private ChatSequenceService chatSequenceService;
+
+    @Autowired
+    private ChatCommitLog chatCommitLog;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    // a hole in the sequence younger than this may still be an uncommitted insert
+    @Value("${chat.sequence.gap-grace-ms:5000}")
+    private long gapGraceMs;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        // write-behind messages only reach the cache and the index once their row is committed
+        chatWriteBehindService.setPersistedListener(this::onPersisted);
+    }
+
     // URL pattern for detecting link
     private static final Pattern URL_PATTERN = Pattern.compile(
             "^(https?://)?([\\w-]+\\.)+[\\w-]+(/[\\w- ./?%&=]*)?$",
             Pattern.CASE_INSENSITIVE
     );
 
-    public ChatMessage saveMessage(Long groupId, ChatController.ChatMessageRequest messageRequest) {
-        Group group = groupRepository.findById(groupId)
-                .orElseThrow(() -> new RuntimeException("Group not found"));
-
-        User sender = userRepository.findById(messageRequest.getSenderId())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        // Verify sender is a member of the group
-        GroupMember membership = groupService.getUserMembershipStatus(sender.getId(), groupId);
-        if (membership == null || membership.getStatus() != GroupMemberStatus.ACTIVE) {
-            throw new RuntimeException("User is not an active member of this group");
-        }
+    // the STOMP session is already authenticated and checked against the group, so no lookups here.
+    // Runs without a surrounding transaction so the commit log path never touches the database,
+    // the other modes open their own in persist().
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ChatMessage saveMessage(Long groupId, User sender, ChatController.ChatMessageRequest messageRequest,
+                                   String sessionId) {
+        // only the id is read until persist() swaps in a managed reference
+        Group group = new Group();
+        group.setId(groupId);
 
         ChatMessage message = new ChatMessage();
         message.setGroup(group);
         message.setSender(sender);
         message.setContent(messageRequest.getContent());
+        message.setClientMessageId(messageRequest.getClientMessageId());
+        message.setSenderSessionId(sessionId);
 
         // Auto-detect link type if not specified
         MessageType messageType = messageRequest.getType();
@@ -70,7 +124,7 @@ public class ChatService {
             message.setFileSize(messageRequest.getFileSize());
         }
 
-        return chatMessageRepository.save(message);
+        return persist(message);
     }
 
     public ChatMessage saveFileMessage(Long groupId, Long userId, ChatController.FileUploadRequest request) {
@@ -93,7 +147,7 @@ public class ChatService {
         message.setFileType(request.getFileType());
         message.setFileSize(request.getFileSize());
 
-        return chatMessageRepository.save(message);
+        return persist(message);
     }
 
     public ChatMessage saveLinkMessage(Long groupId, Long userId, String linkUrl, String title) {
@@ -114,7 +168,63 @@ public class ChatService {
             message.setFileName(title);
         }
 
-        return chatMessageRepository.save(message);
+        return persist(message);
+    }
+
+    // with the commit log the message is durable once fsynced there and the row is inserted by its
+    // projection. In write-behind mode id and seq come from memory and the batch writer inserts the
+    // row later. Neither opens a transaction or borrows a connection. Otherwise this joins the
+    // caller's transaction or opens one.
+    private ChatMessage persist(ChatMessage message) {
+        if (chatCommitLog.isEnabled()) {
+            message.setSeq(chatSequenceService.next(message.getGroup().getId()));
+            chatWriteBehindService.allocate(message);
+            chatCommitLog.append(message);
+            chatWriteBehindService.acknowledge(message, "PERSISTED");
+            onPersisted(message);
+            return message;
+        }
+        if (chatWriteBehindService.isEnabled()) {
+            message.setSeq(chatSequenceService.next(message.getGroup().getId()));
+            return chatWriteBehindService.enqueue(message);
+        }
+        return transactionTemplate.execute(status -> persistToDatabase(message));
+    }
+
+    private ChatMessage persistToDatabase(ChatMessage message) {
+        // returns the managed instance when the caller already loaded the group
+        message.setGroup(groupRepository.getReferenceById(message.getGroup().getId()));
+        message.setSeq(chatSequenceService.next(message.getGroup().getId()));
+
+        ChatMessage saved = chatMessageRepository.save(message);
+        chatInboxService.recordMessages(List.of(saved));
+        // only cache and index the message once it is committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    onPersisted(saved);
+                }
+            });
+        } else {
+            onPersisted(saved);
+        }
+        return saved;
+    }
+
+    private void onPersisted(ChatMessage message) {
+        chatHistoryCache.append(message);
+        chatSearchService.index(message);
+    }
+
+    // the message an earlier attempt of a retried send produced
+    @Transactional(readOnly = true)
+    public Optional<ChatMessage> findByClientMessageId(Long groupId, Long senderId, String clientMessageId) {
+        return chatMessageRepository.findByGroupIdAndSenderIdAndClientMessageId(groupId, senderId, clientMessageId);
+    }
+
+    public Map<String, Object> searchGroupMessages(Long groupId, String query, int page, int size) {
+        return chatSearchService.search(groupId, query, page, size);
     }
 
     public List<ChatMessage> getGroupMessages(Long groupId, int page, int size) {
@@ -122,7 +232,257 @@ public class ChatService {
                 .orElseThrow(() -> new RuntimeException("Group not found"));
 
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "timestamp"));
-        return chatMessageRepository.findByGroupOrderByTimestampDesc(group, pageable).getContent();
+        Page<ChatMessage> stored = chatMessageRepository.findByGroupOrderByTimestampDesc(group, pageable);
+        if (stored.getContent().size() >= size || !chatArchiveService.isEnabled()) {
+            return stored.getContent();
+        }
+
+        // pages past the end of the table continue into the archive, which holds everything older
+        long skip = Math.max(0, (long) page * size - stored.getTotalElements());
+        List<ChatMessage> archived = chatArchiveService.readOffset(groupId, skip, size - stored.getContent().size());
+        List<ChatMessage> messages = new ArrayList<>(stored.getContent());
+        messages.addAll(hydrate(groupId, archived));
+        return messages;
+    }
+
+    // cursor based history, seeks on (group_id, id) instead of OFFSET and never runs a count query
+    public MessagePage getGroupMessagesPage(Long groupId, Long beforeId, Long afterId, int size) {
+        // recent pages are answered from the in-memory ring buffer when possible
+        List<ChatMessage> cached = afterId == null ? readFromCache(groupId, beforeId, size + 1) : null;
+        if (cached == null && afterId == null) {
+            cached = readFromCommitLog(groupId, beforeId, size + 1);
+        }
+
+        List<ChatMessage> messages;
+        if (cached != null) {
+            messages = new ArrayList<>(cached);
+        } else {
+            if (!groupRepository.existsById(groupId)) {
+                throw new RuntimeException("Group not found");
+            }
+
+            // fetch one extra row to know if there is more without counting
+            Pageable limit = PageRequest.of(0, size + 1);
+            if (afterId != null) {
+                messages = new ArrayList<>(chatMessageRepository.findByGroupIdAndIdGreaterThanOrderByIdAsc(groupId, afterId, limit));
+                if (messages.size() <= size) {
+                    List<ChatMessage> newer = withUnprojected(groupId, new ArrayList<>(), afterId, Integer.MAX_VALUE);
+                    Collections.reverse(newer);
+                    messages = mergeAscending(messages, newer, size + 1);
+                }
+            } else if (beforeId != null) {
+                messages = withArchived(groupId,
+                        chatMessageRepository.findByGroupIdAndIdLessThanOrderByIdDesc(groupId, beforeId, limit), beforeId, size + 1);
+            } else {
+                messages = withArchived(groupId,
+                        withUnprojected(groupId, chatMessageRepository.findByGroupIdOrderByIdDesc(groupId, limit), 0, size + 1),
+                        null, size + 1);
+            }
+        }
+
+        boolean hasMore = messages.size() > size;
+        if (hasMore) {
+            messages.remove(messages.size() - 1);
+        }
+
+        // newer pages are read ascending, but history is always returned newest first
+        if (afterId != null) {
+            Collections.reverse(messages);
+        }
+
+        String nextCursor = null;
+        String prevCursor = null;
+        if (!messages.isEmpty()) {
+            Long oldestId = messages.get(messages.size() - 1).getId();
+            Long newestId = messages.get(0).getId();
+            if (afterId != null || hasMore) {
+                nextCursor = encodeCursor(CURSOR_BEFORE, oldestId);
+            }
+            prevCursor = encodeCursor(CURSOR_AFTER, newestId);
+        } else if (afterId != null) {
+            prevCursor = encodeCursor(CURSOR_AFTER, afterId);
+        }
+
+        return new MessagePage(messages, nextCursor, prevCursor, hasMore);
+    }
+
+    // messages after the given sequence number, oldest first, for clients resuming after a reconnect.
+    // Stops at a hole in the sequence while it is recent, the missing message may still be in
+    // flight, it reaches the client live or with its next call from lastSeq.
+    public GapFill getMessagesSince(Long groupId, Long sinceSeq, int size) {
+        if (!groupRepository.existsById(groupId)) {
+            throw new RuntimeException("Group not found");
+        }
+
+        // a client away for longer than the archive window resumes from the cold archive first
+        List<ChatMessage> messages = new ArrayList<>();
+        if (sinceSeq < chatArchiveService.maxSeq(groupId)) {
+            messages.addAll(hydrate(groupId, chatArchiveService.readSince(groupId, sinceSeq, size + 1)));
+        }
+        if (messages.size() <= size) {
+            long tableSince = messages.isEmpty() ? sinceSeq : messages.get(messages.size() - 1).getSeq();
+            messages.addAll(chatMessageRepository.findByGroupIdAndSeqGreaterThanOrderBySeqAsc(
+                    groupId, tableSince, PageRequest.of(0, size + 1 - messages.size())));
+        }
+
+        LocalDateTime graceLimit = LocalDateTime.now().minusNanos(gapGraceMs * 1_000_000L);
+        long expected = sinceSeq + 1;
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            // holes left by rolled back inserts are skipped once they are old enough
+            if (message.getSeq() != expected && message.getTimestamp().isAfter(graceLimit)) {
+                return new GapFill(new ArrayList<>(messages.subList(0, i)), expected - 1, false);
+            }
+            expected = message.getSeq() + 1;
+        }
+
+        boolean hasMore = messages.size() > size;
+        if (hasMore) {
+            messages.remove(messages.size() - 1);
+        }
+        long lastSeq = messages.isEmpty() ? sinceSeq : messages.get(messages.size() - 1).getSeq();
+        return new GapFill(messages, lastSeq, hasMore);
+    }
+
+    public MessagePage getGroupMessagesPage(Long groupId, String cursor, int size) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+
+        int separator = decoded.indexOf(':');
+        if (separator < 0) {
+            throw new RuntimeException("Invalid cursor");
+        }
+
+        String direction = decoded.substring(0, separator);
+        Long messageId;
+        try {
+            messageId = Long.parseLong(decoded.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+
+        if (CURSOR_BEFORE.equals(direction)) {
+            return getGroupMessagesPage(groupId, messageId, null, size);
+        } else if (CURSOR_AFTER.equals(direction)) {
+            return getGroupMessagesPage(groupId, null, messageId, size);
+        }
+        throw new RuntimeException("Invalid cursor");
+    }
+
+    private List<ChatMessage> readFromCache(Long groupId, Long beforeId, int limit) {
+        List<ChatMessage> cached = chatHistoryCache.read(groupId, beforeId, limit);
+        if (cached != null || beforeId != null || limit > chatHistoryCache.getGroupCapacity()) {
+            return cached;
+        }
+
+        // first read of the latest page warms the buffer for this group
+        if (chatHistoryCache.startWarming(groupId)) {
+            try {
+                if (!groupRepository.existsById(groupId)) {
+                    throw new RuntimeException("Group not found");
+                }
+                int capacity = chatHistoryCache.getGroupCapacity();
+                List<ChatMessage> latest = readFromCommitLog(groupId, null, capacity);
+                if (latest == null) {
+                    latest = withUnprojected(groupId,
+                            chatMessageRepository.findByGroupIdOrderByIdDesc(groupId, PageRequest.of(0, capacity)), 0, capacity);
+                    // a short table answer is only the whole history if nothing was archived
+                    latest = withArchived(groupId, latest, null, capacity);
+                }
+                chatHistoryCache.finishWarming(groupId, latest);
+            } catch (RuntimeException e) {
+                chatHistoryCache.evict(groupId);
+                throw e;
+            }
+        }
+        return chatHistoryCache.read(groupId, null, limit);
+    }
+
+    // recent history straight from the memory-mapped log, with group and sender loaded by id
+    private List<ChatMessage> readFromCommitLog(Long groupId, Long beforeId, int limit) {
+        if (!chatCommitLog.isEnabled()) {
+            return null;
+        }
+        List<ChatMessage> messages = chatCommitLog.read(groupId, beforeId, limit);
+        return messages != null ? hydrate(groupId, messages) : null;
+    }
+
+    // newest first, adds messages that are in the commit log but not in the table yet
+    private List<ChatMessage> withUnprojected(Long groupId, List<ChatMessage> newestFirst, long afterId, int limit) {
+        if (!chatCommitLog.isEnabled()) {
+            return newestFirst;
+        }
+        long newestStored = newestFirst.isEmpty() ? afterId : Math.max(afterId, newestFirst.get(0).getId());
+        List<ChatMessage> unprojected = chatCommitLog.readAfter(groupId, newestStored);
+        if (unprojected.isEmpty()) {
+            return newestFirst;
+        }
+
+        List<ChatMessage> merged = new ArrayList<>(hydrate(groupId, unprojected));
+        merged.addAll(newestFirst);
+        return new ArrayList<>(merged.subList(0, Math.min(limit, merged.size())));
+    }
+
+    // newest first, continues a page that reaches past the table with archived messages
+    private List<ChatMessage> withArchived(Long groupId, List<ChatMessage> newestFirst, Long beforeId, int limit) {
+        if (newestFirst.size() >= limit || chatArchiveService.boundary(groupId) == 0) {
+            return newestFirst;
+        }
+
+        Long archivedBefore = newestFirst.isEmpty() ? beforeId : newestFirst.get(newestFirst.size() - 1).getId();
+        List<ChatMessage> archived = chatArchiveService.read(groupId, archivedBefore, limit - newestFirst.size());
+        List<ChatMessage> merged = new ArrayList<>(newestFirst);
+        merged.addAll(hydrate(groupId, archived));
+        return merged;
+    }
+
+    private static List<ChatMessage> mergeAscending(List<ChatMessage> stored, List<ChatMessage> newer, int limit) {
+        List<ChatMessage> merged = new ArrayList<>(stored);
+        long newestStored = stored.isEmpty() ? Long.MIN_VALUE : stored.get(stored.size() - 1).getId();
+        for (ChatMessage message : newer) {
+            if (merged.size() >= limit) {
+                break;
+            }
+            if (message.getId() > newestStored) {
+                merged.add(message);
+            }
+        }
+        return merged;
+    }
+
+    private List<ChatMessage> hydrate(Long groupId, List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        Group group = groupRepository.findById(groupId)
+                .orElseThrow(() -> new RuntimeException("Group not found"));
+
+        Set<Long> senderIds = new HashSet<>();
+        for (ChatMessage message : messages) {
+            senderIds.add(message.getSender().getId());
+        }
+        Map<Long, User> senders = new HashMap<>();
+        for (User user : userRepository.findAllById(senderIds)) {
+            senders.put(user.getId(), user);
+        }
+
+        for (ChatMessage message : messages) {
+            message.setGroup(group);
+            message.setSender(senders.getOrDefault(message.getSender().getId(), message.getSender()));
+        }
+        return messages;
+    }
+
+    private static final String CURSOR_BEFORE = "b";
+    private static final String CURSOR_AFTER = "a";
+
+    private String encodeCursor(String direction, Long messageId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((direction + ":" + messageId).getBytes(StandardCharsets.UTF_8));
     }
 
     private MessageType determineMessageType(String fileType) {
@@ -171,5 +531,57 @@ public class ChatService {
 
     public void deleteGroupMessages(Group group) {
         chatMessageRepository.deleteByGroup(group);
+        chatHistoryCache.evict(group.getId());
+        chatSearchService.deleteGroup(group.getId());
+        chatInboxService.deleteGroup(group.getId());
+        chatCommitLog.deleteGroup(group.getId());
+        chatArchiveService.deleteGroup(group.getId());
+        // after the archive is gone, so the counter cannot be seeded again from its segments
+        chatSequenceService.reset(group.getId());
+    }
+
+    public static class GapFill {
+        private final List<ChatMessage> messages;
+        private final long lastSeq;
+        private final boolean hasMore;
+
+        public GapFill(List<ChatMessage> messages, long lastSeq, boolean hasMore) {
+            this.messages = messages;
+            this.lastSeq = lastSeq;
+            this.hasMore = hasMore;
+        }
+
+        public List<ChatMessage> getMessages() { return messages; }
+
+        // highest contiguous seq returned, the since value for the next call
+        public long getLastSeq() { return lastSeq; }
+
+        // true when more messages are available right away
+        public boolean isHasMore() { return hasMore; }
+    }
+
+    public static class MessagePage {
+        private final List<ChatMessage> messages;
+        private final String nextCursor;
+        private final String prevCursor;
+        private final boolean hasMore;
+
+        public MessagePage(List<ChatMessage> messages, String nextCursor, String prevCursor, boolean hasMore) {
+            this.messages = messages;
+            this.nextCursor = nextCursor;
+            this.prevCursor = prevCursor;
+            this.hasMore = hasMore;
+        }
+
+        public List<ChatMessage> getMessages() { return messages; }
+
+        // token for the next older page, null when the start of history is reached
+        public String getNextCursor() { return nextCursor; }
+
+        // token for messages newer than this page
+        public String getPrevCursor() { return prevCursor; }
+
+        // whether more messages exist in the direction that was requested
+        public boolean isHasMore() { return hasMore; }
     }
-}
\ No newline at end of file
+}
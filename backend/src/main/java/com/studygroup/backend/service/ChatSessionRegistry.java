@@ -0,0 +1,175 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Authenticated STOMP sessions and the groups each one has already been checked against,
+// so membership is queried once per session instead of once per frame. Revoking a group also
+// drops the broker subscriptions the session holds on its topics, so a removed member stops
+// receiving messages right away instead of at the next reconnect. Revocations only reach the
+// sessions of this node, ChatClusterEvents fans them out to the other nodes in relay mode.
+@Component
+public class ChatSessionRegistry {
+
+    @Autowired
+    @Lazy
+    private SimpUserRegistry simpUserRegistry;
+
+    @Autowired
+    @Lazy
+    @Qualifier("brokerChannel")
+    private MessageChannel brokerChannel;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final Map<String, SessionInfo> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+    public void register(String sessionId, User user) {
+        sessions.put(sessionId, new SessionInfo(sessionId, user));
+        sessionsByUser.computeIfAbsent(user.getId(), id -> ConcurrentHashMap.newKeySet()).add(sessionId);
+    }
+
+    public SessionInfo getSession(String sessionId) {
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    public Set<String> getUserSessionIds(Long userId) {
+        Set<String> ids = sessionsByUser.get(userId);
+        return ids != null ? Collections.unmodifiableSet(ids) : Collections.emptySet();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // called when a user leaves or is removed, the next frame for that group is checked again
+    public void revoke(Long userId, Long groupId) {
+        for (String sessionId : getUserSessionIds(userId)) {
+            SessionInfo info = sessions.get(sessionId);
+            if (info != null) {
+                info.revoke(groupId);
+                unsubscribe(info, groupId);
+            }
+        }
+    }
+
+    public void revokeGroup(Long groupId) {
+        for (SessionInfo info : sessions.values()) {
+            info.revoke(groupId);
+            unsubscribe(info, groupId);
+        }
+    }
+
+    // the broker gets the same UNSUBSCRIBE the client would have sent for each of its group topics,
+    // and the unsubscribe event is published too so presence and /batch subscriber counts follow
+    private void unsubscribe(SessionInfo info, Long groupId) {
+        SimpUser user = simpUserRegistry.getUser(info.getUser().getEmail());
+        SimpSession session = user != null ? user.getSession(info.getSessionId()) : null;
+        if (session == null) {
+            return;
+        }
+
+        String topic = "/topic/group/" + groupId;
+        for (SimpSubscription subscription : session.getSubscriptions()) {
+            String destination = subscription.getDestination();
+            if (!destination.equals(topic) && !destination.startsWith(topic + "/")) {
+                continue;
+            }
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+            accessor.setSessionId(info.getSessionId());
+            accessor.setSubscriptionId(subscription.getId());
+            accessor.setUser(user.getPrincipal());
+            Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+            try {
+                brokerChannel.send(message);
+                eventPublisher.publishEvent(new SessionUnsubscribeEvent(this, message, user.getPrincipal()));
+            } catch (Exception e) {
+                System.err.println("Error dropping subscription " + destination + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void remove(String sessionId) {
+        SessionInfo info = sessions.remove(sessionId);
+        if (info != null) {
+            sessionsByUser.computeIfPresent(info.getUserId(), (id, ids) -> {
+                ids.remove(sessionId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        remove(event.getSessionId());
+    }
+
+    public static class SessionInfo {
+        private final String sessionId;
+        private final User user;
+        private final Set<Long> groups = ConcurrentHashMap.newKeySet();
+        private volatile String payloadFormat = "json";
+        // bumped by every revocation, guarded by this
+        private long revocations;
+
+        public SessionInfo(String sessionId, User user) {
+            this.sessionId = sessionId;
+            this.user = user;
+        }
+
+        public String getSessionId() { return sessionId; }
+
+        public Long getUserId() { return user.getId(); }
+
+        // detached snapshot loaded at CONNECT, used as the sender of chat messages
+        public User getUser() { return user; }
+
+        // groups this session is verified to be an active member of
+        public Set<Long> getGroups() { return groups; }
+
+        // read before a membership check, see grant
+        public synchronized long getRevocations() { return revocations; }
+
+        // caches a membership check, unless a revocation ran since it started: the check may have
+        // read the membership before the removal committed, and that revocation must win
+        public synchronized boolean grant(Long groupId, long revocationsBeforeCheck) {
+            if (revocations != revocationsBeforeCheck) {
+                return false;
+            }
+            groups.add(groupId);
+            return true;
+        }
+
+        synchronized void revoke(Long groupId) {
+            revocations++;
+            groups.remove(groupId);
+        }
+
+        // encoding of outbound chat frames chosen on CONNECT
+        public String getPayloadFormat() { return payloadFormat; }
+        public void setPayloadFormat(String payloadFormat) { this.payloadFormat = payloadFormat; }
+    }
+}
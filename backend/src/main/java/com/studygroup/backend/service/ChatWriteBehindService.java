@@ -0,0 +1,316 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Write-behind persistence for chat messages. Messages get their id up front so they can be
+// broadcast right away, and a single writer thread inserts them in JDBC batches, one commit per
+// batch. A single FIFO writer keeps the insert order of every group. Ids are allocated in memory,
+// so this mode is only meant for a single backend instance.
+@Service
+public class ChatWriteBehindService {
+
+    private static final String INSERT_SQL = "INSERT INTO chat_messages " +
+            "(id, group_id, sender_id, content, type, file_url, file_name, file_type, file_size, client_message_id, seq, timestamp) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ChatInboxService chatInboxService;
+
+    @Value("${chat.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.write-behind.max-wait-ms:10}")
+    private long maxWaitMs;
+
+    @Value("${chat.write-behind.enqueue-timeout-ms:500}")
+    private long enqueueTimeoutMs;
+
+    private BlockingQueue<ChatMessage> queue;
+    private final AtomicLong idSequence = new AtomicLong(-1);
+    private TransactionTemplate transactionTemplate;
+    private Thread writer;
+    private volatile boolean running;
+
+    // told about every row the writer has committed
+    private volatile Consumer<ChatMessage> persistedListener = message -> { };
+
+    private Timer flushTimer;
+    private Counter flushedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        // the batch insert is also used by the commit log projection, which runs without the queue
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        flushTimer = Timer.builder("chat.write_behind.flush.latency")
+                .description("Time taken to insert and commit one batch")
+                .register(meterRegistry);
+        flushedCounter = meterRegistry.counter("chat.write_behind.messages.flushed");
+        failedCounter = meterRegistry.counter("chat.write_behind.messages.failed");
+
+        if (!enabled) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("chat.write_behind.queue.depth", queue, BlockingQueue::size)
+                .description("Chat messages waiting to be persisted")
+                .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::drainLoop, "chat-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setPersistedListener(Consumer<ChatMessage> persistedListener) {
+        this.persistedListener = persistedListener;
+    }
+
+    // assigns the id and timestamp and queues the message, the caller can broadcast it straight after
+    public ChatMessage enqueue(ChatMessage message) {
+        allocate(message);
+
+        try {
+            if (!queue.offer(message, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Chat is busy, please try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing message");
+        }
+        return message;
+    }
+
+    // id and timestamp of a message that is inserted later, by this writer or the commit log projection
+    public void allocate(ChatMessage message) {
+        message.setId(nextId());
+        message.setTimestamp(LocalDateTime.now());
+    }
+
+    // keeps allocated ids above ids that exist elsewhere but not yet in the table
+    public void reserveIdsUpTo(long maxId) {
+        seedIdSequence();
+        idSequence.accumulateAndGet(maxId, Math::max);
+    }
+
+    private long nextId() {
+        seedIdSequence();
+        return idSequence.incrementAndGet();
+    }
+
+    private void seedIdSequence() {
+        if (idSequence.get() < 0) {
+            synchronized (idSequence) {
+                if (idSequence.get() < 0) {
+                    Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM chat_messages", Long.class);
+                    idSequence.set(maxId != null ? maxId : 0);
+                }
+            }
+        }
+    }
+
+    private void drainLoop() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // give concurrent senders a short window to join this commit
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    ChatMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (Exception e) {
+                System.err.println("Chat write-behind error: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<ChatMessage> batch) {
+        store(batch, (message, status) -> {
+            // a FAILED row never shows up in history or search, a DUPLICATE one is already there
+            if ("PERSISTED".equals(status)) {
+                try {
+                    persistedListener.accept(message);
+                } catch (Exception e) {
+                    System.err.println("Error handling persisted chat message " + message.getId() + ": " + e.getMessage());
+                }
+            }
+            acknowledge(message, status);
+        });
+    }
+
+    // inserts the batch with one commit, falling back to row by row, and reports PERSISTED,
+    // DUPLICATE or FAILED for every message
+    public void store(List<ChatMessage> batch, BiConsumer<ChatMessage, String> onResult) {
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, message) -> {
+                    ps.setLong(1, message.getId());
+                    ps.setLong(2, message.getGroup().getId());
+                    ps.setLong(3, message.getSender().getId());
+                    ps.setString(4, message.getContent());
+                    ps.setString(5, message.getType().name());
+                    ps.setString(6, message.getFileUrl());
+                    ps.setString(7, message.getFileName());
+                    ps.setString(8, message.getFileType());
+                    if (message.getFileSize() != null) {
+                        ps.setLong(9, message.getFileSize());
+                    } else {
+                        ps.setNull(9, Types.BIGINT);
+                    }
+                    ps.setString(10, message.getClientMessageId());
+                    ps.setLong(11, message.getSeq());
+                    ps.setTimestamp(12, Timestamp.valueOf(message.getTimestamp()));
+                });
+                // summaries are updated once per group for the whole batch
+                chatInboxService.recordMessages(batch);
+            });
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            flushedCounter.increment(batch.size());
+
+            for (ChatMessage message : batch) {
+                onResult.accept(message, "PERSISTED");
+            }
+        } catch (Exception e) {
+            System.err.println("Chat batch insert failed, retrying one by one: " + e.getMessage());
+            storeIndividually(batch, onResult);
+        }
+    }
+
+    // fallback so one bad row does not lose the whole batch
+    private void storeIndividually(List<ChatMessage> batch, BiConsumer<ChatMessage, String> onResult) {
+        for (ChatMessage message : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.update(INSERT_SQL,
+                            message.getId(), message.getGroup().getId(), message.getSender().getId(),
+                            message.getContent(), message.getType().name(), message.getFileUrl(),
+                            message.getFileName(), message.getFileType(), message.getFileSize(),
+                            message.getClientMessageId(), message.getSeq(), Timestamp.valueOf(message.getTimestamp()));
+                    chatInboxService.recordMessages(List.of(message));
+                });
+                flushedCounter.increment();
+                onResult.accept(message, "PERSISTED");
+            } catch (DuplicateKeyException e) {
+                // a retry that outlived the dedupe window, the original row is already stored
+                onResult.accept(message, "DUPLICATE");
+            } catch (Exception e) {
+                System.err.println("Failed to persist chat message " + message.getId() + ": " + e.getMessage());
+                failedCounter.increment();
+                onResult.accept(message, "FAILED");
+            }
+        }
+    }
+
+    // durability ack, delivered to the sender's own session only. Addressed by session id so it
+    // does not depend on the session having a principal; messages saved outside a STOMP session
+    // fall back to all of the sender's sessions.
+    public void acknowledge(ChatMessage message, String status) {
+        try {
+            Map<String, Object> ack = new HashMap<>();
+            ack.put("messageId", message.getId());
+            ack.put("groupId", message.getGroup().getId());
+            ack.put("clientMessageId", message.getClientMessageId());
+            ack.put("seq", message.getSeq());
+            ack.put("status", status);
+            String sessionId = message.getSenderSessionId();
+            if (sessionId == null) {
+                messagingTemplate.convertAndSendToUser(message.getSender().getEmail(), "/queue/chat-ack", ack);
+                return;
+            }
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(sessionId);
+            headers.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(sessionId, "/queue/chat-ack", ack, headers.getMessageHeaders());
+        } catch (Exception e) {
+            System.err.println("Error sending chat ack: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        // let the writer drain what is already queued before the context closes
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
@@ -9,6 +9,8 @@ import com.studygroup.backend.service.CourseService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Map;
@@ -34,6 +36,9 @@ public class GroupService {
     @Autowired
     private CourseService courseService;
 
+    @Autowired
+    private ChatClusterEvents chatClusterEvents;
+
     public Group createGroup(Group group, Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -55,6 +60,7 @@ public class GroupService {
         // Add creator as admin member
         GroupMember creatorMember = new GroupMember(savedGroup, user, GroupMemberRole.ADMIN);
         groupMemberRepository.save(creatorMember);
+        chatMembersChanged(savedGroup.getId());
 
         return savedGroup;
     }
@@ -150,6 +156,7 @@ public class GroupService {
         if (status == GroupMemberStatus.ACTIVE) {
             group.setCurrentMembers(group.getCurrentMembers() + 1);
             groupRepository.save(group);
+            chatMembersChanged(groupId);
         }
 
         return groupMemberRepository.save(groupMember);
@@ -186,12 +193,14 @@ public class GroupService {
                 } else {
                     groupMemberRepository.deleteAll(groupMemberRepository.findByGroup(group));
                     groupRepository.delete(group);
+                    revokeChatAccess(null, groupId);
                     return;
                 }
             }
         }
 
         groupMemberRepository.delete(groupMember);
+        revokeChatAccess(userId, groupId);
 
         // update member count
         if (groupMember.getStatus() == GroupMemberStatus.ACTIVE) {
@@ -232,11 +241,15 @@ public class GroupService {
                 .orElseThrow(() -> new RuntimeException("Member not found"));
 
         groupMember.setStatus(status);
+        if (status != GroupMemberStatus.ACTIVE) {
+            revokeChatAccess(userId, groupId);
+        }
 
         // If approved, update member count
         if (status == GroupMemberStatus.ACTIVE) {
             group.setCurrentMembers(group.getCurrentMembers() + 1);
             groupRepository.save(group);
+            chatMembersChanged(groupId);
         }
 
         return groupMemberRepository.save(groupMember);
@@ -339,6 +352,7 @@ public class GroupService {
         }
 
         groupRepository.delete(group);
+        revokeChatAccess(null, groupId);
     }
 
     public void removeMember(Long groupId, Long userId, Long adminUserId) {
@@ -373,6 +387,7 @@ public class GroupService {
         }
 
         groupMemberRepository.delete(memberToRemove);
+        revokeChatAccess(userId, groupId);
 
         // Update member count if active member
         if (memberToRemove.getStatus() == GroupMemberStatus.ACTIVE) {
@@ -381,6 +396,32 @@ public class GroupService {
         }
     }
 
+    // drop cached STOMP authorization once the change is committed, userId null means every member
+    private void revokeChatAccess(Long userId, Long groupId) {
+        afterCommit(() -> {
+            chatClusterEvents.revoke(userId, groupId);
+            chatClusterEvents.membersChanged(groupId);
+        });
+    }
+
+    // new active member, the per-user chat routing has to pick them up
+    private void chatMembersChanged(Long groupId) {
+        afterCommit(() -> chatClusterEvents.membersChanged(groupId));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     private boolean isUserEnrolledInCourse(Long userId, Long courseId) {
         return courseService.isUserEnrolledInCourse(userId, courseId);
     }
@@ -0,0 +1,455 @@
+package com.studygroup.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Reads Open Graph / Twitter card meta tags, falling back to <title> and the description meta tag.
+// Only the head of the page is downloaded, and links to private, loopback or otherwise internal
+// addresses are refused unless explicitly allowed, so a chat message cannot make the server probe
+// the internal network. The host is resolved once and the connection goes to exactly the address
+// that was checked (TLS still verifies the certificate against the host name), so a DNS answer
+// that changes between the check and the connect cannot point the fetch somewhere else.
+// Besides the per-read timeout the whole fetch, redirects included, has a wall-clock deadline,
+// so a server trickling one byte at a time cannot hold a preview thread.
+@Component
+public class HttpLinkPreviewFetcher implements LinkPreviewFetcher {
+
+    private static final int MAX_REDIRECTS = 3;
+    private static final int MAX_TEXT_LENGTH = 300;
+    private static final int MAX_HEADER_LINE = 8192;
+    private static final int MAX_HEADERS = 100;
+
+    private static final Pattern META_TAG = Pattern.compile("<meta\\s[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile("([a-zA-Z:_-]+)\\s*=\\s*(\"([^\"]*)\"|'([^']*)')");
+    private static final Pattern TITLE_TAG = Pattern.compile("<title[^>]*>([^<]*)</title>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CHARSET = Pattern.compile("charset=([\\w-]+)", Pattern.CASE_INSENSITIVE);
+
+    @Value("${chat.link-preview.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${chat.link-preview.read-timeout-ms:4000}")
+    private int readTimeoutMs;
+
+    @Value("${chat.link-preview.deadline-ms:8000}")
+    private long deadlineMs;
+
+    @Value("${chat.link-preview.max-bytes:262144}")
+    private int maxBytes;
+
+    @Value("${chat.link-preview.allow-private-hosts:false}")
+    private boolean allowPrivateHosts;
+
+    @Override
+    public LinkPreview fetch(String url) throws IOException {
+        URI uri = URI.create(url);
+        long deadline = System.currentTimeMillis() + deadlineMs;
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            InetAddress address = resolveTarget(uri);
+
+            try (Socket socket = connect(uri, address, deadline)) {
+                OutputStream out = socket.getOutputStream();
+                out.write(requestHead(uri).getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+
+                InputStream in = new BufferedInputStream(new DeadlineInputStream(socket, deadline));
+                int status = readStatus(in);
+                Map<String, String> headers = readHeaders(in);
+                if (status >= 300 && status < 400) {
+                    String location = headers.get("location");
+                    if (location == null) {
+                        return null;
+                    }
+                    uri = uri.resolve(location.trim());
+                    continue;
+                }
+
+                String contentType = headers.getOrDefault("content-type", "");
+                if (status != 200 || !contentType.toLowerCase().contains("html")) {
+                    return null;
+                }
+
+                byte[] head = body(in, headers).readNBytes(maxBytes);
+                return parse(uri, new String(head, charsetOf(contentType)));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid link: " + uri);
+            }
+        }
+        return null;
+    }
+
+    // the one address the request goes to, after every address of the host was checked
+    private InetAddress resolveTarget(URI uri) throws IOException {
+        String scheme = uri.getScheme();
+        if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https")) || uri.getHost() == null) {
+            throw new IOException("Unsupported link: " + uri);
+        }
+        InetAddress[] addresses = InetAddress.getAllByName(uri.getHost());
+        if (!allowPrivateHosts) {
+            for (InetAddress address : addresses) {
+                if (isInternal(address)) {
+                    throw new IOException("Refusing to fetch private address: " + uri.getHost());
+                }
+            }
+        }
+        return addresses[0];
+    }
+
+    private Socket connect(URI uri, InetAddress address, long deadline) throws IOException {
+        boolean https = uri.getScheme().equalsIgnoreCase("https");
+        int port = uri.getPort() != -1 ? uri.getPort() : (https ? 443 : 80);
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), timeoutUntil(deadline, connectTimeoutMs));
+            // bounds the TLS handshake, reads set their own timeout from then on
+            socket.setSoTimeout(timeoutUntil(deadline, readTimeoutMs));
+            if (!https) {
+                return socket;
+            }
+
+            String host = hostName(uri);
+            SSLSocket tls = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                    .createSocket(socket, host, port, true);
+            SSLParameters parameters = tls.getSSLParameters();
+            // the certificate must match the name in the link, not the address we connected to
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            if (!isLiteral(host)) {
+                parameters.setServerNames(List.of(new SNIHostName(host)));
+            }
+            tls.setSSLParameters(parameters);
+            tls.startHandshake();
+            return tls;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // the smaller of the configured timeout and the time left, never 0 which means "wait forever"
+    private static int timeoutUntil(long deadline, int timeoutMs) throws IOException {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+            throw new SocketTimeoutException("Link preview deadline exceeded");
+        }
+        return (int) Math.max(1, Math.min(timeoutMs, left));
+    }
+
+    private static String requestHead(URI uri) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        String host = uri.getHost();
+        if (uri.getPort() != -1) {
+            host += ":" + uri.getPort();
+        }
+        return "GET " + path + " HTTP/1.1\r\n" +
+                "Host: " + host + "\r\n" +
+                "User-Agent: StudyGroupLinkPreview/1.0\r\n" +
+                "Accept: text/html,application/xhtml+xml\r\n" +
+                "Accept-Encoding: identity\r\n" +
+                "Connection: close\r\n\r\n";
+    }
+
+    private static int readStatus(InputStream in) throws IOException {
+        String[] statusLine = readLine(in).split(" ", 3);
+        if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+            throw new IOException("Not an HTTP response");
+        }
+        try {
+            return Integer.parseInt(statusLine[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not an HTTP response");
+        }
+    }
+
+    // lower-cased names, the first value wins like firstValue() did
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < MAX_HEADERS; i++) {
+            String line = readLine(in);
+            if (line.isEmpty()) {
+                return headers;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.putIfAbsent(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+        throw new IOException("Too many response headers");
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.append((char) b);
+            }
+            if (line.length() > MAX_HEADER_LINE) {
+                throw new IOException("Response header too long");
+            }
+        }
+        if (b == -1 && line.length() == 0) {
+            throw new IOException("Connection closed before the response");
+        }
+        return line.toString();
+    }
+
+    private static InputStream body(InputStream in, Map<String, String> headers) {
+        String transferEncoding = headers.getOrDefault("transfer-encoding", "");
+        return transferEncoding.toLowerCase().contains("chunked") ? new ChunkedInputStream(in) : in;
+    }
+
+    // loopback, private, link local, unique local, CGNAT and reserved ranges, including IPv4
+    // addresses embedded in IPv6 (mapped, compatible, NAT64 and 6to4)
+    static boolean isInternal(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+                || address.isAnyLocalAddress() || address.isMulticastAddress()) {
+            return true;
+        }
+
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            return isInternalIpv4(bytes, 0);
+        }
+        if (!(address instanceof Inet6Address)) {
+            return true;
+        }
+
+        // fc00::/7 unique local
+        if ((bytes[0] & 0xfe) == 0xfc) {
+            return true;
+        }
+        boolean zeroPrefix = true;
+        for (int i = 0; i < 10; i++) {
+            zeroPrefix &= bytes[i] == 0;
+        }
+        // ::ffff:a.b.c.d mapped and ::a.b.c.d compatible
+        if (zeroPrefix && ((bytes[10] == (byte) 0xff && bytes[11] == (byte) 0xff) || (bytes[10] == 0 && bytes[11] == 0))) {
+            return isInternalIpv4(bytes, 12);
+        }
+        // 64:ff9b::/96 NAT64
+        if (bytes[0] == 0 && bytes[1] == 0x64 && bytes[2] == (byte) 0xff && bytes[3] == (byte) 0x9b) {
+            return isInternalIpv4(bytes, 12);
+        }
+        // 2002::/16 6to4
+        if (bytes[0] == 0x20 && bytes[1] == 0x02) {
+            return isInternalIpv4(bytes, 2);
+        }
+        return false;
+    }
+
+    private static boolean isInternalIpv4(byte[] bytes, int offset) {
+        int a = bytes[offset] & 0xff;
+        int b = bytes[offset + 1] & 0xff;
+        int c = bytes[offset + 2] & 0xff;
+        return a == 0                                  // 0.0.0.0/8
+                || a == 10                             // 10.0.0.0/8
+                || a == 127                            // 127.0.0.0/8
+                || (a == 100 && (b & 0xc0) == 64)      // 100.64.0.0/10 carrier-grade NAT
+                || (a == 169 && b == 254)              // 169.254.0.0/16
+                || (a == 172 && (b & 0xf0) == 16)      // 172.16.0.0/12
+                || (a == 192 && b == 0 && c == 0)      // 192.0.0.0/24
+                || (a == 192 && b == 168)              // 192.168.0.0/16
+                || (a == 198 && (b & 0xfe) == 18)      // 198.18.0.0/15 benchmarking
+                || a >= 224;                           // multicast, reserved and broadcast
+    }
+
+    private static String hostName(URI uri) {
+        String host = uri.getHost();
+        return host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+    }
+
+    private static boolean isLiteral(String host) {
+        return host.indexOf(':') >= 0 || host.matches("[0-9.]+");
+    }
+
+    private LinkPreview parse(URI uri, String html) {
+        Map<String, String> meta = new HashMap<>();
+        Matcher tags = META_TAG.matcher(html);
+        while (tags.find()) {
+            Map<String, String> attributes = new HashMap<>();
+            Matcher attribute = ATTRIBUTE.matcher(tags.group());
+            while (attribute.find()) {
+                String value = attribute.group(3) != null ? attribute.group(3) : attribute.group(4);
+                attributes.put(attribute.group(1).toLowerCase(), value);
+            }
+            String key = attributes.containsKey("property") ? attributes.get("property") : attributes.get("name");
+            String content = attributes.get("content");
+            if (key != null && content != null) {
+                meta.putIfAbsent(key.toLowerCase(), content);
+            }
+        }
+
+        String title = first(meta, "og:title", "twitter:title");
+        if (title == null) {
+            Matcher titleTag = TITLE_TAG.matcher(html);
+            title = titleTag.find() ? titleTag.group(1) : null;
+        }
+        String description = first(meta, "og:description", "twitter:description", "description");
+        String image = first(meta, "og:image", "og:image:url", "twitter:image");
+        String siteName = first(meta, "og:site_name");
+
+        title = clean(title);
+        description = clean(description);
+        if (title == null && description == null && image == null) {
+            return null;
+        }
+
+        String imageUrl = null;
+        if (image != null) {
+            try {
+                imageUrl = uri.resolve(unescape(image.trim())).toString();
+            } catch (IllegalArgumentException e) {
+                imageUrl = null;
+            }
+        }
+        return new LinkPreview(uri.toString(), title, description, imageUrl, clean(siteName));
+    }
+
+    private static String first(Map<String, String> meta, String... keys) {
+        for (String key : keys) {
+            String value = meta.get(key);
+            if (value != null && !value.isBlank()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String clean(String text) {
+        if (text == null) {
+            return null;
+        }
+        String cleaned = unescape(text).replaceAll("\\s+", " ").trim();
+        if (cleaned.isEmpty()) {
+            return null;
+        }
+        return cleaned.length() > MAX_TEXT_LENGTH ? cleaned.substring(0, MAX_TEXT_LENGTH) : cleaned;
+    }
+
+    private static String unescape(String text) {
+        return text.replace("&quot;", "\"")
+                .replace("&#39;", "'")
+                .replace("&#x27;", "'")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&nbsp;", " ")
+                .replace("&amp;", "&");
+    }
+
+    private static Charset charsetOf(String contentType) {
+        Matcher matcher = CHARSET.matcher(contentType);
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (Exception e) {
+                return StandardCharsets.UTF_8;
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    // each read waits at most until the deadline, however slowly the server sends
+    private class DeadlineInputStream extends InputStream {
+        private final Socket socket;
+        private final InputStream in;
+        private final long deadline;
+
+        DeadlineInputStream(Socket socket, long deadline) throws IOException {
+            this.socket = socket;
+            this.in = socket.getInputStream();
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            socket.setSoTimeout(timeoutUntil(deadline, readTimeoutMs));
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            socket.setSoTimeout(timeoutUntil(deadline, readTimeoutMs));
+            return in.read(buffer, offset, length);
+        }
+    }
+
+    // decodes Transfer-Encoding: chunked, only as far as the caller reads
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+        private boolean finished;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (remaining == 0) {
+                if (!nextChunk()) {
+                    return -1;
+                }
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) {
+                finished = true;
+                return -1;
+            }
+            remaining -= read;
+            if (remaining == 0) {
+                readLine(in);
+            }
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            String line = readLine(in);
+            int extension = line.indexOf(';');
+            try {
+                remaining = Long.parseLong((extension >= 0 ? line.substring(0, extension) : line).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunked response");
+            }
+            if (remaining <= 0) {
+                finished = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
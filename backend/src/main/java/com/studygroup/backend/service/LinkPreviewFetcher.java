@@ -0,0 +1,33 @@
+package com.studygroup.backend.service;
+
+import java.io.IOException;
+
+// Fetches the preview data (title, description, image) of a shared link. Kept behind an
+// interface so the pipeline can be pointed at a stub in tests.
+public interface LinkPreviewFetcher {
+
+    // returns null when the page has nothing worth previewing
+    LinkPreview fetch(String url) throws IOException;
+
+    class LinkPreview {
+        private final String url;
+        private final String title;
+        private final String description;
+        private final String imageUrl;
+        private final String siteName;
+
+        public LinkPreview(String url, String title, String description, String imageUrl, String siteName) {
+            this.url = url;
+            this.title = title;
+            this.description = description;
+            this.imageUrl = imageUrl;
+            this.siteName = siteName;
+        }
+
+        public String getUrl() { return url; }
+        public String getTitle() { return title; }
+        public String getDescription() { return description; }
+        public String getImageUrl() { return imageUrl; }
+        public String getSiteName() { return siteName; }
+    }
+}
@@ -0,0 +1,244 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Builds link previews off the send path. Link messages are broadcast as usual, the URL is then
+// fetched on a small bounded pool and the preview is pushed as a follow-up frame, to
+// /topic/group/{id}/link-preview and, with multiplexing, to /user/queue/chat-link-preview.
+// Previews are cached by URL with a TTL and a size limit, and concurrent requests for the same
+// URL share one fetch, so a link shared in many groups is fetched once.
+// When the pool is saturated the preview is simply skipped.
+@Service
+public class LinkPreviewService {
+
+    private static final Pattern URL = Pattern.compile("(https?://|www\\.)[^\\s<>\"]+", Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    private LinkPreviewFetcher linkPreviewFetcher;
+
+    @Autowired
+    private ChatBroadcastService chatBroadcastService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.link-preview.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.link-preview.threads:4}")
+    private int threads;
+
+    @Value("${chat.link-preview.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${chat.link-preview.cache-size:5000}")
+    private int cacheSize;
+
+    @Value("${chat.link-preview.cache-ttl-ms:3600000}")
+    private long cacheTtlMs;
+
+    // failed or empty pages are remembered for a shorter time so they are not refetched on every share
+    @Value("${chat.link-preview.negative-ttl-ms:300000}")
+    private long negativeTtlMs;
+
+    private ThreadPoolExecutor executor;
+
+    // access ordered, so iteration starts from the least recently used URL
+    private final LinkedHashMap<String, CachedPreview> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // url -> messages waiting for the fetch that is already running
+    private final Map<String, List<Target>> inFlight = new ConcurrentHashMap<>();
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter failedCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "link-preview-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("chat.link_preview.cache.size", cache, c -> {
+                    synchronized (c) {
+                        return c.size();
+                    }
+                })
+                .description("Link previews currently cached")
+                .register(meterRegistry);
+        Gauge.builder("chat.link_preview.queue.depth", executor, e -> e.getQueue().size())
+                .description("Links waiting to be fetched")
+                .register(meterRegistry);
+        hitCounter = meterRegistry.counter("chat.link_preview.cache.hits");
+        missCounter = meterRegistry.counter("chat.link_preview.cache.misses");
+        failedCounter = meterRegistry.counter("chat.link_preview.fetch.failed");
+        droppedCounter = meterRegistry.counter("chat.link_preview.dropped");
+    }
+
+    // never blocks, call after the message itself has been broadcast
+    public void requestPreview(Long groupId, ChatMessage message) {
+        if (!enabled || message.getType() != MessageType.LINK) {
+            return;
+        }
+        String url = extractUrl(message.getContent());
+        if (url == null) {
+            return;
+        }
+
+        Target target = new Target(groupId, message.getId());
+        CachedPreview cached = getCached(url);
+        if (cached != null) {
+            hitCounter.increment();
+            push(url, cached.preview, List.of(target));
+            return;
+        }
+        missCounter.increment();
+
+        // join a fetch that is already running for this URL
+        boolean[] first = new boolean[1];
+        inFlight.compute(url, (key, targets) -> {
+            List<Target> waiting = targets != null ? targets : new ArrayList<>();
+            first[0] = targets == null;
+            waiting.add(target);
+            return waiting;
+        });
+        if (!first[0]) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> fetchAndPush(url));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(url);
+            droppedCounter.increment();
+        }
+    }
+
+    private void fetchAndPush(String url) {
+        LinkPreviewFetcher.LinkPreview preview = null;
+        try {
+            preview = linkPreviewFetcher.fetch(url);
+        } catch (Exception e) {
+            failedCounter.increment();
+            System.err.println("Error fetching link preview for " + url + ": " + e.getMessage());
+        }
+
+        long ttl = preview != null ? cacheTtlMs : negativeTtlMs;
+        putCached(url, new CachedPreview(preview, System.currentTimeMillis() + ttl));
+
+        // once cached, new requests no longer join this list
+        List<Target> targets = inFlight.remove(url);
+        if (targets != null) {
+            push(url, preview, targets);
+        }
+    }
+
+    private void push(String url, LinkPreviewFetcher.LinkPreview preview, List<Target> targets) {
+        if (preview == null) {
+            return;
+        }
+        for (Target target : targets) {
+            try {
+                Map<String, Object> payload = new HashMap<>();
+                payload.put("groupId", target.groupId);
+                payload.put("messageId", target.messageId);
+                payload.put("url", url);
+                payload.put("title", preview.getTitle());
+                payload.put("description", preview.getDescription());
+                payload.put("imageUrl", preview.getImageUrl());
+                payload.put("siteName", preview.getSiteName());
+                chatBroadcastService.broadcastEvent(target.groupId, "link-preview", payload);
+            } catch (Exception e) {
+                System.err.println("Error sending link preview: " + e.getMessage());
+            }
+        }
+    }
+
+    private CachedPreview getCached(String url) {
+        synchronized (cache) {
+            CachedPreview cached = cache.get(url);
+            if (cached != null && cached.expiresAt < System.currentTimeMillis()) {
+                cache.remove(url);
+                return null;
+            }
+            return cached;
+        }
+    }
+
+    private void putCached(String url, CachedPreview preview) {
+        synchronized (cache) {
+            cache.put(url, preview);
+            while (cache.size() > cacheSize) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+
+    static String extractUrl(String content) {
+        if (content == null) {
+            return null;
+        }
+        Matcher matcher = URL.matcher(content);
+        if (!matcher.find()) {
+            return null;
+        }
+        String url = matcher.group().replaceAll("[.,;:!?)]+$", "");
+        return url.regionMatches(true, 0, "www.", 0, 4) ? "https://" + url : url;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class CachedPreview {
+        // null when the page had no usable preview
+        private final LinkPreviewFetcher.LinkPreview preview;
+        private final long expiresAt;
+
+        CachedPreview(LinkPreviewFetcher.LinkPreview preview, long expiresAt) {
+            this.preview = preview;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Target {
+        private final Long groupId;
+        private final Long messageId;
+
+        Target(Long groupId, Long messageId) {
+            this.groupId = groupId;
+            this.messageId = messageId;
+        }
+    }
+}
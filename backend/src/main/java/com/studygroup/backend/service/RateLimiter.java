@@ -0,0 +1,124 @@
+package com.studygroup.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process token buckets shared by the REST filter and the STOMP interceptor. Each policy has
+// a burst capacity and a refill rate, read from rate-limit.<policy>.capacity / .per-minute.
+// A bucket is a single AtomicLong holding the time at which it will be full again (GCRA), so
+// acquiring is one CAS without locks, and a bucket whose time has passed is full and can be
+// dropped without changing behaviour, which is what the idle eviction does.
+@Component
+public class RateLimiter {
+
+    public static final String POLICY_AUTH = "auth";
+    public static final String POLICY_UPLOAD = "upload";
+    public static final String POLICY_API = "api";
+    public static final String POLICY_CHAT_SEND = "chat-send";
+    public static final String POLICY_CHAT_SIGNAL = "chat-signal";
+    public static final String POLICY_CONNECT = "connect";
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    // hard cap on tracked keys so a spray of addresses cannot grow the map without bound
+    @Value("${rate-limit.max-buckets:100000}")
+    private int maxBuckets;
+
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        register(POLICY_AUTH, 10, 10);
+        register(POLICY_UPLOAD, 5, 20);
+        register(POLICY_API, 200, 1200);
+        register(POLICY_CHAT_SEND, 20, 120);
+        register(POLICY_CHAT_SIGNAL, 30, 300);
+        register(POLICY_CONNECT, 100, 1200);
+
+        Gauge.builder("rate_limit.buckets", buckets, Map::size)
+                .description("Rate limit buckets currently tracked")
+                .register(meterRegistry);
+    }
+
+    private void register(String name, int defaultCapacity, int defaultPerMinute) {
+        int capacity = environment.getProperty("rate-limit." + name + ".capacity", Integer.class, defaultCapacity);
+        int perMinute = environment.getProperty("rate-limit." + name + ".per-minute", Integer.class, defaultPerMinute);
+        policies.put(name, new Policy(capacity, perMinute,
+                meterRegistry.counter("rate_limit.rejected", "policy", name)));
+    }
+
+    // 0 when the call is allowed, otherwise how long to wait before the next token, in millis
+    public long tryAcquire(String policyName, String subject) {
+        Policy policy = policies.get(policyName);
+        if (!enabled || policy == null || subject == null) {
+            return 0;
+        }
+
+        String key = policyName + ":" + subject;
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets) {
+                evictIdle();
+                if (buckets.size() >= maxBuckets) {
+                    // fail open rather than let the limiter itself become the bottleneck
+                    return 0;
+                }
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+        }
+
+        long now = System.nanoTime();
+        while (true) {
+            long fullAt = bucket.get();
+            long start = Math.max(fullAt, now);
+            long next = start + policy.intervalNanos;
+            // the bucket holds capacity tokens, so it may run up to capacity intervals ahead
+            long ahead = next - now;
+            if (ahead > policy.burstNanos) {
+                policy.rejected.increment();
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(ahead - policy.burstNanos));
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.get() <= now);
+    }
+
+    private static class Policy {
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final Counter rejected;
+
+        Policy(int capacity, int perMinute, Counter rejected) {
+            this.rejected = rejected;
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+            this.burstNanos = intervalNanos * Math.max(1, capacity);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.studygroup.backend;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH benchmarks of one class from a JUnit test tagged "benchmark", so they go through
+// the normal test classpath with "mvn -Pbenchmark test" and stay out of the regular build.
+// Results are printed and also written to target/jmh-<class>.json.
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void run(Class<?> benchmarks) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(benchmarks.getName() + "\\.")
+				.forks(1)
+				.warmupIterations(3)
+				.measurementIterations(5)
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-" + benchmarks.getSimpleName() + ".json")
+				.build();
+		new Runner(options).run();
+	}
+
+}
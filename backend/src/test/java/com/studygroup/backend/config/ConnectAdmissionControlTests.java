@@ -0,0 +1,96 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.service.RateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectAdmissionControlTests {
+
+	@Mock
+	private RateLimiter rateLimiter;
+
+	@InjectMocks
+	private ConnectAdmissionControl admissionControl;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		ReflectionTestUtils.setField(admissionControl, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(admissionControl, "enabled", true);
+		ReflectionTestUtils.setField(admissionControl, "minRetryMs", 1000L);
+		ReflectionTestUtils.setField(admissionControl, "maxRetryMs", 60000L);
+		// one connect per second, so every deferred client adds a second to the window
+		ReflectionTestUtils.setField(admissionControl, "connectsPerMinute", 60L);
+		admissionControl.init();
+	}
+
+	@Test
+	void connectWithinTheRateIsAdmitted() {
+		when(rateLimiter.tryAcquire(RateLimiter.POLICY_CONNECT, "global")).thenReturn(0L);
+
+		assertThatCode(admissionControl::admit).doesNotThrowAnyException();
+
+		assertThat(meterRegistry.counter("chat.ws.connect.admitted").count()).isEqualTo(1);
+		assertThat(meterRegistry.counter("chat.ws.connect.deferred").count()).isZero();
+	}
+
+	@Test
+	void deferredConnectIsToldWhenToRetry() {
+		when(rateLimiter.tryAcquire(RateLimiter.POLICY_CONNECT, "global")).thenReturn(500L);
+
+		long retryAfterMs = deferral();
+
+		// the limiter wait plus one second for the single client waiting
+		assertThat(retryAfterMs).isBetween(1000L, 1500L);
+		assertThat(meterRegistry.counter("chat.ws.connect.deferred").count()).isEqualTo(1);
+	}
+
+	@Test
+	void retryWindowGrowsWithTheBacklogUpToTheCap() {
+		when(rateLimiter.tryAcquire(RateLimiter.POLICY_CONNECT, "global")).thenReturn(500L);
+
+		List<Long> retries = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			retries.add(deferral());
+		}
+
+		assertThat(retries).allSatisfy(retry -> assertThat(retry).isBetween(1000L, 60000L));
+		// later clients are spread over a much wider window than the first one
+		assertThat(retries.subList(100, 200)).anySatisfy(retry -> assertThat(retry).isGreaterThan(1500L));
+	}
+
+	@Test
+	void disabledControlAdmitsEverything() {
+		ReflectionTestUtils.setField(admissionControl, "enabled", false);
+
+		assertThatCode(admissionControl::admit).doesNotThrowAnyException();
+
+		verifyNoInteractions(rateLimiter);
+	}
+
+	private long deferral() {
+		ConnectAdmissionControl.ConnectDeferredException deferred =
+				catchThrowableOfType(ConnectAdmissionControl.ConnectDeferredException.class, admissionControl::admit);
+		assertThat(deferred).isNotNull();
+		return deferred.getRetryAfterMs();
+	}
+
+}
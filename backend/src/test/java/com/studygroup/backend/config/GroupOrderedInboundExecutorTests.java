@@ -0,0 +1,194 @@
+package com.studygroup.backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GroupOrderedInboundExecutorTests {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private GroupOrderedInboundExecutor executor;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		executor = executor(4, 10000);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		executor.shutdown();
+	}
+
+	@Test
+	void sendsOfOneGroupRunInArrivalOrder() throws Exception {
+		Map<Long, List<Integer>> handled = new HashMap<>();
+		int perGroup = 200;
+		CountDownLatch done = new CountDownLatch(10 * perGroup);
+		for (int i = 0; i < perGroup; i++) {
+			for (long groupId = 1; groupId <= 10; groupId++) {
+				long group = groupId;
+				int seq = i;
+				executor.execute(frame(SimpMessageType.MESSAGE, "/app/chat/" + group, "s" + seq, () -> {
+					synchronized (handled) {
+						handled.computeIfAbsent(group, g -> new ArrayList<>()).add(seq);
+					}
+					done.countDown();
+				}));
+			}
+		}
+
+		assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+		for (List<Integer> order : handled.values()) {
+			assertThat(order).hasSize(perGroup).isSorted();
+		}
+	}
+
+	@Test
+	void busyGroupDoesNotHoldUpAnotherLane() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		Runnable hot = frame(SimpMessageType.MESSAGE, "/app/chat/1", "s1", () -> await(release));
+		long other = 2;
+		while (laneOf(frame(SimpMessageType.MESSAGE, "/app/chat/" + other, "s1", () -> { })) == laneOf(hot)) {
+			other++;
+		}
+		CountDownLatch otherDone = new CountDownLatch(1);
+
+		try {
+			executor.execute(hot);
+			executor.execute(frame(SimpMessageType.MESSAGE, "/app/chat/" + other, "s1", otherDone::countDown));
+
+			assertThat(otherDone.await(5, TimeUnit.SECONDS)).isTrue();
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	void otherFramesFollowTheirSessionLane() {
+		Runnable subscribe = frame(SimpMessageType.SUBSCRIBE, "/topic/group/1", "session-a", () -> { });
+		Runnable unsubscribe = frame(SimpMessageType.UNSUBSCRIBE, null, "session-a", () -> { });
+		// a chat send with the same session follows its group instead
+		Runnable typing = frame(SimpMessageType.MESSAGE, "/app/chat/1/typing", "session-a", () -> { });
+
+		assertThat(laneOf(unsubscribe)).isEqualTo(laneOf(subscribe));
+		assertThat(laneOf(typing)).isEqualTo(laneOf(frame(SimpMessageType.MESSAGE, "/app/chat/1", "session-b", () -> { })));
+	}
+
+	@Test
+	void sessionWorkRunsBehindTheSessionsQueuedFrames() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> order = new ArrayList<>();
+		executor.execute(frame(SimpMessageType.SUBSCRIBE, "/topic/group/1", "session-a", () -> {
+			await(release);
+			synchronized (order) {
+				order.add("subscribe");
+			}
+		}));
+		CountDownLatch done = new CountDownLatch(1);
+		executor.execute("session-a", () -> {
+			synchronized (order) {
+				order.add("history");
+			}
+			done.countDown();
+		});
+
+		release.countDown();
+
+		assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(order).containsExactly("subscribe", "history");
+	}
+
+	@Test
+	void unparsableGroupIdFallsBackToTheSessionLane() {
+		Runnable overflow = frame(SimpMessageType.MESSAGE, "/app/chat/99999999999999999999", "session-a", () -> { });
+
+		assertThat(laneOf(overflow)).isEqualTo(laneOf(frame(SimpMessageType.SUBSCRIBE, "/x", "session-a", () -> { })));
+	}
+
+	@Test
+	void fullLaneRejectsAndCounts() throws Exception {
+		executor.shutdown();
+		executor = executor(1, 1);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> {
+			running.countDown();
+			await(release);
+		});
+		assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+		executor.execute(() -> { });
+
+		try {
+			assertThatThrownBy(() -> executor.execute(() -> { })).isInstanceOf(RejectedExecutionException.class);
+			assertThat(meterRegistry.counter("chat.inbound.lane.rejected").count()).isEqualTo(1);
+		} finally {
+			release.countDown();
+		}
+	}
+
+	private GroupOrderedInboundExecutor executor(int lanes, int queueCapacity) {
+		GroupOrderedInboundExecutor created = new GroupOrderedInboundExecutor();
+		ReflectionTestUtils.setField(created, "configuredLanes", lanes);
+		ReflectionTestUtils.setField(created, "laneQueueCapacity", queueCapacity);
+		ReflectionTestUtils.setField(created, "meterRegistry", meterRegistry);
+		created.init();
+		return created;
+	}
+
+	private int laneOf(Runnable task) {
+		return ReflectionTestUtils.invokeMethod(executor, "laneOf", task);
+	}
+
+	private static Runnable frame(SimpMessageType type, String destination, String sessionId, Runnable work) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+		accessor.setDestination(destination);
+		accessor.setSessionId(sessionId);
+		Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+		return new MessageHandlingRunnable() {
+			@Override
+			public Message<?> getMessage() {
+				return message;
+			}
+
+			@Override
+			public MessageHandler getMessageHandler() {
+				return m -> work.run();
+			}
+
+			@Override
+			public void run() {
+				work.run();
+			}
+		};
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
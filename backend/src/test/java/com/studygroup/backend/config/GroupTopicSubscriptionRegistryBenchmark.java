@@ -0,0 +1,79 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.BenchmarkRunner;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of one broadcast lookup (findSubscriptions) in the exact-match registry against Spring's
+// DefaultSubscriptionRegistry, by number of groups and subscribers per group. Lookups walk the
+// groups round robin so the default registry's destination cache sees the same churn as a busy
+// broker. Run with: mvn -Pbenchmark test -Dtest=GroupTopicSubscriptionRegistryBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class GroupTopicSubscriptionRegistryBenchmark {
+
+	@Param({"exact", "default"})
+	public String registryType;
+
+	@Param({"100", "1000", "10000"})
+	public int groups;
+
+	@Param({"1", "10", "50"})
+	public int subscribersPerGroup;
+
+	private SubscriptionRegistry registry;
+	private Message<?>[] lookups;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		registry = "exact".equals(registryType) ? new GroupTopicSubscriptionRegistry() : new DefaultSubscriptionRegistry();
+
+		lookups = new Message<?>[groups];
+		int session = 0;
+		for (int group = 0; group < groups; group++) {
+			String destination = "/topic/group/" + group;
+			for (int i = 0; i < subscribersPerGroup; i++) {
+				registry.registerSubscription(GroupTopicSubscriptionRegistryTests.subscribeMessage(
+						"session-" + session++, "sub-" + group, destination, null));
+			}
+
+			SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+			accessor.setDestination(destination);
+			lookups[group] = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+		}
+	}
+
+	@Benchmark
+	public MultiValueMap<String, String> findSubscriptions() {
+		Message<?> message = lookups[next];
+		next = next + 1 == lookups.length ? 0 : next + 1;
+		return registry.findSubscriptions(message);
+	}
+
+	@Test
+	@Tag("benchmark")
+	void run() throws Exception {
+		BenchmarkRunner.run(GroupTopicSubscriptionRegistryBenchmark.class);
+	}
+
+}
@@ -0,0 +1,180 @@
+package com.studygroup.backend.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GroupTopicSubscriptionRegistryTests {
+
+	private GroupTopicSubscriptionRegistry registry;
+
+	@BeforeEach
+	void setUp() {
+		registry = new GroupTopicSubscriptionRegistry();
+	}
+
+	@Test
+	void findsExactGroupSubscriptions() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribe("s2", "sub-2", "/topic/group/1");
+		subscribe("s3", "sub-3", "/topic/group/2");
+
+		MultiValueMap<String, String> found = find("/topic/group/1");
+
+		assertThat(found).hasSize(2);
+		assertThat(found.get("s1")).containsExactly("sub-1");
+		assertThat(found.get("s2")).containsExactly("sub-2");
+		assertThat(find("/topic/group/3")).isEmpty();
+	}
+
+	@Test
+	void publishedSnapshotIsNeverModified() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		MultiValueMap<String, String> before = find("/topic/group/1");
+
+		subscribe("s2", "sub-2", "/topic/group/1");
+		unsubscribe("s1", "sub-1");
+
+		assertThat(before).containsOnlyKeys("s1");
+		assertThat(find("/topic/group/1")).containsOnlyKeys("s2");
+		assertThatThrownBy(() -> before.add("s3", "sub-3")).isInstanceOf(UnsupportedOperationException.class);
+	}
+
+	@Test
+	void subscribingTwiceWithTheSameIdKeepsOneSubscription() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribe("s1", "sub-1", "/topic/group/1");
+
+		assertThat(find("/topic/group/1").get("s1")).containsExactly("sub-1");
+	}
+
+	@Test
+	void reusedSubscriptionIdMovesTheSubscription() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribe("s1", "sub-1", "/topic/group/2");
+
+		assertThat(find("/topic/group/1")).isEmpty();
+		assertThat(find("/topic/group/2").get("s1")).containsExactly("sub-1");
+	}
+
+	@Test
+	void unsubscribeRemovesOnlyThatSubscription() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribe("s1", "sub-2", "/topic/group/1");
+		subscribe("s2", "sub-1", "/topic/group/1");
+
+		unsubscribe("s1", "sub-1");
+
+		MultiValueMap<String, String> found = find("/topic/group/1");
+		assertThat(found.get("s1")).containsExactly("sub-2");
+		assertThat(found.get("s2")).containsExactly("sub-1");
+
+		unsubscribe("s1", "sub-2");
+		unsubscribe("s2", "sub-1");
+		assertThat(find("/topic/group/1")).isEmpty();
+	}
+
+	@Test
+	void disconnectRemovesEverySubscriptionOfTheSession() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribe("s1", "sub-2", "/topic/group/2");
+		subscribe("s1", "sub-3", "/topic/presence");
+		subscribe("s2", "sub-1", "/topic/group/1");
+
+		registry.unregisterAllSubscriptions("s1");
+
+		assertThat(find("/topic/group/1")).containsOnlyKeys("s2");
+		assertThat(find("/topic/group/2")).isEmpty();
+		assertThat(find("/topic/presence")).isEmpty();
+	}
+
+	@Test
+	void otherDestinationsUseTheFallback() {
+		subscribe("s1", "sub-1", "/topic/presence");
+		subscribe("s2", "sub-1", "/topic/*");
+
+		MultiValueMap<String, String> found = find("/topic/presence");
+
+		assertThat(found).containsOnlyKeys("s1", "s2");
+		unsubscribe("s1", "sub-1");
+		assertThat(find("/topic/presence")).containsOnlyKeys("s2");
+	}
+
+	@Test
+	void patternSubscriptionsAreMergedWithExactMatches() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribe("s2", "sub-1", "/topic/group/*");
+
+		MultiValueMap<String, String> found = find("/topic/group/1");
+
+		assertThat(found.get("s1")).containsExactly("sub-1");
+		assertThat(found.get("s2")).containsExactly("sub-1");
+		// a group nobody subscribed to exactly is still reached through the pattern
+		assertThat(find("/topic/group/2")).containsOnlyKeys("s2");
+	}
+
+	@Test
+	void mergeKeepsBothSubscriptionsOfOneSession() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribe("s1", "sub-2", "/topic/group/**");
+
+		assertThat(find("/topic/group/1").get("s1")).containsExactlyInAnyOrder("sub-1", "sub-2");
+		// the exact snapshot itself is not changed by the merge
+		unsubscribe("s1", "sub-2");
+		assertThat(find("/topic/group/1").get("s1")).containsExactly("sub-1");
+	}
+
+	@Test
+	void selectorSubscriptionsGoToTheFallbackAndAreMerged() {
+		subscribe("s1", "sub-1", "/topic/group/1");
+		subscribeWithSelector("s2", "sub-1", "/topic/group/1", "true");
+
+		MultiValueMap<String, String> found = find("/topic/group/1");
+
+		assertThat(found.get("s1")).containsExactly("sub-1");
+		assertThat(found.get("s2")).containsExactly("sub-1");
+
+		unsubscribe("s2", "sub-1");
+		assertThat(find("/topic/group/1")).containsOnlyKeys("s1");
+	}
+
+	private void subscribe(String sessionId, String subscriptionId, String destination) {
+		registry.registerSubscription(subscribeMessage(sessionId, subscriptionId, destination, null));
+	}
+
+	private void subscribeWithSelector(String sessionId, String subscriptionId, String destination, String selector) {
+		registry.registerSubscription(subscribeMessage(sessionId, subscriptionId, destination, selector));
+	}
+
+	private void unsubscribe(String sessionId, String subscriptionId) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		registry.unregisterSubscription(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	private MultiValueMap<String, String> find(String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setDestination(destination);
+		return registry.findSubscriptions(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	static Message<byte[]> subscribeMessage(String sessionId, String subscriptionId, String destination, String selector) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		if (selector != null) {
+			accessor.setNativeHeader("selector", selector);
+		}
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.entity.User;
+import com.studygroup.backend.service.ChatSessionRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OutboundFlowControlTests {
+
+	@Mock
+	private MessageChannel clientOutboundChannel;
+
+	@Mock
+	private SimpMessagingTemplate messagingTemplate;
+
+	@Mock
+	private ChatSessionRegistry chatSessionRegistry;
+
+	@Mock
+	private WebSocketSessionMonitor webSocketSessionMonitor;
+
+	@Mock
+	private WebSocketSession session;
+
+	@Mock
+	private WebSocketHandler handler;
+
+	@Captor
+	private ArgumentCaptor<Message<?>> released;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private OutboundFlowControl flowControl;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		meterRegistry = new SimpleMeterRegistry();
+		flowControl = new OutboundFlowControl();
+		ReflectionTestUtils.setField(flowControl, "policy", "drop-oldest");
+		ReflectionTestUtils.setField(flowControl, "stallMs", 2000L);
+		ReflectionTestUtils.setField(flowControl, "maxPendingFrames", 2);
+		ReflectionTestUtils.setField(flowControl, "overflowFrames", 2);
+		ReflectionTestUtils.setField(flowControl, "clientOutboundChannel", clientOutboundChannel);
+		ReflectionTestUtils.setField(flowControl, "messagingTemplate", messagingTemplate);
+		ReflectionTestUtils.setField(flowControl, "chatSessionRegistry", chatSessionRegistry);
+		ReflectionTestUtils.setField(flowControl, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(flowControl, "webSocketSessionMonitor", webSocketSessionMonitor);
+		flowControl.init();
+
+		lenient().when(session.getId()).thenReturn("s1");
+		lenient().when(clientOutboundChannel.send(any())).thenReturn(true);
+		flowControl.decorate(handler).afterConnectionEstablished(session);
+	}
+
+	@Test
+	void framesPassUntilTheBacklogLimit() {
+		assertThat(send(frame("/topic/group/1"), frame("/topic/group/1"), frame("/topic/group/1")))
+				.doesNotContainNull();
+
+		assertThat(flowControl.getPendingFrames("s1")).isEqualTo(3);
+	}
+
+	@Test
+	void slowSessionParksFramesAndDropsTheOldest() {
+		List<Message<?>> sent = send(frame("/topic/group/1"), frame("/topic/group/1"), frame("/topic/group/1"));
+		Message<?> first = frame("/topic/group/1");
+		Message<?> second = frame("/topic/group/1");
+		Message<?> third = frame("/topic/group/1");
+
+		assertThat(send(first, second, third)).containsOnlyNulls();
+		assertThat(meterRegistry.counter("chat.ws.outbound.dropped").count()).isEqualTo(1);
+
+		// one frame written, the session is back under the limit and gets the newest parked frames in order
+		flowControl.afterMessageHandled(sent.get(0), clientOutboundChannel, null, null);
+
+		verify(clientOutboundChannel, times(2)).send(released.capture());
+		assertThat(released.getAllValues()).containsExactly(second, third);
+	}
+
+	@Test
+	void disconnectPolicyClosesTheSlowSession() throws Exception {
+		ReflectionTestUtils.setField(flowControl, "policy", "disconnect");
+		send(frame("/topic/group/1"), frame("/topic/group/1"), frame("/topic/group/1"));
+
+		assertThat(flowControl.preSend(frame("/topic/group/1"), clientOutboundChannel)).isNull();
+
+		verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+		assertThat(meterRegistry.counter("chat.ws.slow_consumer.disconnects").count()).isEqualTo(1);
+	}
+
+	@Test
+	void historyPolicySendsOneResyncForTheDroppedDestinations() {
+		ReflectionTestUtils.setField(flowControl, "policy", "history");
+		User user = new User();
+		user.setId(7L);
+		user.setEmail("member@example.com");
+		when(chatSessionRegistry.getSession("s1")).thenReturn(new ChatSessionRegistry.SessionInfo("s1", user));
+		List<Message<?>> sent = send(frame("/topic/group/1"), frame("/topic/group/1"), frame("/topic/group/1"));
+
+		send(frame("/topic/group/1"), frame("/topic/group/2"), frame("/topic/group/2"));
+		flowControl.afterMessageHandled(sent.get(0), clientOutboundChannel, null, null);
+
+		verify(clientOutboundChannel, never()).send(any());
+		verify(messagingTemplate).convertAndSendToUser(eq("member@example.com"), eq("/queue/chat-resync"),
+				eq(Map.of("reason", "SLOW_CONSUMER", "destinations", Set.of("/topic/group/1", "/topic/group/2"))),
+				any(MessageHeaders.class));
+	}
+
+	@Test
+	void nonMessageFramesAreNeverHeldBack() {
+		send(frame("/topic/group/1"), frame("/topic/group/1"), frame("/topic/group/1"));
+
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.HEARTBEAT);
+		accessor.setSessionId("s1");
+		Message<byte[]> heartbeat = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+		assertThat(flowControl.preSend(heartbeat, clientOutboundChannel)).isSameAs(heartbeat);
+	}
+
+	@Test
+	void stalledWriteMakesTheSessionSlow() throws Exception {
+		ReflectionTestUtils.setField(flowControl, "stallMs", 0L);
+		ArgumentCaptor<WebSocketSession> tracked = ArgumentCaptor.forClass(WebSocketSession.class);
+		verify(handler).afterConnectionEstablished(tracked.capture());
+
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			writing.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return null;
+		}).when(session).sendMessage(any());
+		Thread writer = new Thread(() -> {
+			try {
+				tracked.getValue().sendMessage(new TextMessage("frame"));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		writer.start();
+		assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(5);
+
+		try {
+			// nothing queued, but the socket write is stuck
+			assertThat(flowControl.preSend(frame("/topic/group/1"), clientOutboundChannel)).isNull();
+		} finally {
+			release.countDown();
+			writer.join(5000);
+		}
+	}
+
+	@Test
+	void unknownSessionsAreNotTracked() {
+		Message<?> message = frame("/topic/group/1");
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+		accessor.setSessionId("other");
+		Message<?> other = MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+
+		assertThat(flowControl.preSend(other, clientOutboundChannel)).isSameAs(other);
+		assertThat(flowControl.getPendingFrames("other")).isZero();
+	}
+
+	private List<Message<?>> send(Message<?>... messages) {
+		return Arrays.stream(messages)
+				.map(message -> (Message<?>) flowControl.preSend(message, clientOutboundChannel))
+				.toList();
+	}
+
+	private static Message<?> frame(String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId("s1");
+		accessor.setDestination(destination);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+}
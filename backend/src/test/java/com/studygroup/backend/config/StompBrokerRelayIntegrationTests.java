@@ -0,0 +1,199 @@
+package com.studygroup.backend.config;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.security.CheckType;
+import org.apache.activemq.artemis.core.security.Role;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.spi.core.security.ActiveMQSecurityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the application with chat.broker.mode=relay against an embedded ActiveMQ Artemis broker
+// with its STOMP acceptor on a free port. The broker only accepts the configured system and client
+// accounts, so the tests also show which connection logs in with which credentials.
+@SpringBootTest
+@DirtiesContext
+class StompBrokerRelayIntegrationTests {
+
+	private static final String SYSTEM_LOGIN = "chat-system";
+	private static final String SYSTEM_PASSCODE = "system-secret";
+	private static final String CLIENT_LOGIN = "chat-client";
+	private static final String CLIENT_PASSCODE = "client-secret";
+
+	private static final int PORT = freePort();
+	private static final List<String> logins = new CopyOnWriteArrayList<>();
+	private static EmbeddedActiveMQ broker;
+
+	@Autowired
+	private StompBrokerRelayMessageHandler relay;
+
+	@Autowired
+	private SimpMessagingTemplate messagingTemplate;
+
+	@Autowired
+	@Qualifier("clientOutboundChannel")
+	private AbstractSubscribableChannel clientOutboundChannel;
+
+	@BeforeAll
+	static void startBroker() throws Exception {
+		ConfigurationImpl configuration = new ConfigurationImpl();
+		configuration.setPersistenceEnabled(false);
+		configuration.setJMXManagementEnabled(false);
+		configuration.setSecurityEnabled(true);
+		configuration.addAcceptorConfiguration("stomp",
+				"tcp://127.0.0.1:" + PORT + "?protocols=STOMP;multicastPrefix=/topic/;anycastPrefix=/queue/");
+
+		Map<String, String> accounts = Map.of(SYSTEM_LOGIN, SYSTEM_PASSCODE, CLIENT_LOGIN, CLIENT_PASSCODE);
+		broker = new EmbeddedActiveMQ();
+		broker.setConfiguration(configuration);
+		broker.setSecurityManager(new ActiveMQSecurityManager() {
+			@Override
+			public boolean validateUser(String user, String password) {
+				boolean valid = user != null && password != null && password.equals(accounts.get(user));
+				if (valid) {
+					logins.add(user);
+				}
+				return valid;
+			}
+
+			@Override
+			public boolean validateUserAndRole(String user, String password, Set<Role> roles, CheckType checkType) {
+				return validateUser(user, password);
+			}
+		});
+		broker.start();
+	}
+
+	@AfterAll
+	static void stopBroker() throws Exception {
+		broker.stop();
+	}
+
+	@DynamicPropertySource
+	static void relayProperties(DynamicPropertyRegistry registry) {
+		registry.add("chat.broker.mode", () -> "relay");
+		registry.add("chat.broker.relay.host", () -> "127.0.0.1");
+		registry.add("chat.broker.relay.port", () -> PORT);
+		registry.add("chat.broker.relay.login", () -> CLIENT_LOGIN);
+		registry.add("chat.broker.relay.passcode", () -> CLIENT_PASSCODE);
+		registry.add("chat.broker.relay.system-login", () -> SYSTEM_LOGIN);
+		registry.add("chat.broker.relay.system-passcode", () -> SYSTEM_PASSCODE);
+	}
+
+	@Test
+	void systemConnectionLogsInWithSystemCredentials() throws Exception {
+		awaitBrokerAvailable();
+
+		assertThat(logins).contains(SYSTEM_LOGIN);
+	}
+
+	@Test
+	void clientSessionReceivesBroadcastsThroughTheBroker() throws Exception {
+		awaitBrokerAvailable();
+		String sessionId = "relay-it-session";
+		BlockingQueue<Message<?>> frames = capture(sessionId);
+
+		relay.handleMessage(frame(StompCommand.CONNECT, sessionId, null, null));
+		Message<?> connected = frames.poll(10, TimeUnit.SECONDS);
+		assertThat(connected).isNotNull();
+		assertThat(StompHeaderAccessor.wrap(connected).getCommand()).isEqualTo(StompCommand.CONNECTED);
+		assertThat(logins).contains(CLIENT_LOGIN);
+
+		relay.handleMessage(frame(StompCommand.SUBSCRIBE, sessionId, "sub-1", "/topic/group/424242"));
+		// the subscription is registered once the broker answers the receipt
+		Message<?> receipt = frames.poll(10, TimeUnit.SECONDS);
+		assertThat(receipt).isNotNull();
+		assertThat(StompHeaderAccessor.wrap(receipt).getCommand()).isEqualTo(StompCommand.RECEIPT);
+
+		messagingTemplate.send("/topic/group/424242",
+				MessageBuilder.withPayload("{\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8)).build());
+
+		Message<?> delivered = frames.poll(10, TimeUnit.SECONDS);
+		assertThat(delivered).isNotNull();
+		assertThat(SimpMessageHeaderAccessor.getSubscriptionId(delivered.getHeaders())).isEqualTo("sub-1");
+		assertThat(new String((byte[]) delivered.getPayload(), StandardCharsets.UTF_8)).contains("hello");
+
+		relay.handleMessage(frame(StompCommand.DISCONNECT, sessionId, null, null));
+	}
+
+	private void awaitBrokerAvailable() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (!relay.isBrokerAvailable() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertThat(relay.isBrokerAvailable()).isTrue();
+	}
+
+	// frames the relay forwards to one session, taken before the WebSocket handler drops them
+	// for a session it has never seen
+	private BlockingQueue<Message<?>> capture(String sessionId) {
+		BlockingQueue<Message<?>> frames = new LinkedBlockingQueue<>();
+		clientOutboundChannel.addInterceptor(0, new ChannelInterceptor() {
+			@Override
+			public Message<?> preSend(Message<?> message, MessageChannel channel) {
+				if (sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))
+						&& SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.HEARTBEAT) {
+					frames.add(message);
+				}
+				return message;
+			}
+		});
+		return frames;
+	}
+
+	private static Message<byte[]> frame(StompCommand command, String sessionId, String subscriptionId, String destination) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+		accessor.setSessionId(sessionId);
+		if (command == StompCommand.CONNECT) {
+			accessor.setAcceptVersion("1.2");
+			accessor.setHeartbeat(0, 0);
+		}
+		if (subscriptionId != null) {
+			accessor.setSubscriptionId(subscriptionId);
+			accessor.setDestination(destination);
+			accessor.setReceipt("receipt-" + subscriptionId);
+		}
+		accessor.setLeaveMutable(true);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private static int freePort() {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.studygroup.backend.config;
+
+import com.studygroup.backend.service.ChatClusterEvents;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class WebSocketConfigTests {
+
+	private final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+			.withUserConfiguration(WebSocketConfig.class)
+			.withBean(StompAuthChannelInterceptor.class, () -> mock(StompAuthChannelInterceptor.class))
+			.withBean(StompRateLimitInterceptor.class, () -> mock(StompRateLimitInterceptor.class))
+			.withBean(OutboundFlowControl.class, () -> mock(OutboundFlowControl.class))
+			.withBean(GroupOrderedInboundExecutor.class, () -> mock(GroupOrderedInboundExecutor.class))
+			.withBean(WebSocketSessionMonitor.class, () -> mock(WebSocketSessionMonitor.class))
+			.withBean(StompErrorHandler.class, () -> mock(StompErrorHandler.class))
+			.withBean(BinaryPayloadInterceptor.class, () -> mock(BinaryPayloadInterceptor.class))
+			.withBean(GroupTopicSubscriptionRegistry.class, () -> mock(GroupTopicSubscriptionRegistry.class))
+			.withBean(ChatClusterEvents.class, () -> mock(ChatClusterEvents.class))
+			.withPropertyValues("chat.broker.exact-group-registry=false");
+
+	@Test
+	void simpleBrokerHeartbeatsRunOnTheManagedScheduler() {
+		contextRunner.run(context -> {
+			ThreadPoolTaskScheduler heartbeats = context.getBean("chatHeartbeatScheduler", ThreadPoolTaskScheduler.class);
+
+			assertThat(context.getBean(SimpleBrokerMessageHandler.class).getTaskScheduler()).isSameAs(heartbeats);
+			assertThat(heartbeats.getScheduledExecutor().isShutdown()).isFalse();
+			assertThat(heartbeats.getThreadNamePrefix()).isEqualTo("chat-heartbeat-");
+		});
+	}
+
+	@Test
+	void scheduledJobsDoNotResolveTheHeartbeatScheduler() {
+		contextRunner.run(context -> {
+			// the only candidate left is the one Spring registers for the broker itself
+			TaskScheduler unique = context.getBeanProvider(TaskScheduler.class).getIfUnique();
+
+			assertThat(unique).isNotNull().isNotSameAs(context.getBean("chatHeartbeatScheduler"));
+		});
+	}
+
+	@Test
+	void closingTheContextStopsTheHeartbeatThreads() {
+		ScheduledExecutorService[] executor = new ScheduledExecutorService[1];
+		contextRunner.run(context -> executor[0] =
+				context.getBean("chatHeartbeatScheduler", ThreadPoolTaskScheduler.class).getScheduledExecutor());
+
+		assertThat(executor[0].isShutdown()).isTrue();
+	}
+
+}
@@ -0,0 +1,260 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import com.studygroup.backend.repository.ChatMessageRepository;
+import com.studygroup.backend.repository.GroupRepository;
+import com.studygroup.backend.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatArchiveServiceTests {
+
+	private static final long GROUP_ID = 1L;
+	private static final String DELETE = "DELETE FROM chat_messages WHERE group_id = ? AND id <= ?";
+
+	@TempDir
+	Path directory;
+
+	@Mock
+	private ChatMessageRepository chatMessageRepository;
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private GroupRepository groupRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private ChatHistoryCache chatHistoryCache;
+
+	@Mock
+	private ChatCommitLog chatCommitLog;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		lenient().when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any())).thenReturn(List.of(GROUP_ID));
+	}
+
+	@Test
+	void segmentIsOnDiskBeforeTheRowsAreDeleted() throws Exception {
+		ChatArchiveService archive = archive(100);
+		when(chatMessageRepository.findByGroupIdOrderByIdAsc(GROUP_ID, PageRequest.of(0, 100)))
+				.thenReturn(List.of(old(1), old(2), old(3), recent(4)));
+		List<Long> readAtDelete = new ArrayList<>();
+		doAnswer(invocation -> {
+			// a fresh instance stands in for a restart right after the delete
+			assertThat(segmentFiles()).hasSize(1).allMatch(path -> path.toString().endsWith(".seg"));
+			readAtDelete.addAll(ids(archive(100).read(GROUP_ID, null, 10)));
+			return 3;
+		}).when(jdbcTemplate).update(DELETE, GROUP_ID, 3L);
+
+		archive.archive();
+
+		assertThat(readAtDelete).containsExactly(3L, 2L, 1L);
+		assertThat(archive.boundary(GROUP_ID)).isEqualTo(3L);
+		assertThat(archive.maxSeq(GROUP_ID)).isEqualTo(3L);
+		assertThat(meterRegistry.counter("chat.archive.messages.archived").count()).isEqualTo(3);
+	}
+
+	@Test
+	void rowsLeftBehindByACrashAreDeletedOnTheNextRun() throws Exception {
+		when(chatMessageRepository.findByGroupIdOrderByIdAsc(GROUP_ID, PageRequest.of(0, 100)))
+				.thenReturn(List.of(old(1), old(2), old(3), recent(4)))
+				.thenReturn(List.of(recent(4)));
+		// the process dies after the segment is written, before the rows are gone
+		doThrow(new RuntimeException("Connection lost")).doReturn(3)
+				.when(jdbcTemplate).update(DELETE, GROUP_ID, 3L);
+		archive(100).archive();
+
+		archive(100).archive();
+
+		InOrder order = inOrder(jdbcTemplate, chatMessageRepository);
+		order.verify(chatMessageRepository).findByGroupIdOrderByIdAsc(GROUP_ID, PageRequest.of(0, 100));
+		order.verify(jdbcTemplate).update(DELETE, GROUP_ID, 3L);
+		// the restarted run deletes up to the boundary before it looks for more to archive
+		order.verify(jdbcTemplate).update(DELETE, GROUP_ID, 3L);
+		order.verify(chatMessageRepository).findByGroupIdOrderByIdAsc(GROUP_ID, PageRequest.of(0, 100));
+		assertThat(segmentFiles()).hasSize(1);
+	}
+
+	@Test
+	void readsWalkBlocksAndSegmentsNewestFirst() throws Exception {
+		ChatArchiveService archive = archived();
+
+		assertThat(segmentFiles()).hasSize(2);
+		assertThat(ids(archive.read(GROUP_ID, null, 10))).containsExactly(5L, 4L, 3L, 2L, 1L);
+		assertThat(ids(archive.read(GROUP_ID, 4L, 2))).containsExactly(3L, 2L);
+		assertThat(ids(archive.readOffset(GROUP_ID, 1, 3))).containsExactly(4L, 3L, 2L);
+		assertThat(archive.countUpTo(GROUP_ID, 4L)).isEqualTo(4);
+		assertThat(archive.read(2L, null, 10)).isEmpty();
+	}
+
+	@Test
+	void readSinceSkipsSegmentsAtOrBelowTheSeq() {
+		ChatArchiveService archive = archived();
+		double blocksBefore = meterRegistry.counter("chat.archive.blocks.read").count();
+
+		assertThat(seqs(archive.readSince(GROUP_ID, 3L, 10))).containsExactly(4L, 5L);
+		// the first segment ends at seq 3 and is not opened, the second is a single block
+		assertThat(meterRegistry.counter("chat.archive.blocks.read").count()).isEqualTo(blocksBefore + 1);
+
+		assertThat(seqs(archive.readSince(GROUP_ID, 1L, 3))).containsExactly(2L, 3L, 4L);
+		assertThat(archive.readSince(GROUP_ID, 5L, 10)).isEmpty();
+	}
+
+	@Test
+	void pageReachingPastTheTableContinuesIntoTheArchive() {
+		ChatService chatService = chatService(archived());
+		when(chatHistoryCache.read(GROUP_ID, 9L, 6)).thenReturn(null);
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdAndIdLessThanOrderByIdDesc(GROUP_ID, 9L, PageRequest.of(0, 6)))
+				.thenReturn(new ArrayList<>(List.of(recent(8), recent(7), recent(6))));
+		stubHydration();
+
+		ChatService.MessagePage page = chatService.getGroupMessagesPage(GROUP_ID, 9L, null, 5);
+
+		assertThat(ids(page.getMessages())).containsExactly(8L, 7L, 6L, 5L, 4L);
+		assertThat(page.isHasMore()).isTrue();
+	}
+
+	@Test
+	void gapFillResumesFromTheArchiveIntoTheTable() {
+		ChatService chatService = chatService(archived());
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdAndSeqGreaterThanOrderBySeqAsc(GROUP_ID, 5L, PageRequest.of(0, 2)))
+				.thenReturn(List.of(recent(6), recent(7)));
+		stubHydration();
+
+		ChatService.GapFill fill = chatService.getMessagesSince(GROUP_ID, 2L, 4);
+
+		assertThat(seqs(fill.getMessages())).containsExactly(3L, 4L, 5L, 6L);
+		assertThat(fill.getLastSeq()).isEqualTo(6L);
+		assertThat(fill.isHasMore()).isTrue();
+	}
+
+	// ids 1..5 archived as [1, 2 | 3] and [4, 5], 6 is still recent and stays in the table
+	private ChatArchiveService archived() {
+		ChatArchiveService archive = archive(3);
+		when(chatMessageRepository.findByGroupIdOrderByIdAsc(GROUP_ID, PageRequest.of(0, 3)))
+				.thenReturn(List.of(old(1), old(2), old(3)))
+				.thenReturn(List.of(old(4), old(5), recent(6)));
+		archive.archive();
+		return archive;
+	}
+
+	private ChatArchiveService archive(int segmentMessages) {
+		ChatArchiveService archive = new ChatArchiveService();
+		ReflectionTestUtils.setField(archive, "enabled", true);
+		ReflectionTestUtils.setField(archive, "directory", directory.toString());
+		ReflectionTestUtils.setField(archive, "olderThanDays", 90);
+		ReflectionTestUtils.setField(archive, "segmentMessages", segmentMessages);
+		ReflectionTestUtils.setField(archive, "blockMessages", 2);
+		ReflectionTestUtils.setField(archive, "maxOpenSegments", 64);
+		ReflectionTestUtils.setField(archive, "chatMessageRepository", chatMessageRepository);
+		ReflectionTestUtils.setField(archive, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(archive, "meterRegistry", meterRegistry);
+		archive.init();
+		return archive;
+	}
+
+	private ChatService chatService(ChatArchiveService archive) {
+		ChatService chatService = new ChatService();
+		ReflectionTestUtils.setField(chatService, "chatMessageRepository", chatMessageRepository);
+		ReflectionTestUtils.setField(chatService, "groupRepository", groupRepository);
+		ReflectionTestUtils.setField(chatService, "userRepository", userRepository);
+		ReflectionTestUtils.setField(chatService, "chatHistoryCache", chatHistoryCache);
+		ReflectionTestUtils.setField(chatService, "chatCommitLog", chatCommitLog);
+		ReflectionTestUtils.setField(chatService, "chatArchiveService", archive);
+		return chatService;
+	}
+
+	private void stubHydration() {
+		Group group = new Group();
+		group.setId(GROUP_ID);
+		when(groupRepository.findById(GROUP_ID)).thenReturn(Optional.of(group));
+		when(userRepository.findAllById(any())).thenReturn(List.of(sender()));
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory.resolve("g" + GROUP_ID))) {
+			return files.sorted().toList();
+		}
+	}
+
+	private static ChatMessage old(long id) {
+		return message(id, LocalDateTime.now().minusDays(200));
+	}
+
+	private static ChatMessage recent(long id) {
+		return message(id, LocalDateTime.now());
+	}
+
+	private static ChatMessage message(long id, LocalDateTime timestamp) {
+		Group group = new Group();
+		group.setId(GROUP_ID);
+		ChatMessage message = new ChatMessage();
+		message.setId(id);
+		message.setSeq(id);
+		message.setGroup(group);
+		message.setSender(sender());
+		message.setType(MessageType.TEXT);
+		message.setContent("message " + id);
+		message.setTimestamp(timestamp);
+		return message;
+	}
+
+	private static User sender() {
+		User sender = new User();
+		sender.setId(7L);
+		sender.setName("Sender");
+		sender.setEmail("sender@example.com");
+		return sender;
+	}
+
+	private static List<Long> ids(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getId).toList();
+	}
+
+	private static List<Long> seqs(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getSeq).toList();
+	}
+
+}
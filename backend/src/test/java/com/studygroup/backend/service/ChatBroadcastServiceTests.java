@@ -0,0 +1,79 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatBroadcastServiceTests {
+
+	@Mock
+	private SimpMessagingTemplate messagingTemplate;
+
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@Mock
+	private ChatMembershipIndex chatMembershipIndex;
+
+	@Mock
+	private SimpUserRegistry simpUserRegistry;
+
+	@Mock
+	private ChatFrameCoalescer chatFrameCoalescer;
+
+	@InjectMocks
+	private ChatBroadcastService broadcastService;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(broadcastService, "topicBroadcast", true);
+		lenient().when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+	}
+
+	@Test
+	void eventGoesToTheGroupTopicWithoutMultiplexing() {
+		broadcastService.broadcastEvent(1L, "link-preview", Map.of("messageId", 5L));
+
+		verify(messagingTemplate).send(eq("/topic/group/1/link-preview"), any(Message.class));
+		verify(chatMembershipIndex, never()).getActiveMembers(any());
+	}
+
+	@Test
+	void multiplexedMembersGetTheEventOnTheirQueue() {
+		ReflectionTestUtils.setField(broadcastService, "multiplexEnabled", true);
+		ReflectionTestUtils.setField(broadcastService, "topicBroadcast", false);
+		when(chatMembershipIndex.getActiveMembers(1L)).thenReturn(List.of(
+				new ChatMembershipIndex.Member(7L, "online@example.com"),
+				new ChatMembershipIndex.Member(8L, "offline@example.com")));
+		when(simpUserRegistry.getUser("online@example.com")).thenReturn(mock(SimpUser.class));
+
+		broadcastService.broadcastEvent(1L, "link-preview", Map.of("messageId", 5L));
+
+		verify(messagingTemplate).send(eq("/user/online@example.com/queue/chat-link-preview"), any(Message.class));
+		verify(messagingTemplate, never()).send(eq("/user/offline@example.com/queue/chat-link-preview"), any(Message.class));
+		verify(messagingTemplate, never()).send(eq("/topic/group/1/link-preview"), any(Message.class));
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ChatClusterEventsTests {
+
+	@Mock
+	private ChatSessionRegistry chatSessionRegistry;
+
+	@Mock
+	private ChatMembershipIndex chatMembershipIndex;
+
+	@Mock
+	private ChatBroadcastService chatBroadcastService;
+
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@InjectMocks
+	private ChatClusterEvents chatClusterEvents;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(chatClusterEvents, "brokerMode", "simple");
+		lenient().when(chatBroadcastService.encode(any())).thenAnswer(invocation ->
+				objectMapper.writeValueAsBytes(invocation.getArgument(0)));
+	}
+
+	@Test
+	void singleNodeRevokesLocallyOnly() {
+		chatClusterEvents.revoke(7L, 1L);
+
+		verify(chatSessionRegistry).revoke(7L, 1L);
+		verify(chatBroadcastService, never()).send(anyString(), any());
+	}
+
+	@Test
+	void relayPublishesTheRevocation() throws Exception {
+		ReflectionTestUtils.setField(chatClusterEvents, "brokerMode", "relay");
+
+		chatClusterEvents.revoke(null, 1L);
+
+		verify(chatSessionRegistry).revokeGroup(1L);
+		ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+		verify(chatBroadcastService).send(eq(ChatClusterEvents.DESTINATION), payload.capture());
+		assertThat(objectMapper.readTree(payload.getValue()).path("groupId").asLong()).isEqualTo(1L);
+	}
+
+	@Test
+	void eventsFromOtherNodesAreApplied() {
+		chatClusterEvents.handleMessage(message("{\"type\":\"revoke\",\"groupId\":1,\"userId\":7}"));
+		chatClusterEvents.handleMessage(message("{\"type\":\"revoke\",\"groupId\":2,\"userId\":null}"));
+
+		verify(chatSessionRegistry).revoke(7L, 1L);
+		verify(chatSessionRegistry).revokeGroup(2L);
+	}
+
+	@Test
+	void membershipChangeIsPublishedInRelayMode() throws Exception {
+		chatClusterEvents.membersChanged(1L);
+		verify(chatMembershipIndex).invalidate(1L);
+		verify(chatBroadcastService, never()).send(anyString(), any());
+
+		ReflectionTestUtils.setField(chatClusterEvents, "brokerMode", "relay");
+		chatClusterEvents.membersChanged(1L);
+
+		ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+		verify(chatBroadcastService).send(eq(ChatClusterEvents.DESTINATION), payload.capture());
+		assertThat(objectMapper.readTree(payload.getValue()).path("type").asText()).isEqualTo("members");
+	}
+
+	@Test
+	void membershipChangeFromAnotherNodeDropsTheIndexEntry() {
+		chatClusterEvents.handleMessage(message("{\"type\":\"members\",\"groupId\":3}"));
+
+		verify(chatMembershipIndex).invalidate(3L);
+		verifyNoInteractions(chatSessionRegistry);
+	}
+
+	@Test
+	void malformedEventIsIgnored() {
+		chatClusterEvents.handleMessage(message("not json"));
+
+		verifyNoInteractions(chatSessionRegistry, chatMembershipIndex);
+	}
+
+	private static Message<byte[]> message(String json) {
+		return MessageBuilder.withPayload(json.getBytes(StandardCharsets.UTF_8)).build();
+	}
+
+}
@@ -0,0 +1,295 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ChatCommitLogTests {
+
+	private static final long GROUP_ID = 1L;
+
+	@TempDir
+	Path directory;
+
+	@Mock
+	private ChatWriteBehindService chatWriteBehindService;
+
+	@Mock
+	private ChatSequenceService chatSequenceService;
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	private final List<ChatCommitLog> opened = new ArrayList<>();
+
+	@AfterEach
+	void tearDown() throws Exception {
+		for (ChatCommitLog commitLog : opened) {
+			commitLog.shutdown();
+		}
+	}
+
+	@Test
+	void appendedMessagesAreReadBackNewestFirst() {
+		ChatCommitLog commitLog = open(4);
+		for (long id = 1; id <= 3; id++) {
+			commitLog.append(message(id, "message " + id));
+		}
+
+		assertThat(ids(commitLog.read(GROUP_ID, null, 3))).containsExactly(3L, 2L, 1L);
+		assertThat(ids(commitLog.read(GROUP_ID, 3L, 2))).containsExactly(2L, 1L);
+		// fewer indexed than asked for, the table has to answer
+		assertThat(commitLog.read(GROUP_ID, null, 4)).isNull();
+		assertThat(commitLog.read(2L, null, 1)).isNull();
+	}
+
+	@Test
+	void tornTailIsDroppedOnRecoveryAndOverwrittenByTheNextAppend() throws Exception {
+		ChatCommitLog first = open(4);
+		first.append(message(1, "first"));
+		first.append(message(2, "second"));
+		close(first);
+
+		// a record whose header made it to disk but whose payload did not
+		ByteBuffer torn = ByteBuffer.allocate(18);
+		torn.putInt(100).putInt(12345).put(new byte[10]).flip();
+		writeAt(recordBytes(1, "first") + recordBytes(2, "second"), torn);
+
+		ChatCommitLog second = open(4);
+		assertThat(ids(second.readAfter(GROUP_ID, 0))).containsExactly(2L, 1L);
+		second.append(message(3, "third"));
+		close(second);
+
+		assertThat(ids(open(4).readAfter(GROUP_ID, 0))).containsExactly(3L, 2L, 1L);
+	}
+
+	@Test
+	void recoveryStopsAtARecordWithABadChecksum() throws Exception {
+		ChatCommitLog first = open(4);
+		first.append(message(1, "first"));
+		first.append(message(2, "second"));
+		close(first);
+
+		// one flipped byte in the content of the second record
+		writeAt(recordBytes(1, "first") + recordBytes(2, "second") - 3, ByteBuffer.wrap(new byte[]{'X'}));
+		clearInvocations(chatWriteBehindService);
+
+		ChatCommitLog second = open(4);
+
+		assertThat(ids(second.readAfter(GROUP_ID, 0))).containsExactly(1L);
+		verify(chatWriteBehindService).reserveIdsUpTo(1L);
+	}
+
+	@Test
+	void fullSegmentRollsOverAndReadsSpanBothFiles() throws Exception {
+		ChatCommitLog commitLog = open(4);
+		// about 1.2 MB with the minimum segment size of 1 MB
+		String content = "x".repeat(10000);
+		for (long id = 1; id <= 120; id++) {
+			commitLog.append(message(id, content));
+		}
+
+		assertThat(segmentFiles()).hasSize(2);
+		List<Long> expected = new ArrayList<>();
+		for (long id = 120; id >= 1; id--) {
+			expected.add(id);
+		}
+		assertThat(ids(commitLog.read(GROUP_ID, null, 120))).isEqualTo(expected);
+	}
+
+	@Test
+	void projectedSegmentsBeyondTheRetainedOnesAreDeleted() throws Exception {
+		ChatCommitLog commitLog = open(1);
+		String content = "x".repeat(10000);
+		for (long id = 1; id <= 120; id++) {
+			commitLog.append(message(id, content));
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (segmentFiles().size() > 1) {
+			assertThat(System.currentTimeMillis()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+
+		// the older messages are in the table now, the log only answers for the newest segment
+		assertThat(commitLog.read(GROUP_ID, null, 120)).isNull();
+		assertThat(ids(commitLog.read(GROUP_ID, null, 1))).containsExactly(120L);
+	}
+
+	@Test
+	void restartResumesProjectionFromTheCheckpoint() throws Exception {
+		ChatCommitLog first = open(4);
+		first.append(message(1, "first"));
+		first.append(message(2, "second"));
+		close(first);
+
+		// as if the process died after projecting only the first record
+		Files.writeString(directory.resolve("p0").resolve("projected.checkpoint"), "0:" + recordBytes(1, "first"));
+		clearInvocations(chatWriteBehindService);
+
+		open(4);
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<ChatMessage>> projected = ArgumentCaptor.forClass(List.class);
+		verify(chatWriteBehindService).store(projected.capture(), any());
+		assertThat(ids(projected.getValue())).containsExactly(2L);
+		verify(chatWriteBehindService).reserveIdsUpTo(2L);
+		verify(chatSequenceService).advanceTo(GROUP_ID, 2L);
+	}
+
+	@Test
+	void fullyProjectedLogIsNotProjectedAgain() throws Exception {
+		ChatCommitLog first = open(4);
+		first.append(message(1, "first"));
+		close(first);
+		clearInvocations(chatWriteBehindService);
+
+		open(4);
+
+		verify(chatWriteBehindService, never()).store(any(), any());
+		verify(chatWriteBehindService).reserveIdsUpTo(1L);
+	}
+
+	@Test
+	void appendThatTimesOutBeforeTheWriterTakesItIsWithdrawn() throws Exception {
+		ChatCommitLog commitLog = open(4);
+		ReflectionTestUtils.setField(commitLog, "appendTimeoutMs", 50L);
+		stopThreads(commitLog);
+
+		assertThatThrownBy(() -> commitLog.append(message(1, "late")))
+				.isInstanceOf(RuntimeException.class)
+				.hasMessage("Chat is busy, please try again");
+
+		// the writer gets to it only after the sender was told it failed
+		Object partition = ((Object[]) ReflectionTestUtils.getField(commitLog, "partitions"))[0];
+		ReflectionTestUtils.invokeMethod(commitLog, "writeLoop", partition);
+
+		assertThat(commitLog.readAfter(GROUP_ID, 0)).isEmpty();
+		// nothing was written where the record would have gone
+		assertThat(readInt(0)).isZero();
+	}
+
+	private ChatCommitLog open(int retainedSegments) {
+		ChatCommitLog commitLog = new ChatCommitLog();
+		ReflectionTestUtils.setField(commitLog, "enabled", true);
+		ReflectionTestUtils.setField(commitLog, "directory", directory.toString());
+		ReflectionTestUtils.setField(commitLog, "partitionCount", 1);
+		ReflectionTestUtils.setField(commitLog, "segmentBytes", 0);
+		ReflectionTestUtils.setField(commitLog, "retainedSegments", retainedSegments);
+		ReflectionTestUtils.setField(commitLog, "queueCapacity", 100);
+		ReflectionTestUtils.setField(commitLog, "fsyncBatch", 16);
+		ReflectionTestUtils.setField(commitLog, "fsyncMaxWaitMs", 1L);
+		ReflectionTestUtils.setField(commitLog, "appendTimeoutMs", 2000L);
+		ReflectionTestUtils.setField(commitLog, "indexPerGroup", 200);
+		ReflectionTestUtils.setField(commitLog, "indexMaxGroups", 100);
+		ReflectionTestUtils.setField(commitLog, "projectionBatch", 500);
+		ReflectionTestUtils.setField(commitLog, "chatWriteBehindService", chatWriteBehindService);
+		ReflectionTestUtils.setField(commitLog, "chatSequenceService", chatSequenceService);
+		ReflectionTestUtils.setField(commitLog, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(commitLog, "meterRegistry", new SimpleMeterRegistry());
+		commitLog.init();
+		opened.add(commitLog);
+		return commitLog;
+	}
+
+	// waits for the projection so the checkpoint is at the end, as after a clean run
+	private void close(ChatCommitLog commitLog) throws Exception {
+		awaitProjected(commitLog);
+		commitLog.shutdown();
+		opened.remove(commitLog);
+	}
+
+	private static void awaitProjected(ChatCommitLog commitLog) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (ReflectionTestUtils.<Double>invokeMethod(commitLog, "projectionLagBytes") > 0) {
+			assertThat(System.currentTimeMillis()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	// stops the writer and projection threads, appends stay queued until writeLoop runs again
+	@SuppressWarnings("unchecked")
+	private static void stopThreads(ChatCommitLog commitLog) throws InterruptedException {
+		ReflectionTestUtils.setField(commitLog, "running", false);
+		for (Thread thread : (List<Thread>) ReflectionTestUtils.getField(commitLog, "threads")) {
+			thread.join(5000);
+		}
+	}
+
+	private void writeAt(long position, ByteBuffer bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+			channel.write(bytes, position);
+		}
+	}
+
+	private int readInt(long position) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(4);
+		try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.READ)) {
+			channel.read(bytes, position);
+		}
+		return bytes.getInt(0);
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory.resolve("p0"))) {
+			return files.filter(path -> path.toString().endsWith(".log")).sorted().toList();
+		}
+	}
+
+	private static int recordBytes(long id, String content) {
+		return 8 + ChatCommitLog.encode(message(id, content)).length;
+	}
+
+	private static ChatMessage message(long id, String content) {
+		Group group = new Group();
+		group.setId(GROUP_ID);
+		User sender = new User();
+		sender.setId(7L);
+		sender.setName("Sender");
+		sender.setEmail("sender@example.com");
+
+		ChatMessage message = new ChatMessage();
+		message.setId(id);
+		message.setSeq(id);
+		message.setGroup(group);
+		message.setSender(sender);
+		message.setType(MessageType.TEXT);
+		message.setContent(content);
+		message.setTimestamp(LocalDateTime.of(2026, 1, 1, 12, 0));
+		return message;
+	}
+
+	private static List<Long> ids(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getId).toList();
+	}
+
+}
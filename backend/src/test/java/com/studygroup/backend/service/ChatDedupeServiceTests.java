@@ -0,0 +1,112 @@
+package com.studygroup.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatDedupeServiceTests {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private ChatDedupeService dedupeService;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		dedupeService = new ChatDedupeService();
+		ReflectionTestUtils.setField(dedupeService, "windowMs", 600000L);
+		ReflectionTestUtils.setField(dedupeService, "maxEntries", 100);
+		ReflectionTestUtils.setField(dedupeService, "inFlightWaitMs", 1000L);
+		ReflectionTestUtils.setField(dedupeService, "meterRegistry", meterRegistry);
+		dedupeService.init();
+	}
+
+	@Test
+	void retryInTheSameGroupIsADuplicate() {
+		assertThat(dedupeService.claim(1L, 7L, "c-1")).isNull();
+
+		assertThat(dedupeService.claim(1L, 7L, "c-1")).isNotNull();
+		assertThat(meterRegistry.counter("chat.dedupe.duplicates").count()).isEqualTo(1);
+	}
+
+	@Test
+	void sameIdInAnotherGroupOrFromAnotherSenderIsNew() {
+		dedupeService.claim(1L, 7L, "c-1");
+
+		assertThat(dedupeService.claim(2L, 7L, "c-1")).isNull();
+		assertThat(dedupeService.claim(1L, 8L, "c-1")).isNull();
+	}
+
+	@Test
+	void retryIsAnsweredOnceTheFirstAttemptIsSaved() throws Exception {
+		dedupeService.claim(1L, 7L, "c-1");
+		CompletableFuture<Long> messageId = dedupeService.messageIdOf(dedupeService.claim(1L, 7L, "c-1"));
+
+		// the caller is not blocked while the first attempt is still being saved
+		assertThat(messageId).isNotDone();
+
+		dedupeService.complete(1L, 7L, "c-1", 42L);
+
+		assertThat(messageId.get(1, TimeUnit.SECONDS)).isEqualTo(42L);
+	}
+
+	@Test
+	void retryOfASettledAttemptIsAnsweredImmediately() {
+		dedupeService.claim(1L, 7L, "c-1");
+		dedupeService.complete(1L, 7L, "c-1", 42L);
+
+		assertThat(dedupeService.messageIdOf(dedupeService.claim(1L, 7L, "c-1"))).isCompletedWithValue(42L);
+	}
+
+	@Test
+	void slowFirstAttemptIsReportedAsInFlight() throws Exception {
+		ReflectionTestUtils.setField(dedupeService, "inFlightWaitMs", 20L);
+		dedupeService.claim(1L, 7L, "c-1");
+		ChatDedupeService.Entry earlier = dedupeService.claim(1L, 7L, "c-1");
+
+		assertThat(dedupeService.messageIdOf(earlier).get(1, TimeUnit.SECONDS)).isNull();
+
+		// the timeout of one retry does not settle the claim for the next one
+		dedupeService.complete(1L, 7L, "c-1", 42L);
+		assertThat(earlier.getMessageId()).isEqualTo(42L);
+	}
+
+	@Test
+	void failedAttemptLetsTheNextRetryThrough() throws Exception {
+		dedupeService.claim(1L, 7L, "c-1");
+		CompletableFuture<Long> waiting = dedupeService.messageIdOf(dedupeService.claim(1L, 7L, "c-1"));
+
+		dedupeService.release(1L, 7L, "c-1");
+
+		assertThat(waiting.get(1, TimeUnit.SECONDS)).isNull();
+		assertThat(dedupeService.claim(1L, 7L, "c-1")).isNull();
+	}
+
+	@Test
+	void missingClientIdIsIgnored() {
+		dedupeService.release(1L, 7L, null);
+		dedupeService.complete(1L, 7L, null, 42L);
+
+		assertThat(dedupeService.claim(1L, 7L, "null")).isNull();
+	}
+
+	@Test
+	void oldestClaimsAreEvictedBeyondTheLimit() {
+		ReflectionTestUtils.setField(dedupeService, "maxEntries", 2);
+		dedupeService.claim(1L, 7L, "c-1");
+		dedupeService.claim(1L, 7L, "c-2");
+		dedupeService.claim(1L, 7L, "c-3");
+
+		dedupeService.claim(1L, 7L, "c-4");
+
+		assertThat(dedupeService.claim(1L, 7L, "c-4")).isNotNull();
+		assertThat(dedupeService.claim(1L, 7L, "c-1")).isNull();
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+@ExtendWith(MockitoExtension.class)
+class ChatExportServiceTests {
+
+	@Mock
+	private JdbcTemplate streamingJdbcTemplate;
+
+	@Mock
+	private ChatArchiveService chatArchiveService;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private ChatExportService exportService;
+
+	@BeforeEach
+	void setUp() {
+		exportService = new ChatExportService(mock(DataSource.class));
+		ReflectionTestUtils.setField(exportService, "streamingJdbcTemplate", streamingJdbcTemplate);
+		ReflectionTestUtils.setField(exportService, "objectMapper", objectMapper);
+		ReflectionTestUtils.setField(exportService, "chatArchiveService", chatArchiveService);
+	}
+
+	@Test
+	void archivedMessagesComeBeforeTableRows() throws Exception {
+		archive(message(1L, "archived"));
+		when(chatArchiveService.boundary(1L)).thenReturn(1L);
+		table(1L, row(2L, "first row", null), row(3L, "second row", 2048L));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long count = exportService.exportGroupMessages(1L, out);
+
+		assertThat(count).isEqualTo(3);
+		String ndjson = out.toString(StandardCharsets.UTF_8);
+		assertThat(ndjson).endsWith("}\n");
+		List<JsonNode> lines = new ArrayList<>();
+		for (String line : ndjson.split("\n")) {
+			lines.add(objectMapper.readTree(line));
+		}
+		assertThat(lines).extracting(line -> line.get("id").asLong()).containsExactly(1L, 2L, 3L);
+		assertThat(lines.get(0).get("content").asText()).isEqualTo("archived");
+		assertThat(lines.get(0).get("timestamp").asText()).isEqualTo("2024-05-01T10:15");
+		assertThat(lines.get(1).get("senderName").asText()).isEqualTo("Sender");
+		// NULL columns are left out instead of written as null
+		assertThat(lines.get(1).has("fileSize")).isFalse();
+		assertThat(lines.get(2).get("fileSize").asLong()).isEqualTo(2048L);
+	}
+
+	@Test
+	void emptyHistoryWritesNothing() throws Exception {
+		archive();
+		table(0L);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		assertThat(exportService.exportGroupMessages(1L, out)).isZero();
+		assertThat(out.size()).isZero();
+	}
+
+	@Test
+	void responseStreamIsLeftOpen() throws Exception {
+		archive(message(1L, "archived"));
+		table(0L);
+		boolean[] closed = {false};
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+
+		exportService.exportGroupMessages(1L, out);
+
+		// a gzip wrapper still has to write its trailer
+		assertThat(closed[0]).isFalse();
+	}
+
+	private void archive(ChatMessage... messages) {
+		doAnswer(invocation -> {
+			Consumer<ChatMessage> action = invocation.getArgument(1);
+			for (ChatMessage message : messages) {
+				action.accept(message);
+			}
+			return null;
+		}).when(chatArchiveService).forEach(eq(1L), any());
+	}
+
+	private void table(long boundary, ResultSet... rows) {
+		doAnswer(invocation -> {
+			RowCallbackHandler handler = invocation.getArgument(1);
+			for (ResultSet row : rows) {
+				handler.processRow(row);
+			}
+			return null;
+		}).when(streamingJdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(1L), eq(boundary));
+	}
+
+	private static ChatMessage message(Long id, String content) {
+		Group group = new Group();
+		group.setId(1L);
+		User sender = new User();
+		sender.setId(7L);
+		sender.setName("Sender");
+		ChatMessage message = new ChatMessage(group, sender, content, MessageType.TEXT);
+		message.setId(id);
+		message.setTimestamp(LocalDateTime.of(2024, 5, 1, 10, 15));
+		return message;
+	}
+
+	private static ResultSet row(Long id, String content, Long fileSize) throws Exception {
+		ResultSet rs = mock(ResultSet.class, withSettings().strictness(Strictness.LENIENT));
+		when(rs.getLong("id")).thenReturn(id);
+		when(rs.getLong("sender_id")).thenReturn(7L);
+		when(rs.getString("sender_name")).thenReturn("Sender");
+		when(rs.getString("content")).thenReturn(content);
+		when(rs.getString("type")).thenReturn("TEXT");
+		when(rs.getLong("file_size")).thenReturn(fileSize != null ? fileSize : 0L);
+		when(rs.wasNull()).thenReturn(fileSize == null);
+		when(rs.getTimestamp("timestamp")).thenReturn(Timestamp.valueOf(LocalDateTime.of(2024, 5, 1, 10, 16)));
+		return rs;
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.studygroup.backend.BenchmarkRunner;
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Messages per second one core can broadcast to a group, with frame coalescing off (every
+// subscriber on /topic/group/{id}) and on (every subscriber on /topic/group/{id}/batch). The
+// window is set far out and batches are flushed by max-batch, so all of the work, including the
+// coalesced sends, happens on the benchmark thread and ops/s is messages/s per core. The frames
+// and bytes counters are what the subscribers' sockets would have been handed.
+// Run with: mvn -Pbenchmark test -Dtest=ChatFrameCoalescerBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ChatFrameCoalescerBenchmark {
+
+	private static final long GROUP_ID = 1L;
+
+	@Param({"off", "on"})
+	public String coalescing;
+
+	@Param({"10", "100", "500"})
+	public int subscribers;
+
+	@Param({"20"})
+	public int maxBatch;
+
+	private InProcessBroker broker;
+	private ChatFrameCoalescer coalescer;
+	private ChatBroadcastService broadcastService;
+	private ChatMessage message;
+	private long nextId;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Outbound {
+		public long frames;
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = 0;
+			bytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		broker = new InProcessBroker();
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		boolean on = "on".equals(coalescing);
+
+		coalescer = new ChatFrameCoalescer();
+		broadcastService = new ChatBroadcastService();
+		ReflectionTestUtils.setField(coalescer, "enabled", on);
+		ReflectionTestUtils.setField(coalescer, "windowMs", TimeUnit.MINUTES.toMillis(1));
+		ReflectionTestUtils.setField(coalescer, "maxBatch", maxBatch);
+		ReflectionTestUtils.setField(coalescer, "brokerMode", "simple");
+		ReflectionTestUtils.setField(coalescer, "chatBroadcastService", broadcastService);
+		ReflectionTestUtils.setField(coalescer, "meterRegistry", new SimpleMeterRegistry());
+		coalescer.init();
+
+		ReflectionTestUtils.setField(broadcastService, "messagingTemplate", broker.template());
+		ReflectionTestUtils.setField(broadcastService, "objectMapper", objectMapper);
+		ReflectionTestUtils.setField(broadcastService, "chatFrameCoalescer", coalescer);
+		ReflectionTestUtils.setField(broadcastService, "multiplexEnabled", false);
+		ReflectionTestUtils.setField(broadcastService, "topicBroadcast", true);
+
+		String destination = on ? "/topic/group/" + GROUP_ID + "/batch" : "/topic/group/" + GROUP_ID;
+		for (int i = 0; i < subscribers; i++) {
+			coalescer.onSubscribe(new SessionSubscribeEvent(this, broker.subscribe("session-" + i, destination)));
+		}
+
+		message = message();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		coalescer.shutdown();
+		broker.stop();
+	}
+
+	@Benchmark
+	public void broadcast(Outbound outbound) {
+		message.setId(++nextId);
+		message.setSeq(nextId);
+		broadcastService.broadcast(GROUP_ID, message);
+		outbound.frames += broker.takeFrames();
+		outbound.bytes += broker.takeBytes();
+	}
+
+	private static ChatMessage message() {
+		Group group = new Group();
+		group.setId(GROUP_ID);
+		User sender = new User();
+		sender.setId(42L);
+		sender.setName("Benchmark Sender");
+		sender.setAvatarUrl("https://res.cloudinary.com/demo/image/upload/avatar.png");
+
+		ChatMessage message = new ChatMessage();
+		message.setGroup(group);
+		message.setSender(sender);
+		message.setType(MessageType.TEXT);
+		message.setContent("Has anyone started on the second problem set? I am stuck on question 4.");
+		message.setClientMessageId("3f1c2a9e-5b7d-4c8e-9a10-2b3c4d5e6f70");
+		message.setTimestamp(LocalDateTime.now());
+		return message;
+	}
+
+	@Test
+	@Tag("benchmark")
+	void run() throws Exception {
+		BenchmarkRunner.run(ChatFrameCoalescerBenchmark.class);
+	}
+
+}
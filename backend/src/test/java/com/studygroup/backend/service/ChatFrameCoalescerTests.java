@@ -0,0 +1,166 @@
+package com.studygroup.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ChatFrameCoalescerTests {
+
+	private static final String BATCH = "/topic/group/1/batch";
+
+	@Mock
+	private ChatBroadcastService chatBroadcastService;
+
+	@InjectMocks
+	private ChatFrameCoalescer coalescer;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		ReflectionTestUtils.setField(coalescer, "enabled", true);
+		ReflectionTestUtils.setField(coalescer, "windowMs", TimeUnit.MINUTES.toMillis(1));
+		ReflectionTestUtils.setField(coalescer, "maxBatch", 3);
+		ReflectionTestUtils.setField(coalescer, "brokerMode", "simple");
+		ReflectionTestUtils.setField(coalescer, "meterRegistry", meterRegistry);
+		coalescer.init();
+		coalescer.onSubscribe(subscribe("s1", "sub-1", BATCH));
+	}
+
+	@AfterEach
+	void tearDown() {
+		coalescer.shutdown();
+	}
+
+	@Test
+	void burstIsSentAsOneArrayFrameAfterTheWindow() {
+		ReflectionTestUtils.setField(coalescer, "windowMs", 10L);
+
+		coalescer.add(1L, json("{\"id\":1}"));
+		coalescer.add(1L, json("{\"id\":2}"));
+
+		ArgumentCaptor<byte[]> frame = ArgumentCaptor.forClass(byte[].class);
+		verify(chatBroadcastService, timeout(5000)).send(eq(BATCH), frame.capture());
+		assertThat(text(frame.getValue())).isEqualTo("[{\"id\":1},{\"id\":2}]");
+		assertThat(meterRegistry.summary("chat.coalesce.batch.size").totalAmount()).isEqualTo(2);
+	}
+
+	@Test
+	void fullBatchIsSentAtOnceAndTheIdleBatchIsDropped() {
+		coalescer.add(1L, json("1"));
+		coalescer.add(1L, json("2"));
+		verify(chatBroadcastService, never()).send(anyString(), any());
+
+		coalescer.add(1L, json("3"));
+
+		ArgumentCaptor<byte[]> frame = ArgumentCaptor.forClass(byte[].class);
+		verify(chatBroadcastService).send(eq(BATCH), frame.capture());
+		assertThat(text(frame.getValue())).isEqualTo("[1,2,3]");
+		assertThat(batches()).isEmpty();
+	}
+
+	@Test
+	void slowSendDoesNotBlockAddsAndKeepsFramesInOrder() throws Exception {
+		ReflectionTestUtils.setField(coalescer, "maxBatch", 1);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			sending.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return null;
+		}).doNothing().when(chatBroadcastService).send(eq(BATCH), any());
+
+		CompletableFuture<Void> first = CompletableFuture.runAsync(() -> coalescer.add(1L, json("1")));
+		assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// returns while the first frame is still being written, the sending thread takes this one too
+		CompletableFuture.runAsync(() -> coalescer.add(1L, json("2"))).get(5, TimeUnit.SECONDS);
+		release.countDown();
+		first.get(5, TimeUnit.SECONDS);
+
+		ArgumentCaptor<byte[]> frames = ArgumentCaptor.forClass(byte[].class);
+		verify(chatBroadcastService, times(2)).send(eq(BATCH), frames.capture());
+		assertThat(frames.getAllValues()).extracting(ChatFrameCoalescerTests::text).containsExactly("[1]", "[2]");
+		assertThat(batches()).isEmpty();
+	}
+
+	@Test
+	void failedSendIsCounted() {
+		ReflectionTestUtils.setField(coalescer, "maxBatch", 1);
+		doThrow(new IllegalStateException("broker down")).when(chatBroadcastService).send(eq(BATCH), any());
+
+		coalescer.add(1L, json("1"));
+
+		assertThat(meterRegistry.counter("chat.coalesce.frames.failed").count()).isEqualTo(1);
+		assertThat(meterRegistry.counter("chat.coalesce.frames").count()).isZero();
+		assertThat(batches()).isEmpty();
+	}
+
+	@Test
+	void groupsWithoutBatchSubscribersAreSkipped() {
+		ReflectionTestUtils.setField(coalescer, "maxBatch", 1);
+
+		coalescer.add(2L, json("1"));
+		coalescer.onDisconnect(new SessionDisconnectEvent(this,
+				MessageBuilder.createMessage(new byte[0], StompHeaderAccessor.create(StompCommand.DISCONNECT).getMessageHeaders()),
+				"s1", CloseStatus.NORMAL));
+		coalescer.add(1L, json("1"));
+
+		verify(chatBroadcastService, never()).send(anyString(), any());
+		assertThat(batches()).isEmpty();
+	}
+
+	private Map<?, ?> batches() {
+		return (Map<?, ?>) ReflectionTestUtils.getField(coalescer, "batches");
+	}
+
+	private static SessionSubscribeEvent subscribe(String sessionId, String subscriptionId, String destination) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		return new SessionSubscribeEvent(ChatFrameCoalescerTests.class,
+				MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	private static byte[] json(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String text(byte[] frame) {
+		return new String(frame, StandardCharsets.UTF_8);
+	}
+
+}
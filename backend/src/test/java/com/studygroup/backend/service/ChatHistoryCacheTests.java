@@ -0,0 +1,175 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatHistoryCacheTests {
+
+	private ChatHistoryCache cache;
+
+	@BeforeEach
+	void setUp() {
+		cache = new ChatHistoryCache();
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "groupCapacity", 5);
+		ReflectionTestUtils.setField(cache, "maxGroups", 2);
+		ReflectionTestUtils.setField(cache, "maxBytes", 1_000_000L);
+	}
+
+	@Test
+	void coldGroupCannotAnswer() {
+		assertThat(cache.read(1L, null, 3)).isNull();
+
+		cache.startWarming(1L);
+		// registered but not loaded yet
+		assertThat(cache.read(1L, null, 3)).isNull();
+	}
+
+	@Test
+	void warmedGroupServesLatestAndOlderPages() {
+		warm(1L, 10, 9, 8, 7, 6);
+
+		assertThat(ids(cache.read(1L, null, 3))).containsExactly(10L, 9L, 8L);
+		assertThat(ids(cache.read(1L, 8L, 2))).containsExactly(7L, 6L);
+		// the buffer is full, so older history may exist outside it
+		assertThat(cache.read(1L, 7L, 2)).isNull();
+		// more than the buffer can ever hold
+		assertThat(cache.read(1L, null, 6)).isNull();
+	}
+
+	@Test
+	void shortHistoryIsComplete() {
+		warm(1L, 3, 2, 1);
+
+		assertThat(ids(cache.read(1L, 2L, 5))).containsExactly(1L);
+		assertThat(ids(cache.read(1L, 1L, 5))).isEmpty();
+	}
+
+	@Test
+	void lateMessageIsInsertedInOrder() {
+		warm(1L, 10, 8);
+
+		cache.append(message(1L, 9));
+		cache.append(message(1L, 11));
+
+		assertThat(ids(cache.read(1L, null, 5))).containsExactly(11L, 10L, 9L, 8L);
+	}
+
+	@Test
+	void duplicateAppendIsIgnored() {
+		warm(1L, 2, 1);
+
+		cache.append(message(1L, 2));
+
+		assertThat(ids(cache.read(1L, null, 5))).containsExactly(2L, 1L);
+	}
+
+	@Test
+	void appendTrimsTheOldestMessage() {
+		warm(1L, 4, 3, 2, 1);
+		assertThat(ids(cache.read(1L, 2L, 1))).containsExactly(1L);
+
+		cache.append(message(1L, 5));
+		cache.append(message(1L, 6));
+
+		assertThat(ids(cache.read(1L, null, 5))).containsExactly(6L, 5L, 4L, 3L, 2L);
+		// message 1 was trimmed, the buffer no longer holds the whole history
+		assertThat(cache.read(1L, 2L, 1)).isNull();
+	}
+
+	@Test
+	void messageOlderThanAFullWindowIsNotCached() {
+		warm(1L, 10, 9, 8, 7, 6);
+
+		cache.append(message(1L, 3));
+
+		assertThat(ids(cache.read(1L, null, 5))).containsExactly(10L, 9L, 8L, 7L, 6L);
+	}
+
+	@Test
+	void messagesSavedWhileWarmingAreKept() {
+		cache.startWarming(1L);
+		cache.append(message(1L, 4));
+
+		// the database read started before message 4 was committed
+		cache.finishWarming(1L, messages(1L, 3, 2));
+
+		assertThat(ids(cache.read(1L, null, 5))).containsExactly(4L, 3L, 2L);
+	}
+
+	@Test
+	void appendToUncachedGroupIsIgnored() {
+		cache.append(message(1L, 1));
+
+		assertThat(cache.read(1L, null, 1)).isNull();
+	}
+
+	@Test
+	void leastRecentlyReadGroupIsEvicted() {
+		warm(1L, 1);
+		warm(2L, 2);
+		// reading group 1 makes group 2 the coldest
+		cache.read(1L, null, 1);
+
+		warm(3L, 3);
+
+		assertThat(cache.read(1L, null, 1)).isNotNull();
+		assertThat(cache.read(2L, null, 1)).isNull();
+		assertThat(cache.read(3L, null, 1)).isNotNull();
+	}
+
+	@Test
+	void byteBudgetEvictsColdGroups() {
+		ReflectionTestUtils.setField(cache, "maxBytes", 600L);
+		warm(1L, 2, 1);
+
+		warm(2L, 4, 3);
+
+		assertThat(cache.read(1L, null, 1)).isNull();
+		assertThat(ids(cache.read(2L, null, 2))).containsExactly(4L, 3L);
+	}
+
+	@Test
+	void disabledCacheNeverAnswers() {
+		ReflectionTestUtils.setField(cache, "enabled", false);
+
+		assertThat(cache.startWarming(1L)).isFalse();
+		assertThat(cache.read(1L, null, 1)).isNull();
+	}
+
+	private void warm(Long groupId, long... ids) {
+		cache.startWarming(groupId);
+		cache.finishWarming(groupId, messages(groupId, ids));
+	}
+
+	private static List<ChatMessage> messages(Long groupId, long... ids) {
+		List<ChatMessage> messages = new ArrayList<>();
+		for (long id : ids) {
+			messages.add(message(groupId, id));
+		}
+		return messages;
+	}
+
+	private static ChatMessage message(Long groupId, long id) {
+		Group group = new Group();
+		group.setId(groupId);
+		ChatMessage message = new ChatMessage();
+		message.setId(id);
+		message.setGroup(group);
+		message.setContent("m" + id);
+		return message;
+	}
+
+	private static List<Long> ids(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getId).toList();
+	}
+
+}
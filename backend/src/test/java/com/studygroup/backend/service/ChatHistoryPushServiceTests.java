@@ -0,0 +1,166 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.config.GroupOrderedInboundExecutor;
+import com.studygroup.backend.controller.ChatController;
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatHistoryPushServiceTests {
+
+	@Mock
+	private ChatService chatService;
+
+	@Mock
+	private ChatBroadcastService chatBroadcastService;
+
+	@Mock
+	private GroupOrderedInboundExecutor groupOrderedInboundExecutor;
+
+	@Mock
+	private MessageChannel clientOutboundChannel;
+
+	@Captor
+	private ArgumentCaptor<Message<?>> sent;
+
+	@Captor
+	private ArgumentCaptor<Object> encoded;
+
+	@InjectMocks
+	private ChatHistoryPushService historyPushService;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(historyPushService, "defaultSize", 50);
+		ReflectionTestUtils.setField(historyPushService, "maxSize", 100);
+		lenient().doAnswer(invocation -> {
+			invocation.<Runnable>getArgument(1).run();
+			return null;
+		}).when(groupOrderedInboundExecutor).execute(anyString(), any(Runnable.class));
+		lenient().when(chatBroadcastService.encode(any())).thenReturn(new byte[0]);
+	}
+
+	@Test
+	void latestPageIsPushedOnTheSubscription() {
+		when(chatService.getGroupMessagesPage(1L, null, null, 50))
+				.thenReturn(new ChatService.MessagePage(List.of(message(9L), message(8L)), "next", "prev", true));
+
+		historyPushService.onSubscribe(subscribe("/topic/group/1", "true"));
+
+		verify(groupOrderedInboundExecutor).execute(eq("s1"), any(Runnable.class));
+		verify(clientOutboundChannel).send(sent.capture());
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(sent.getValue());
+		assertThat(headers.getSessionId()).isEqualTo("s1");
+		assertThat(headers.getSubscriptionId()).isEqualTo("sub-1");
+		assertThat(headers.getDestination()).isEqualTo("/topic/group/1");
+		assertThat(headers.getFirstNativeHeader("history")).isEqualTo("true");
+
+		Map<String, Object> payload = payload();
+		assertThat(payload).containsEntry("groupId", 1L)
+				.containsEntry("nextCursor", "next")
+				.containsEntry("prevCursor", "prev")
+				.containsEntry("hasMore", true);
+		assertThat(messages(payload)).extracting(ChatController.ChatMessagePayload::getId).containsExactly(9L, 8L);
+	}
+
+	@Test
+	void requestedSizeIsCapped() {
+		when(chatService.getGroupMessagesPage(1L, null, null, 100))
+				.thenReturn(new ChatService.MessagePage(List.of(), null, null, false));
+
+		historyPushService.onSubscribe(subscribe("/topic/group/1/batch", "500"));
+
+		verify(chatService).getGroupMessagesPage(1L, null, null, 100);
+		verify(clientOutboundChannel).send(any());
+	}
+
+	@Test
+	void subscriptionsWithoutAValidRequestGetNothing() {
+		historyPushService.onSubscribe(subscribe("/topic/group/1", null));
+		historyPushService.onSubscribe(subscribe("/topic/group/1", "0"));
+		historyPushService.onSubscribe(subscribe("/topic/group/1", "lots"));
+		historyPushService.onSubscribe(subscribe("/topic/group/1/presence", "true"));
+		historyPushService.onSubscribe(subscribe("/user/queue/chat", "true"));
+		historyPushService.onSubscribe(subscribe("/topic/group/99999999999999999999", "true"));
+
+		verifyNoInteractions(groupOrderedInboundExecutor, chatService, clientOutboundChannel);
+	}
+
+	@Test
+	void failedReadSendsNothing() {
+		when(chatService.getGroupMessagesPage(any(), any(), any(), anyInt()))
+				.thenThrow(new RuntimeException("Group not found"));
+
+		historyPushService.onSubscribe(subscribe("/topic/group/1", "true"));
+
+		verify(clientOutboundChannel, never()).send(any());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> payload() {
+		verify(chatBroadcastService).encode(encoded.capture());
+		return (Map<String, Object>) encoded.getValue();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<ChatController.ChatMessagePayload> messages(Map<String, Object> payload) {
+		return (List<ChatController.ChatMessagePayload>) payload.get("messages");
+	}
+
+	private static SessionSubscribeEvent subscribe(String destination, String history) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		accessor.setSessionId("s1");
+		accessor.setSubscriptionId("sub-1");
+		accessor.setDestination(destination);
+		if (history != null) {
+			accessor.setNativeHeader("history", history);
+		}
+		return new SessionSubscribeEvent(ChatHistoryPushServiceTests.class,
+				MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	private static ChatMessage message(Long id) {
+		Group group = new Group();
+		group.setId(1L);
+		User sender = new User();
+		sender.setId(7L);
+		sender.setName("Sender");
+		ChatMessage message = new ChatMessage(group, sender, "message " + id, MessageType.TEXT);
+		message.setId(id);
+		return message;
+	}
+
+}
@@ -0,0 +1,197 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.GroupChatSummary;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import com.studygroup.backend.repository.ChatMessageRepository;
+import com.studygroup.backend.repository.ChatReadStateRepository;
+import com.studygroup.backend.repository.GroupChatSummaryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatInboxServiceTests {
+
+	@Mock
+	private GroupChatSummaryRepository groupChatSummaryRepository;
+
+	@Mock
+	private ChatReadStateRepository chatReadStateRepository;
+
+	@Mock
+	private ChatMessageRepository chatMessageRepository;
+
+	@Mock
+	private ChatArchiveService chatArchiveService;
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@InjectMocks
+	private ChatInboxService inboxService;
+
+	@BeforeEach
+	void setUp() {
+		inboxService.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	void messagesAreCoalescedIntoOneUpsertPerGroup() {
+		inboxService.recordMessages(List.of(message(1L, 10L), message(1L, 12L)));
+		inboxService.recordMessages(List.of(message(1L, 11L), message(2L, 20L)));
+		verifyNoInteractions(groupChatSummaryRepository);
+
+		inboxService.flushSummaries();
+
+		verify(groupChatSummaryRepository).recordMessages(eq(1L), eq(12L), eq(7L), eq("Sender"), eq("message 12"),
+				eq("TEXT"), any(), eq(3L));
+		verify(groupChatSummaryRepository).recordMessages(eq(2L), eq(20L), eq(7L), eq("Sender"), eq("message 20"),
+				eq("TEXT"), any(), eq(1L));
+	}
+
+	@Test
+	void messagesAreOnlyCountedOnceTheirTransactionCommits() {
+		TransactionSynchronizationManager.initSynchronization();
+		inboxService.recordMessages(List.of(message(1L, 10L)));
+
+		inboxService.flushSummaries();
+		verifyNoInteractions(groupChatSummaryRepository);
+
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCommit();
+		}
+		inboxService.flushSummaries();
+
+		verify(groupChatSummaryRepository).recordMessages(eq(1L), eq(10L), anyLong(), any(), any(), any(), any(), eq(1L));
+	}
+
+	@Test
+	void failedSummaryFlushIsRetriedWithTheSameCount() {
+		inboxService.recordMessages(List.of(message(1L, 10L)));
+		doThrow(new RuntimeException("deadlock")).doNothing().when(groupChatSummaryRepository)
+				.recordMessages(any(), any(), any(), any(), any(), any(), any(), anyLong());
+
+		inboxService.flushSummaries();
+		inboxService.flushSummaries();
+
+		verify(groupChatSummaryRepository, times(2)).recordMessages(eq(1L), eq(10L), anyLong(), any(), any(), any(), any(), eq(1L));
+	}
+
+	@Test
+	void readOfTheLatestMessageUsesTheSummaryCount() {
+		when(groupChatSummaryRepository.findById(1L)).thenReturn(Optional.of(summary(1L, 12L, 40L)));
+		inboxService.markRead(7L, 1L, 11L);
+		inboxService.markRead(7L, 1L, 12L);
+
+		inboxService.flushReads();
+
+		verify(chatReadStateRepository).advance(7L, 1L, 12L, 40L);
+		verifyNoInteractions(chatMessageRepository);
+	}
+
+	@Test
+	void olderReadCountsTableAndArchive() {
+		when(groupChatSummaryRepository.findById(1L)).thenReturn(Optional.of(summary(1L, 12L, 40L)));
+		when(chatMessageRepository.countByGroupIdAndIdLessThanEqual(1L, 5L)).thenReturn(3L);
+		when(chatArchiveService.countUpTo(1L, 5L)).thenReturn(2L);
+		inboxService.markRead(7L, 1L, 5L);
+
+		inboxService.flushReads();
+
+		verify(chatReadStateRepository).advance(7L, 1L, 5L, 5L);
+	}
+
+	@Test
+	void readAheadOfAnUnflushedSummaryWaitsForIt() {
+		inboxService.recordMessages(List.of(message(1L, 13L)));
+		doThrow(new RuntimeException("deadlock")).doNothing().when(groupChatSummaryRepository)
+				.recordMessages(any(), any(), any(), any(), any(), any(), any(), anyLong());
+		when(groupChatSummaryRepository.findById(1L)).thenReturn(Optional.of(summary(1L, 12L, 40L)));
+		inboxService.markRead(7L, 1L, 13L);
+
+		// message 13 is not in the summary yet, clamping to 12 would leave it unread
+		inboxService.flushReads();
+		verify(chatReadStateRepository, never()).advance(anyLong(), anyLong(), anyLong(), anyLong());
+
+		when(groupChatSummaryRepository.findById(1L)).thenReturn(Optional.of(summary(1L, 13L, 41L)));
+		inboxService.flushReads();
+
+		verify(chatReadStateRepository).advance(7L, 1L, 13L, 41L);
+	}
+
+	@Test
+	void backfillAlsoMarksExistingHistoryAsRead() throws Exception {
+		when(groupChatSummaryRepository.count()).thenReturn(0L);
+		when(jdbcTemplate.update(startsWith("INSERT IGNORE INTO group_chat_summaries"))).thenReturn(2);
+		when(jdbcTemplate.update(startsWith("INSERT IGNORE INTO chat_read_states"))).thenReturn(5);
+
+		inboxService.run(new DefaultApplicationArguments());
+
+		verify(jdbcTemplate).update(startsWith("INSERT IGNORE INTO chat_read_states"));
+	}
+
+	@Test
+	void noBackfillOnceSummariesExist() throws Exception {
+		when(groupChatSummaryRepository.count()).thenReturn(3L);
+
+		inboxService.run(new DefaultApplicationArguments());
+
+		verifyNoInteractions(jdbcTemplate);
+	}
+
+	private static ChatMessage message(Long groupId, Long id) {
+		Group group = new Group();
+		group.setId(groupId);
+		User sender = new User();
+		sender.setId(7L);
+		sender.setName("Sender");
+		ChatMessage message = new ChatMessage(group, sender, "message " + id, MessageType.TEXT);
+		message.setId(id);
+		return message;
+	}
+
+	private static GroupChatSummary summary(Long groupId, Long lastMessageId, Long messageCount) {
+		GroupChatSummary summary = new GroupChatSummary();
+		summary.setGroupId(groupId);
+		summary.setLastMessageId(lastMessageId);
+		summary.setMessageCount(messageCount);
+		return summary;
+	}
+
+}
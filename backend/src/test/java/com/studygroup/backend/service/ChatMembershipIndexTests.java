@@ -0,0 +1,101 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.repository.GroupMemberRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatMembershipIndexTests {
+
+	@Mock
+	private GroupMemberRepository groupMemberRepository;
+
+	@InjectMocks
+	private ChatMembershipIndex membershipIndex;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(membershipIndex, "ttlMs", 300000L);
+		ReflectionTestUtils.setField(membershipIndex, "maxGroups", 2);
+	}
+
+	@Test
+	void membersAreCachedUntilInvalidated() {
+		when(groupMemberRepository.findActiveMemberEmailsByGroupId(1L))
+				.thenReturn(rows(7L, "a@example.com"), rows(8L, "b@example.com"));
+
+		assertThat(emails(1L)).containsExactly("a@example.com");
+		assertThat(emails(1L)).containsExactly("a@example.com");
+
+		membershipIndex.invalidate(1L);
+
+		assertThat(emails(1L)).containsExactly("b@example.com");
+		verify(groupMemberRepository, times(2)).findActiveMemberEmailsByGroupId(1L);
+	}
+
+	@Test
+	void expiredEntryIsReloaded() {
+		ReflectionTestUtils.setField(membershipIndex, "ttlMs", -1L);
+		when(groupMemberRepository.findActiveMemberEmailsByGroupId(1L)).thenReturn(rows(7L, "a@example.com"));
+
+		membershipIndex.getActiveMembers(1L);
+		membershipIndex.getActiveMembers(1L);
+
+		verify(groupMemberRepository, times(2)).findActiveMemberEmailsByGroupId(1L);
+	}
+
+	@Test
+	void leastRecentlyUsedGroupIsEvicted() {
+		when(groupMemberRepository.findActiveMemberEmailsByGroupId(anyLong())).thenReturn(rows(7L, "a@example.com"));
+		membershipIndex.getActiveMembers(1L);
+		membershipIndex.getActiveMembers(2L);
+		membershipIndex.getActiveMembers(1L);
+
+		membershipIndex.getActiveMembers(3L);
+		membershipIndex.getActiveMembers(1L);
+		membershipIndex.getActiveMembers(2L);
+
+		verify(groupMemberRepository, times(1)).findActiveMemberEmailsByGroupId(1L);
+		verify(groupMemberRepository, times(2)).findActiveMemberEmailsByGroupId(2L);
+	}
+
+	@Test
+	void loadRacingWithAnInvalidationIsNotCached() {
+		when(groupMemberRepository.findActiveMemberEmailsByGroupId(1L))
+				.thenAnswer(invocation -> {
+					// a membership change commits while the old member list is being read
+					membershipIndex.invalidate(1L);
+					return rows(7L, "a@example.com");
+				})
+				.thenReturn(rows(8L, "b@example.com"));
+
+		assertThat(emails(1L)).containsExactly("a@example.com");
+
+		assertThat(emails(1L)).containsExactly("b@example.com");
+	}
+
+	private List<String> emails(Long groupId) {
+		return membershipIndex.getActiveMembers(groupId).stream().map(ChatMembershipIndex.Member::getEmail).toList();
+	}
+
+	private static List<Object[]> rows(Long userId, String email) {
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[]{userId, email});
+		return rows;
+	}
+
+}
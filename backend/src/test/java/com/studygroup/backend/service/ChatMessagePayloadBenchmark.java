@@ -0,0 +1,167 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.studygroup.backend.BenchmarkRunner;
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Course;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.GroupPrivacy;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Group fan-outs per second one core can do when the broadcast carries the full ChatMessage
+// entity through the template's JSON converter ("entity", the old convertAndSend path) versus the
+// compact payload encoded once by ChatBroadcastService ("payload"). The entity graph is filled
+// the way a loaded message is: group with course and creator, sender with the education profile.
+// CPU per fan-out is 1 / ops/s; bytes / ops is what one broadcast costs on the subscribers'
+// sockets and bytes / frames the size of one STOMP frame.
+// Run with: mvn -Pbenchmark test -Dtest=ChatMessagePayloadBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ChatMessagePayloadBenchmark {
+
+	private static final long GROUP_ID = 1L;
+	private static final String DESTINATION = "/topic/group/" + GROUP_ID;
+
+	@Param({"entity", "payload"})
+	public String encoding;
+
+	@Param({"500"})
+	public int subscribers;
+
+	private InProcessBroker broker;
+	private ChatBroadcastService broadcastService;
+	private ChatMessage message;
+	private long nextId;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Outbound {
+		public long frames;
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = 0;
+			bytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		broker = new InProcessBroker();
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+		MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+		converter.setObjectMapper(objectMapper);
+		broker.template().setMessageConverter(converter);
+
+		ChatFrameCoalescer coalescer = new ChatFrameCoalescer();
+		ReflectionTestUtils.setField(coalescer, "enabled", false);
+
+		broadcastService = new ChatBroadcastService();
+		ReflectionTestUtils.setField(broadcastService, "messagingTemplate", broker.template());
+		ReflectionTestUtils.setField(broadcastService, "objectMapper", objectMapper);
+		ReflectionTestUtils.setField(broadcastService, "chatFrameCoalescer", coalescer);
+		ReflectionTestUtils.setField(broadcastService, "multiplexEnabled", false);
+		ReflectionTestUtils.setField(broadcastService, "topicBroadcast", true);
+
+		for (int i = 0; i < subscribers; i++) {
+			broker.subscribe("session-" + i, DESTINATION);
+		}
+
+		message = message();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		broker.stop();
+	}
+
+	@Benchmark
+	public void broadcast(Outbound outbound) {
+		message.setId(++nextId);
+		if ("entity".equals(encoding)) {
+			broker.template().convertAndSend(DESTINATION, message);
+		} else {
+			broadcastService.broadcast(GROUP_ID, message);
+		}
+		outbound.frames += broker.takeFrames();
+		outbound.bytes += broker.takeBytes();
+	}
+
+	private static ChatMessage message() {
+		User creator = user(7L, "Group Creator");
+		Course course = new Course();
+		course.setId(3L);
+		course.setCourseCode("CS201");
+		course.setCourseName("Data Structures and Algorithms");
+		course.setDescription("Lists, trees, graphs, hashing and the analysis of algorithms on them.");
+		course.setCredits(4);
+		course.setDepartment("Computer Science");
+
+		Group group = new Group();
+		group.setId(GROUP_ID);
+		group.setName("DSA Weekend Study Group");
+		group.setDescription("We meet every Saturday to go through the week's problem set together.");
+		group.setCourse(course);
+		group.setCreatedBy(creator);
+		group.setPrivacy(GroupPrivacy.PUBLIC);
+		group.setMaxMembers(500);
+		group.setCurrentMembers(500);
+
+		ChatMessage message = new ChatMessage();
+		message.setGroup(group);
+		message.setSender(user(42L, "Benchmark Sender"));
+		message.setType(MessageType.TEXT);
+		message.setContent("Has anyone started on the second problem set? I am stuck on question 4.");
+		message.setTimestamp(LocalDateTime.now());
+		return message;
+	}
+
+	private static User user(Long id, String name) {
+		User user = new User();
+		user.setId(id);
+		user.setName(name);
+		user.setEmail(name.toLowerCase().replace(' ', '.') + "@example.com");
+		user.setSecondarySchool("City Public School");
+		user.setSecondarySchoolPassingYear(2018);
+		user.setSecondarySchoolPercentage(91.4f);
+		user.setHigherSecondarySchool("City Public School");
+		user.setHigherSecondaryPassingYear(2020);
+		user.setHigherSecondaryPercentage(88.2f);
+		user.setUniversityName("State Institute of Technology");
+		user.setUniversityPassingYear(2024);
+		user.setUniversityPassingGPA(8.7f);
+		user.setAvatarUrl("https://res.cloudinary.com/demo/image/upload/avatar.png");
+		user.setBio("Third year CS student, mostly interested in algorithms and competitive programming.");
+		return user;
+	}
+
+	@Test
+	@Tag("benchmark")
+	void run() throws Exception {
+		BenchmarkRunner.run(ChatMessagePayloadBenchmark.class);
+	}
+
+}
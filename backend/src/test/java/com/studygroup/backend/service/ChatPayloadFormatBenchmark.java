@@ -0,0 +1,163 @@
+package com.studygroup.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.studygroup.backend.BenchmarkRunner;
+import com.studygroup.backend.config.BinaryPayloadInterceptor;
+import com.studygroup.backend.controller.ChatController;
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the payload formats a session can negotiate on CONNECT. "broadcast" is a group fan-out
+// through the broker with every subscriber on the same format and BinaryPayloadInterceptor on the
+// outbound channel, as in the application: bytes / frames is the STOMP frame one subscriber
+// receives, 1 / ops/s the server CPU per broadcast including the one conversion per format.
+// "decode" is what a client spends parsing one received payload in that format.
+// Run with: mvn -Pbenchmark test -Dtest=ChatPayloadFormatBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ChatPayloadFormatBenchmark {
+
+	private static final long GROUP_ID = 1L;
+
+	@Param({"json", "cbor", "smile"})
+	public String format;
+
+	@Param({"500"})
+	public int subscribers;
+
+	private InProcessBroker broker;
+	private ChatBroadcastService broadcastService;
+	private ChatMessage message;
+	private long nextId;
+
+	private ObjectMapper decoder;
+	private byte[] received;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Outbound {
+		public long frames;
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = 0;
+			bytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		ChatSessionRegistry sessionRegistry = new ChatSessionRegistry();
+
+		BinaryPayloadInterceptor interceptor = new BinaryPayloadInterceptor();
+		ReflectionTestUtils.setField(interceptor, "enabled", true);
+		ReflectionTestUtils.setField(interceptor, "chatSessionRegistry", sessionRegistry);
+		ReflectionTestUtils.setField(interceptor, "objectMapper", objectMapper);
+		ReflectionTestUtils.setField(interceptor, "meterRegistry", new SimpleMeterRegistry());
+		interceptor.init();
+
+		broker = new InProcessBroker();
+		broker.addOutboundInterceptor(interceptor);
+
+		ChatFrameCoalescer coalescer = new ChatFrameCoalescer();
+		ReflectionTestUtils.setField(coalescer, "enabled", false);
+
+		broadcastService = new ChatBroadcastService();
+		ReflectionTestUtils.setField(broadcastService, "messagingTemplate", broker.template());
+		ReflectionTestUtils.setField(broadcastService, "objectMapper", objectMapper);
+		ReflectionTestUtils.setField(broadcastService, "chatFrameCoalescer", coalescer);
+		ReflectionTestUtils.setField(broadcastService, "multiplexEnabled", false);
+		ReflectionTestUtils.setField(broadcastService, "topicBroadcast", true);
+
+		for (int i = 0; i < subscribers; i++) {
+			String sessionId = "session-" + i;
+			sessionRegistry.register(sessionId, sender());
+			sessionRegistry.getSession(sessionId).setPayloadFormat(format);
+			broker.subscribe(sessionId, "/topic/group/" + GROUP_ID);
+		}
+
+		message = message();
+
+		decoder = switch (format) {
+			case "cbor" -> new CBORMapper();
+			case "smile" -> new SmileMapper();
+			default -> objectMapper;
+		};
+		byte[] json = broadcastService.encode(ChatController.ChatMessagePayload.from(message));
+		received = decoder.writeValueAsBytes(objectMapper.readTree(json));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		broker.stop();
+	}
+
+	@Benchmark
+	public void broadcast(Outbound outbound) {
+		message.setId(++nextId);
+		broadcastService.broadcast(GROUP_ID, message);
+		outbound.frames += broker.takeFrames();
+		outbound.bytes += broker.takeBytes();
+	}
+
+	@Benchmark
+	public Object decode() throws IOException {
+		return decoder.readTree(received);
+	}
+
+	private static ChatMessage message() {
+		Group group = new Group();
+		group.setId(GROUP_ID);
+
+		ChatMessage message = new ChatMessage();
+		message.setGroup(group);
+		message.setSender(sender());
+		message.setType(MessageType.TEXT);
+		message.setContent("Has anyone started on the second problem set? I am stuck on question 4.");
+		message.setTimestamp(LocalDateTime.now());
+		return message;
+	}
+
+	private static User sender() {
+		User sender = new User();
+		sender.setId(42L);
+		sender.setName("Benchmark Sender");
+		sender.setEmail("benchmark.sender@example.com");
+		sender.setAvatarUrl("https://res.cloudinary.com/demo/image/upload/avatar.png");
+		return sender;
+	}
+
+	@Test
+	@Tag("benchmark")
+	void run() throws Exception {
+		BenchmarkRunner.run(ChatPayloadFormatBenchmark.class);
+	}
+
+}
@@ -0,0 +1,188 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ChatPresenceServiceTests {
+
+	@Mock
+	private ChatSessionRegistry chatSessionRegistry;
+
+	@Mock
+	private ChatBroadcastService chatBroadcastService;
+
+	@InjectMocks
+	private ChatPresenceService presenceService;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(presenceService, "typingTimeoutMs", 5000L);
+		session("s1", 7L);
+		session("s2", 8L);
+		lenient().when(chatBroadcastService.encode(any())).thenReturn(new byte[0]);
+	}
+
+	@Test
+	void subscribersAreReportedOnceAfterTheChange() {
+		presenceService.onSubscribe(subscribe("s1", "sub-1", "/topic/group/1"));
+		presenceService.onSubscribe(subscribe("s2", "sub-2", "/topic/group/1/batch"));
+
+		presenceService.flush();
+
+		assertThat(lastSnapshot().get("online")).isEqualTo(Set.of(7L, 8L));
+		verify(chatBroadcastService).send(eq("/topic/group/1/presence"), any());
+
+		clearInvocations(chatBroadcastService);
+		presenceService.flush();
+
+		verify(chatBroadcastService, never()).send(anyString(), any());
+	}
+
+	@Test
+	void otherDestinationsAreIgnored() {
+		presenceService.onSubscribe(subscribe("s1", "sub-1", "/topic/group/1/presence"));
+		presenceService.onSubscribe(subscribe("s1", "sub-2", "/user/queue/chat"));
+
+		presenceService.flush();
+
+		verify(chatBroadcastService, never()).send(anyString(), any());
+	}
+
+	@Test
+	void unsubscribeAndDisconnectLeaveTheGroup() {
+		presenceService.onSubscribe(subscribe("s1", "sub-1", "/topic/group/1"));
+		presenceService.onSubscribe(subscribe("s2", "sub-2", "/topic/group/1"));
+		presenceService.flush();
+
+		presenceService.onUnsubscribe(unsubscribe("s1", "sub-1"));
+		presenceService.flush();
+		assertThat(lastSnapshot().get("online")).isEqualTo(Set.of(8L));
+
+		presenceService.onDisconnect(new SessionDisconnectEvent(this, unsubscribe("s2", "sub-2").getMessage(),
+				"s2", CloseStatus.NORMAL));
+		presenceService.flush();
+		assertThat(lastSnapshot().get("online")).isEqualTo(Set.of());
+	}
+
+	@Test
+	void typingExpiresWhenTheClientNeverStops() {
+		presenceService.onSubscribe(subscribe("s1", "sub-1", "/topic/group/1"));
+		presenceService.setTyping(1L, user(7L), true);
+		presenceService.flush();
+		assertThat((List<?>) lastSnapshot().get("typing")).hasSize(1);
+
+		ReflectionTestUtils.setField(presenceService, "typingTimeoutMs", -1L);
+		presenceService.setTyping(1L, user(7L), false);
+		presenceService.setTyping(1L, user(7L), true);
+		presenceService.flush();
+
+		assertThat((List<?>) lastSnapshot().get("typing")).isEmpty();
+	}
+
+	@Test
+	void subscribeRacingWithTheEmptyGroupRemovalIsKept() throws Exception {
+		for (int i = 0; i < 500; i++) {
+			String subscriptionId = "sub-" + i;
+			// s1 leaves, so the next flush removes the group as empty while s2 joins
+			presenceService.onSubscribe(subscribe("s1", subscriptionId, "/topic/group/1"));
+			presenceService.onUnsubscribe(unsubscribe("s1", subscriptionId));
+
+			CyclicBarrier start = new CyclicBarrier(2);
+			Thread flusher = new Thread(() -> {
+				await(start);
+				presenceService.flush();
+			});
+			flusher.start();
+			await(start);
+			presenceService.onSubscribe(subscribe("s2", subscriptionId, "/topic/group/1"));
+			flusher.join(5000);
+
+			presenceService.flush();
+			Map<?, ?> groups = (Map<?, ?>) ReflectionTestUtils.getField(presenceService, "groups");
+			assertThat(groups).containsKey(1L);
+
+			presenceService.onUnsubscribe(unsubscribe("s2", subscriptionId));
+			presenceService.flush();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> lastSnapshot() {
+		ArgumentCaptor<Object> snapshots = ArgumentCaptor.forClass(Object.class);
+		verify(chatBroadcastService, atLeastOnce()).encode(snapshots.capture());
+		List<Object> all = snapshots.getAllValues();
+		return (Map<String, Object>) all.get(all.size() - 1);
+	}
+
+	private void session(String sessionId, Long userId) {
+		lenient().when(chatSessionRegistry.getSession(sessionId))
+				.thenReturn(new ChatSessionRegistry.SessionInfo(sessionId, user(userId)));
+	}
+
+	private static User user(Long id) {
+		User user = new User();
+		user.setId(id);
+		user.setName("User " + id);
+		return user;
+	}
+
+	private static SessionSubscribeEvent subscribe(String sessionId, String subscriptionId, String destination) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		return new SessionSubscribeEvent(ChatPresenceServiceTests.class, message(accessor));
+	}
+
+	private static SessionUnsubscribeEvent unsubscribe(String sessionId, String subscriptionId) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		return new SessionUnsubscribeEvent(ChatPresenceServiceTests.class, message(accessor));
+	}
+
+	private static Message<byte[]> message(StompHeaderAccessor accessor) {
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await(5, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.MessageType;
+import com.studygroup.backend.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+@ExtendWith(MockitoExtension.class)
+class ChatSearchServiceTests {
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private ChatArchiveService chatArchiveService;
+
+	@TempDir
+	private Path tempDir;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private ChatSearchService searchService;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		meterRegistry = new SimpleMeterRegistry();
+		searchService = new ChatSearchService();
+		ReflectionTestUtils.setField(searchService, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(searchService, "chatArchiveService", chatArchiveService);
+		ReflectionTestUtils.setField(searchService, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(searchService, "enabled", true);
+		ReflectionTestUtils.setField(searchService, "indexDir", tempDir.resolve("index").toString());
+		ReflectionTestUtils.setField(searchService, "indexingQueueCapacity", 1);
+		ReflectionTestUtils.setField(searchService, "rebuildThreads", 1);
+		ReflectionTestUtils.setField(searchService, "autoRebuild", true);
+		searchService.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		searchService.shutdown();
+	}
+
+	@Test
+	void indexedMessageIsFoundWithHighlight() throws Exception {
+		searchService.index(message(1L, "exam tomorrow at noon"));
+		searchService.index(message(2L, "lunch plans"));
+		awaitIndexed();
+
+		Map<String, Object> response = searchService.search(1L, "exam", 0, 20);
+
+		assertThat(response.get("totalHits")).isEqualTo(1L);
+		assertThat(results(response)).singleElement().satisfies(result -> {
+			assertThat(result.get("messageId")).isEqualTo(1L);
+			assertThat(result.get("highlight")).isEqualTo("<mark>exam</mark> tomorrow at noon");
+		});
+	}
+
+	@Test
+	void deepPageDoesNotOverflow() throws Exception {
+		searchService.index(message(1L, "exam"));
+		awaitIndexed();
+
+		Map<String, Object> response = searchService.search(1L, "exam", Integer.MAX_VALUE / 2, 100);
+
+		assertThat(results(response)).isEmpty();
+	}
+
+	@Test
+	void droppedUpdatesAreCountedAndFlagARebuild() throws Exception {
+		CountDownLatch release = blockIndexer();
+		try {
+			// one fits the queue, the others are dropped
+			searchService.index(message(1L, "one"));
+			searchService.index(message(2L, "two"));
+			searchService.index(message(3L, "three"));
+		} finally {
+			release.countDown();
+		}
+
+		assertThat(meterRegistry.counter("chat.search.index.dropped").count()).isEqualTo(2);
+		assertThat(searchService.isRebuildNeeded()).isTrue();
+		assertThat(tempDir.resolve("index.rebuild-needed")).exists();
+	}
+
+	@Test
+	void rebuildRestoresDroppedMessagesAndClearsTheFlag() throws Exception {
+		CountDownLatch release = blockIndexer();
+		searchService.index(message(1L, "queued"));
+		searchService.index(message(2L, "dropped"));
+		release.countDown();
+		awaitIndexed();
+		assertThat(searchService.search(1L, "dropped", 0, 20).get("totalHits")).isEqualTo(0L);
+
+		when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1L, 2L);
+		when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(), any())).thenAnswer(invocation -> {
+			RowMapper<?> mapper = invocation.getArgument(1);
+			return List.of(mapper.mapRow(row(1L, "queued"), 0), mapper.mapRow(row(2L, "dropped"), 1));
+		});
+
+		searchService.rebuildIndex();
+
+		assertThat(searchService.search(1L, "dropped", 0, 20).get("totalHits")).isEqualTo(1L);
+		assertThat(searchService.isRebuildNeeded()).isFalse();
+		assertThat(Files.exists(tempDir.resolve("index.rebuild-needed"))).isFalse();
+	}
+
+	@Test
+	void markerLeftByAnEarlierRunIsPickedUp() throws Exception {
+		searchService.shutdown();
+		Files.createFile(tempDir.resolve("index.rebuild-needed"));
+
+		searchService.init();
+
+		assertThat(searchService.isRebuildNeeded()).isTrue();
+	}
+
+	private CountDownLatch blockIndexer() throws InterruptedException {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		indexer().execute(() -> {
+			running.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+		return release;
+	}
+
+	private void awaitIndexed() throws Exception {
+		// the queue holds one task, wait for room so the marker task is not dropped itself
+		while (!indexer().getQueue().isEmpty()) {
+			Thread.sleep(1);
+		}
+		indexer().submit(() -> { }).get(5, TimeUnit.SECONDS);
+		searchService.refreshSearcher();
+	}
+
+	private ThreadPoolExecutor indexer() {
+		return (ThreadPoolExecutor) ReflectionTestUtils.getField(searchService, "indexer");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> results(Map<String, Object> response) {
+		return (List<Map<String, Object>>) response.get("results");
+	}
+
+	private static ChatMessage message(Long id, String content) {
+		Group group = new Group();
+		group.setId(1L);
+		User sender = new User();
+		sender.setId(7L);
+		sender.setName("Sender");
+		ChatMessage message = new ChatMessage(group, sender, content, MessageType.TEXT);
+		message.setId(id);
+		return message;
+	}
+
+	private static ResultSet row(Long id, String content) throws Exception {
+		ResultSet rs = mock(ResultSet.class, withSettings().strictness(Strictness.LENIENT));
+		when(rs.getLong("id")).thenReturn(id);
+		when(rs.getLong("group_id")).thenReturn(1L);
+		when(rs.getLong("sender_id")).thenReturn(7L);
+		when(rs.getString("name")).thenReturn("Sender");
+		when(rs.getString("content")).thenReturn(content);
+		when(rs.getString("type")).thenReturn("TEXT");
+		return rs;
+	}
+
+}
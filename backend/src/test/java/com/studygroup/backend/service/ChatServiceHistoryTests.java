@@ -0,0 +1,277 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.ChatMessage;
+import com.studygroup.backend.entity.Group;
+import com.studygroup.backend.entity.User;
+import com.studygroup.backend.repository.ChatMessageRepository;
+import com.studygroup.backend.repository.GroupRepository;
+import com.studygroup.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatServiceHistoryTests {
+
+	private static final Long GROUP_ID = 1L;
+
+	@Mock
+	private ChatMessageRepository chatMessageRepository;
+
+	@Mock
+	private GroupRepository groupRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private ChatHistoryCache chatHistoryCache;
+
+	@Mock
+	private ChatCommitLog chatCommitLog;
+
+	@Mock
+	private ChatArchiveService chatArchiveService;
+
+	@InjectMocks
+	private ChatService chatService;
+
+	@BeforeEach
+	void setUp() {
+		// null is "cannot answer", the mocks would otherwise return an empty page
+		lenient().when(chatHistoryCache.read(any(), any(), anyInt())).thenReturn(null);
+		lenient().when(chatCommitLog.read(any(), any(), anyInt())).thenReturn(null);
+	}
+
+	@Test
+	void nextCursorContinuesWithOlderMessages() {
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdAndIdLessThanOrderByIdDesc(GROUP_ID, 100L, PageRequest.of(0, 3)))
+				.thenReturn(messages(99, 98, 97));
+		when(chatMessageRepository.findByGroupIdAndIdLessThanOrderByIdDesc(GROUP_ID, 98L, PageRequest.of(0, 3)))
+				.thenReturn(messages(97));
+
+		ChatService.MessagePage page = chatService.getGroupMessagesPage(GROUP_ID, 100L, null, 2);
+
+		assertThat(ids(page)).containsExactly(99L, 98L);
+		assertThat(page.isHasMore()).isTrue();
+		assertThat(page.getNextCursor()).isEqualTo(cursor("b:98"));
+		assertThat(page.getPrevCursor()).isEqualTo(cursor("a:99"));
+
+		ChatService.MessagePage next = chatService.getGroupMessagesPage(GROUP_ID, page.getNextCursor(), 2);
+
+		assertThat(ids(next)).containsExactly(97L);
+		assertThat(next.isHasMore()).isFalse();
+		// the start of history is reached
+		assertThat(next.getNextCursor()).isNull();
+	}
+
+	@Test
+	void prevCursorReturnsNewerMessagesNewestFirst() {
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdAndIdGreaterThanOrderByIdAsc(GROUP_ID, 10L, PageRequest.of(0, 3)))
+				.thenReturn(messages(11, 12));
+		when(chatMessageRepository.findByGroupIdAndIdGreaterThanOrderByIdAsc(GROUP_ID, 12L, PageRequest.of(0, 3)))
+				.thenReturn(new ArrayList<>());
+
+		ChatService.MessagePage page = chatService.getGroupMessagesPage(GROUP_ID, cursor("a:10"), 2);
+
+		assertThat(ids(page)).containsExactly(12L, 11L);
+		assertThat(page.isHasMore()).isFalse();
+		assertThat(page.getNextCursor()).isEqualTo(cursor("b:11"));
+		assertThat(page.getPrevCursor()).isEqualTo(cursor("a:12"));
+
+		// nothing newer yet, polling keeps the same cursor
+		ChatService.MessagePage empty = chatService.getGroupMessagesPage(GROUP_ID, page.getPrevCursor(), 2);
+		assertThat(empty.getMessages()).isEmpty();
+		assertThat(empty.getPrevCursor()).isEqualTo(page.getPrevCursor());
+	}
+
+	@Test
+	void malformedCursorsAreRejected() {
+		for (String cursor : List.of("%%%", cursor("b98"), cursor("x:98"), cursor("b:ninety"))) {
+			assertThatThrownBy(() -> chatService.getGroupMessagesPage(GROUP_ID, cursor, 20))
+					.isInstanceOf(RuntimeException.class)
+					.hasMessage("Invalid cursor");
+		}
+	}
+
+	@Test
+	void latestPageIsServedFromTheCache() {
+		when(chatHistoryCache.read(GROUP_ID, null, 3)).thenReturn(messages(5, 4, 3));
+
+		ChatService.MessagePage page = chatService.getGroupMessagesPage(GROUP_ID, null, null, 2);
+
+		assertThat(ids(page)).containsExactly(5L, 4L);
+		assertThat(page.isHasMore()).isTrue();
+		assertThat(page.getNextCursor()).isEqualTo(cursor("b:4"));
+		verifyNoInteractions(chatMessageRepository);
+	}
+
+	@Test
+	void pageReachingPastTheTableContinuesIntoTheArchive() {
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdAndIdLessThanOrderByIdDesc(GROUP_ID, 50L, PageRequest.of(0, 4)))
+				.thenReturn(messages(49, 48));
+		when(chatArchiveService.boundary(GROUP_ID)).thenReturn(47L);
+		when(chatArchiveService.read(GROUP_ID, 48L, 2)).thenReturn(messages(47, 46));
+		stubHydration();
+
+		ChatService.MessagePage page = chatService.getGroupMessagesPage(GROUP_ID, 50L, null, 3);
+
+		assertThat(ids(page)).containsExactly(49L, 48L, 47L);
+		assertThat(page.isHasMore()).isTrue();
+		assertThat(page.getNextCursor()).isEqualTo(cursor("b:47"));
+	}
+
+	@Test
+	void latestPageIncludesMessagesOnlyInTheCommitLog() {
+		when(chatCommitLog.isEnabled()).thenReturn(true);
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdOrderByIdDesc(GROUP_ID, PageRequest.of(0, 3)))
+				.thenReturn(messages(8, 7, 6));
+		// written to the log, not projected into the table yet
+		when(chatCommitLog.readAfter(GROUP_ID, 8L)).thenReturn(messages(10, 9));
+		stubHydration();
+
+		ChatService.MessagePage page = chatService.getGroupMessagesPage(GROUP_ID, null, null, 2);
+
+		assertThat(ids(page)).containsExactly(10L, 9L);
+		assertThat(page.isHasMore()).isTrue();
+		assertThat(page.getPrevCursor()).isEqualTo(cursor("a:10"));
+	}
+
+	@Test
+	void gapFillReadsTheTableWhenNothingNewerIsArchived() {
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdAndSeqGreaterThanOrderBySeqAsc(GROUP_ID, 10L, PageRequest.of(0, 3)))
+				.thenReturn(sequenced(11, 12));
+
+		ChatService.GapFill fill = chatService.getMessagesSince(GROUP_ID, 10L, 2);
+
+		assertThat(seqs(fill)).containsExactly(11L, 12L);
+		assertThat(fill.getLastSeq()).isEqualTo(12L);
+		assertThat(fill.isHasMore()).isFalse();
+	}
+
+	@Test
+	void gapFillBehindTheArchiveContinuesIntoTheTable() {
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatArchiveService.maxSeq(GROUP_ID)).thenReturn(32L);
+		when(chatArchiveService.readSince(GROUP_ID, 30L, 4)).thenReturn(sequenced(31, 32));
+		when(chatMessageRepository.findByGroupIdAndSeqGreaterThanOrderBySeqAsc(GROUP_ID, 32L, PageRequest.of(0, 2)))
+				.thenReturn(sequenced(33, 34));
+		stubHydration();
+
+		ChatService.GapFill fill = chatService.getMessagesSince(GROUP_ID, 30L, 3);
+
+		assertThat(seqs(fill)).containsExactly(31L, 32L, 33L);
+		assertThat(fill.getLastSeq()).isEqualTo(33L);
+		assertThat(fill.isHasMore()).isTrue();
+	}
+
+	@Test
+	void fullPageFromTheArchiveSkipsTheTable() {
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatArchiveService.maxSeq(GROUP_ID)).thenReturn(100L);
+		when(chatArchiveService.readSince(GROUP_ID, 0L, 3)).thenReturn(sequenced(1, 2, 3));
+		stubHydration();
+
+		ChatService.GapFill fill = chatService.getMessagesSince(GROUP_ID, 0L, 2);
+
+		assertThat(seqs(fill)).containsExactly(1L, 2L);
+		assertThat(fill.isHasMore()).isTrue();
+		verifyNoInteractions(chatMessageRepository);
+	}
+
+	@Test
+	void gapFillStopsAtARecentHole() {
+		ReflectionTestUtils.setField(chatService, "gapGraceMs", 60000L);
+		when(groupRepository.existsById(GROUP_ID)).thenReturn(true);
+		when(chatMessageRepository.findByGroupIdAndSeqGreaterThanOrderBySeqAsc(GROUP_ID, 10L, PageRequest.of(0, 3)))
+				.thenReturn(sequenced(11, 13));
+
+		ChatService.GapFill fill = chatService.getMessagesSince(GROUP_ID, 10L, 2);
+
+		// seq 12 may still be committing
+		assertThat(seqs(fill)).containsExactly(11L);
+		assertThat(fill.getLastSeq()).isEqualTo(11L);
+		assertThat(fill.isHasMore()).isFalse();
+	}
+
+	private void stubHydration() {
+		Group group = new Group();
+		group.setId(GROUP_ID);
+		when(groupRepository.findById(GROUP_ID)).thenReturn(Optional.of(group));
+		when(userRepository.findAllById(any())).thenReturn(List.of(sender()));
+	}
+
+	static ChatMessage message(long id) {
+		Group group = new Group();
+		group.setId(GROUP_ID);
+		ChatMessage message = new ChatMessage();
+		message.setId(id);
+		message.setGroup(group);
+		message.setSender(sender());
+		return message;
+	}
+
+	static List<ChatMessage> messages(long... ids) {
+		List<ChatMessage> messages = new ArrayList<>();
+		for (long id : ids) {
+			messages.add(message(id));
+		}
+		return messages;
+	}
+
+	private static User sender() {
+		User sender = new User();
+		sender.setId(7L);
+		sender.setName("Sender");
+		return sender;
+	}
+
+	private static List<ChatMessage> sequenced(long... seqs) {
+		List<ChatMessage> messages = new ArrayList<>();
+		for (long seq : seqs) {
+			ChatMessage message = message(seq + 1000);
+			message.setSeq(seq);
+			message.setTimestamp(LocalDateTime.now());
+			messages.add(message);
+		}
+		return messages;
+	}
+
+	private static List<Long> seqs(ChatService.GapFill fill) {
+		return fill.getMessages().stream().map(ChatMessage::getSeq).toList();
+	}
+
+	private static List<Long> ids(ChatService.MessagePage page) {
+		return page.getMessages().stream().map(ChatMessage::getId).toList();
+	}
+
+	private static String cursor(String raw) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatSessionRegistryTests {
+
+	@Mock
+	private SimpUserRegistry simpUserRegistry;
+
+	@Mock
+	private MessageChannel brokerChannel;
+
+	@Mock
+	private ApplicationEventPublisher eventPublisher;
+
+	@InjectMocks
+	private ChatSessionRegistry registry;
+
+	@Captor
+	private ArgumentCaptor<Message<?>> sent;
+
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		user = new User();
+		user.setId(7L);
+		user.setEmail("member@example.com");
+		registry.register("s1", user);
+	}
+
+	@Test
+	void grantIsCachedWhenNothingWasRevoked() {
+		ChatSessionRegistry.SessionInfo session = registry.getSession("s1");
+		long revocations = session.getRevocations();
+
+		assertThat(session.grant(1L, revocations)).isTrue();
+		assertThat(session.getGroups()).containsExactly(1L);
+	}
+
+	@Test
+	void revocationDuringTheMembershipCheckWins() {
+		ChatSessionRegistry.SessionInfo session = registry.getSession("s1");
+		long revocations = session.getRevocations();
+
+		// the member is removed after the check read the still active membership
+		registry.revoke(7L, 1L);
+
+		assertThat(session.grant(1L, revocations)).isFalse();
+		assertThat(session.getGroups()).isEmpty();
+	}
+
+	@Test
+	void revokeDropsGroupSubscriptionsAndPublishesTheUnsubscribe() {
+		ChatSessionRegistry.SessionInfo session = registry.getSession("s1");
+		session.grant(1L, session.getRevocations());
+		session.grant(2L, session.getRevocations());
+		stubSubscriptions(subscription("sub-1", "/topic/group/1"),
+				subscription("sub-2", "/topic/group/1/presence"),
+				subscription("sub-3", "/topic/group/2"));
+
+		registry.revoke(7L, 1L);
+
+		assertThat(session.getGroups()).containsExactly(2L);
+
+		verify(brokerChannel, times(2)).send(sent.capture());
+		assertThat(sent.getAllValues()).extracting(message -> StompHeaderAccessor.wrap(message))
+				.allSatisfy(accessor -> {
+					assertThat(accessor.getCommand()).isEqualTo(StompCommand.UNSUBSCRIBE);
+					assertThat(accessor.getSessionId()).isEqualTo("s1");
+				})
+				.extracting(StompHeaderAccessor::getSubscriptionId)
+				.containsExactly("sub-1", "sub-2");
+
+		// presence and the /batch subscriber counts listen to these
+		ArgumentCaptor<SessionUnsubscribeEvent> events = ArgumentCaptor.forClass(SessionUnsubscribeEvent.class);
+		verify(eventPublisher, times(2)).publishEvent(events.capture());
+		assertThat(events.getAllValues())
+				.extracting(event -> StompHeaderAccessor.wrap(event.getMessage()).getSubscriptionId())
+				.containsExactly("sub-1", "sub-2");
+	}
+
+	@Test
+	void revokeGroupReachesEverySession() {
+		User other = new User();
+		other.setId(8L);
+		other.setEmail("other@example.com");
+		registry.register("s2", other);
+		for (String sessionId : Set.of("s1", "s2")) {
+			ChatSessionRegistry.SessionInfo session = registry.getSession(sessionId);
+			session.grant(1L, session.getRevocations());
+		}
+
+		registry.revokeGroup(1L);
+
+		assertThat(registry.getSession("s1").getGroups()).isEmpty();
+		assertThat(registry.getSession("s2").getGroups()).isEmpty();
+	}
+
+	@Test
+	void removeForgetsTheSession() {
+		registry.remove("s1");
+
+		assertThat(registry.getSession("s1")).isNull();
+		assertThat(registry.getUserSessionIds(7L)).isEmpty();
+	}
+
+	private void stubSubscriptions(SimpSubscription... subscriptions) {
+		SimpUser simpUser = mock(SimpUser.class);
+		SimpSession simpSession = mock(SimpSession.class);
+		when(simpUserRegistry.getUser("member@example.com")).thenReturn(simpUser);
+		when(simpUser.getSession("s1")).thenReturn(simpSession);
+		lenient().when(simpUser.getPrincipal()).thenReturn(mock(Principal.class));
+		when(simpSession.getSubscriptions()).thenReturn(new LinkedHashSet<>(List.of(subscriptions)));
+		lenient().when(brokerChannel.send(any())).thenReturn(true);
+	}
+
+	private static SimpSubscription subscription(String id, String destination) {
+		SimpSubscription subscription = mock(SimpSubscription.class);
+		lenient().when(subscription.getId()).thenReturn(id);
+		when(subscription.getDestination()).thenReturn(destination);
+		return subscription;
+	}
+
+}
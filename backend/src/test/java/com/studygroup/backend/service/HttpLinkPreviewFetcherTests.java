@@ -0,0 +1,245 @@
+package com.studygroup.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpLinkPreviewFetcherTests {
+
+	private HttpLinkPreviewFetcher fetcher;
+
+	private StubServer server;
+
+	@BeforeEach
+	void setUp() {
+		fetcher = new HttpLinkPreviewFetcher();
+		ReflectionTestUtils.setField(fetcher, "connectTimeoutMs", 1000);
+		ReflectionTestUtils.setField(fetcher, "readTimeoutMs", 1000);
+		ReflectionTestUtils.setField(fetcher, "deadlineMs", 5000L);
+		ReflectionTestUtils.setField(fetcher, "maxBytes", 262144);
+		// the stub server listens on loopback
+		ReflectionTestUtils.setField(fetcher, "allowPrivateHosts", true);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	void openGraphTagsArePreferred() throws Exception {
+		server = new StubServer((request, out) -> html(out, "<html><head><title>Fallback</title>"
+				+ "<meta property=\"og:title\" content=\"Exam &amp; notes\">"
+				+ "<meta name='description' content='Chapter 4'>"
+				+ "<meta property=\"og:image\" content=\"/cover.png\"></head></html>"));
+
+		LinkPreviewFetcher.LinkPreview preview = fetcher.fetch(server.url("/notes"));
+
+		assertThat(preview.getTitle()).isEqualTo("Exam & notes");
+		assertThat(preview.getDescription()).isEqualTo("Chapter 4");
+		assertThat(preview.getImageUrl()).isEqualTo(server.url("/cover.png"));
+	}
+
+	@Test
+	void redirectsAreFollowed() throws Exception {
+		server = new StubServer((request, out) -> {
+			if (request.startsWith("GET /old ")) {
+				redirect(out, "/new");
+			} else {
+				html(out, "<title>Moved here</title>");
+			}
+		});
+
+		LinkPreviewFetcher.LinkPreview preview = fetcher.fetch(server.url("/old"));
+
+		assertThat(preview.getTitle()).isEqualTo("Moved here");
+		assertThat(preview.getUrl()).isEqualTo(server.url("/new"));
+		assertThat(server.requests).containsExactly("GET /old HTTP/1.1", "GET /new HTTP/1.1");
+	}
+
+	@Test
+	void redirectLoopGivesUp() throws Exception {
+		server = new StubServer((request, out) -> redirect(out, "/again"));
+
+		assertThat(fetcher.fetch(server.url("/start"))).isNull();
+		// the first request plus three redirects
+		assertThat(server.requests).hasSize(4);
+	}
+
+	@Test
+	void redirectToAnotherSchemeIsRefused() throws Exception {
+		server = new StubServer((request, out) -> redirect(out, "file:///etc/passwd"));
+
+		assertThatThrownBy(() -> fetcher.fetch(server.url("/")))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Unsupported link");
+	}
+
+	@Test
+	void internalAddressIsRefusedBeforeConnecting() throws Exception {
+		ReflectionTestUtils.setField(fetcher, "allowPrivateHosts", false);
+		server = new StubServer((request, out) -> html(out, "<title>Internal</title>"));
+
+		assertThatThrownBy(() -> fetcher.fetch(server.url("/admin")))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Refusing");
+		assertThat(server.requests).isEmpty();
+	}
+
+	@Test
+	void internalRangesAreRecognized() throws Exception {
+		for (String internal : List.of("10.1.2.3", "172.16.0.1", "192.168.1.1", "169.254.169.254", "100.64.0.1",
+				"127.0.0.1", "0.0.0.0", "224.0.0.1", "::1", "fd00::1", "fe80::1", "::ffff:10.0.0.1",
+				"64:ff9b::a00:1", "2002:a00:1::")) {
+			assertThat(HttpLinkPreviewFetcher.isInternal(InetAddress.getByName(internal))).as(internal).isTrue();
+		}
+		for (String external : List.of("93.184.216.34", "8.8.8.8", "2606:4700::1111", "64:ff9b::808:808")) {
+			assertThat(HttpLinkPreviewFetcher.isInternal(InetAddress.getByName(external))).as(external).isFalse();
+		}
+	}
+
+	@Test
+	void onlyTheFirstMaxBytesAreRead() throws Exception {
+		ReflectionTestUtils.setField(fetcher, "maxBytes", 64);
+		server = new StubServer((request, out) -> html(out, "<title>Early</title>" + " ".repeat(100_000)
+				+ "<meta property=\"og:description\" content=\"Too late\">"));
+
+		LinkPreviewFetcher.LinkPreview preview = fetcher.fetch(server.url("/"));
+
+		assertThat(preview.getTitle()).isEqualTo("Early");
+		assertThat(preview.getDescription()).isNull();
+	}
+
+	@Test
+	void chunkedBodyIsDecoded() throws Exception {
+		server = new StubServer((request, out) -> {
+			out.write(("HTTP/1.1 200 OK\r\n"
+					+ "Content-Type: text/html; charset=utf-8\r\n"
+					+ "Transfer-Encoding: chunked\r\n\r\n"
+					+ "a;ext=1\r\n<title>Stu\r\n"
+					+ "10\r\ndy group</title>\r\n"
+					+ "0\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		});
+
+		LinkPreviewFetcher.LinkPreview preview = fetcher.fetch(server.url("/"));
+
+		assertThat(preview.getTitle()).isEqualTo("Study group");
+	}
+
+	@Test
+	void nonHtmlResponseHasNoPreview() throws Exception {
+		server = new StubServer((request, out) -> out.write(("HTTP/1.1 200 OK\r\n"
+				+ "Content-Type: application/pdf\r\n\r\n%PDF").getBytes(StandardCharsets.US_ASCII)));
+
+		assertThat(fetcher.fetch(server.url("/file.pdf"))).isNull();
+	}
+
+	@Test
+	void silentServerHitsTheReadTimeout() throws Exception {
+		ReflectionTestUtils.setField(fetcher, "readTimeoutMs", 200);
+		CountDownLatch release = new CountDownLatch(1);
+		server = new StubServer((request, out) -> release.await(5, TimeUnit.SECONDS));
+
+		try {
+			assertThatThrownBy(() -> fetcher.fetch(server.url("/"))).isInstanceOf(SocketTimeoutException.class);
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	void tricklingServerHitsTheDeadline() throws Exception {
+		ReflectionTestUtils.setField(fetcher, "deadlineMs", 300L);
+		server = new StubServer((request, out) -> {
+			out.write("HTTP/1.1 200 OK\r\nContent-Type: text/html\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			// every byte arrives well within the read timeout
+			for (int i = 0; i < 100; i++) {
+				out.write(' ');
+				out.flush();
+				Thread.sleep(50);
+			}
+		});
+
+		long start = System.currentTimeMillis();
+		assertThatThrownBy(() -> fetcher.fetch(server.url("/"))).isInstanceOf(SocketTimeoutException.class);
+		assertThat(System.currentTimeMillis() - start).isLessThan(2000);
+	}
+
+	private static void html(OutputStream out, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		out.write(("HTTP/1.1 200 OK\r\n"
+				+ "Content-Type: text/html; charset=utf-8\r\n"
+				+ "Content-Length: " + bytes.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.write(bytes);
+	}
+
+	private static void redirect(OutputStream out, String location) throws IOException {
+		out.write(("HTTP/1.1 302 Found\r\nLocation: " + location + "\r\nContent-Length: 0\r\n\r\n")
+				.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private interface Responder {
+		void respond(String requestLine, OutputStream out) throws Exception;
+	}
+
+	// answers one connection at a time on loopback and records the request lines
+	private static class StubServer implements AutoCloseable {
+		private final ServerSocket serverSocket;
+		private final List<String> requests = new CopyOnWriteArrayList<>();
+
+		StubServer(Responder responder) throws IOException {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread acceptor = new Thread(() -> {
+				while (!serverSocket.isClosed()) {
+					try (Socket socket = serverSocket.accept()) {
+						BufferedReader in = new BufferedReader(
+								new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+						String requestLine = in.readLine();
+						String header;
+						while ((header = in.readLine()) != null && !header.isEmpty()) {
+							// request headers are not needed
+						}
+						requests.add(requestLine);
+						OutputStream out = socket.getOutputStream();
+						responder.respond(requestLine, out);
+						out.flush();
+					} catch (Exception e) {
+						// the client went away or the server was closed
+					}
+				}
+			}, "link-preview-stub");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		String url(String path) {
+			return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+
+}
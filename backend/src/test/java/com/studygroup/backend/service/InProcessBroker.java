@@ -0,0 +1,102 @@
+package com.studygroup.backend.service;
+
+import com.studygroup.backend.config.GroupTopicSubscriptionRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+
+// The simple broker with the exact-match registry, wired to synchronous channels so a broadcast
+// runs entirely on the calling thread. Subscriber sessions are simulated: every frame the broker
+// hands them is STOMP encoded, as StompSubProtocolHandler would before the socket write, and then
+// only counted. Used by the broadcast benchmarks to measure frames, bytes and CPU per message.
+class InProcessBroker {
+
+	private final SimpleBrokerMessageHandler broker;
+	private final ExecutorSubscribableChannel clientOutboundChannel;
+	private final SimpMessagingTemplate template;
+	private final StompEncoder encoder = new StompEncoder();
+
+	private long frames;
+	private long bytes;
+
+	InProcessBroker() {
+		ExecutorSubscribableChannel clientInboundChannel = new ExecutorSubscribableChannel();
+		clientOutboundChannel = new ExecutorSubscribableChannel();
+		ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+		clientOutboundChannel.subscribe(this::encode);
+
+		broker = new SimpleBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel, List.of("/topic", "/queue"));
+		broker.setSubscriptionRegistry(new GroupTopicSubscriptionRegistry());
+		broker.start();
+
+		template = new SimpMessagingTemplate(brokerChannel);
+	}
+
+	SimpMessagingTemplate template() {
+		return template;
+	}
+
+	// runs before the simulated socket write, like the interceptors of the real outbound channel
+	void addOutboundInterceptor(ChannelInterceptor interceptor) {
+		clientOutboundChannel.addInterceptor(interceptor);
+	}
+
+	// CONNECT plus SUBSCRIBE, the broker only delivers to sessions it has seen connect
+	Message<byte[]> subscribe(String sessionId, String destination) {
+		SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+		connect.setSessionId(sessionId);
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+		SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		subscribe.setSessionId(sessionId);
+		subscribe.setSubscriptionId("sub-0");
+		subscribe.setDestination(destination);
+		Message<byte[]> message = MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders());
+		broker.handleMessage(message);
+
+		resetCounters();
+		return message;
+	}
+
+	private void encode(Message<?> message) {
+		if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+			return;
+		}
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+		accessor.updateStompCommandAsServerMessage();
+		byte[] frame = encoder.encode(MessageBuilder.createMessage((byte[]) message.getPayload(), accessor.getMessageHeaders()));
+		frames++;
+		bytes += frame.length;
+	}
+
+	long takeFrames() {
+		long taken = frames;
+		frames = 0;
+		return taken;
+	}
+
+	long takeBytes() {
+		long taken = bytes;
+		bytes = 0;
+		return taken;
+	}
+
+	void resetCounters() {
+		frames = 0;
+		bytes = 0;
+	}
+
+	void stop() {
+		broker.stop();
+	}
+
+}
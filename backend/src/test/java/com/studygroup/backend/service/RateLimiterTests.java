@@ -0,0 +1,177 @@
+package com.studygroup.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTests {
+
+	private MockEnvironment environment;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private RateLimiter rateLimiter;
+
+	@BeforeEach
+	void setUp() {
+		// chat-send: 3 at once, then one per second
+		environment = new MockEnvironment()
+				.withProperty("rate-limit.chat-send.capacity", "3")
+				.withProperty("rate-limit.chat-send.per-minute", "60")
+				// chat-signal refills every 0.1 ms, so its buckets are idle almost at once
+				.withProperty("rate-limit.chat-signal.capacity", "2")
+				.withProperty("rate-limit.chat-signal.per-minute", "600000");
+		meterRegistry = new SimpleMeterRegistry();
+		rateLimiter = new RateLimiter();
+		ReflectionTestUtils.setField(rateLimiter, "environment", environment);
+		ReflectionTestUtils.setField(rateLimiter, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(rateLimiter, "enabled", true);
+		ReflectionTestUtils.setField(rateLimiter, "maxBuckets", 100);
+		rateLimiter.init();
+	}
+
+	@Test
+	void burstUpToTheCapacityThenWait() {
+		for (int i = 0; i < 3; i++) {
+			assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7")).isZero();
+		}
+
+		long waitMs = rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7");
+
+		assertThat(waitMs).isBetween(900L, 1000L);
+		assertThat(meterRegistry.counter("rate_limit.rejected", "policy", "chat-send").count()).isEqualTo(1);
+	}
+
+	@Test
+	void rejectedCallsDoNotUseUpTokens() {
+		for (int i = 0; i < 3; i++) {
+			rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7");
+		}
+		long first = rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7");
+
+		long second = rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7");
+
+		// still waiting for the same token, not for one more behind it
+		assertThat(second).isLessThanOrEqualTo(first);
+	}
+
+	@Test
+	void tokensComeBackOverTime() throws Exception {
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "7");
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "7");
+
+		Thread.sleep(2);
+
+		assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "7")).isZero();
+		assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "7")).isZero();
+	}
+
+	@Test
+	void subjectsAndPoliciesHaveTheirOwnBuckets() {
+		for (int i = 0; i < 3; i++) {
+			rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7");
+		}
+
+		assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "8")).isZero();
+		assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_API, "7")).isZero();
+	}
+
+	@Test
+	void nothingIsLimitedWhenDisabledUnknownOrAnonymous() {
+		assertThat(rateLimiter.tryAcquire("no-such-policy", "7")).isZero();
+		assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, null)).isZero();
+
+		ReflectionTestUtils.setField(rateLimiter, "enabled", false);
+		for (int i = 0; i < 10; i++) {
+			assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7")).isZero();
+		}
+		assertThat(buckets()).isEmpty();
+	}
+
+	@Test
+	void idleBucketsAreEvictedAndBusyOnesKept() throws Exception {
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "idle");
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "busy");
+		Thread.sleep(2);
+
+		rateLimiter.evictIdle();
+
+		assertThat(buckets()).containsOnlyKeys("chat-send:busy");
+	}
+
+	@Test
+	void evictedBucketStartsFull() throws Exception {
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "7");
+		Thread.sleep(2);
+		rateLimiter.evictIdle();
+
+		assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "7")).isZero();
+		assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "7")).isZero();
+	}
+
+	@Test
+	void fullMapEvictsIdleBucketsBeforeFailingOpen() throws Exception {
+		ReflectionTestUtils.setField(rateLimiter, "maxBuckets", 2);
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SIGNAL, "idle");
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "busy");
+		Thread.sleep(2);
+
+		rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "new");
+		assertThat(buckets()).containsOnlyKeys("chat-send:busy", "chat-send:new");
+
+		// nothing idle left, an untracked subject is let through instead of blocking everyone
+		for (int i = 0; i < 10; i++) {
+			assertThat(rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "spray")).isZero();
+		}
+		assertThat(buckets()).hasSize(2);
+	}
+
+	@Test
+	void concurrentCallersNeverGetMoreThanTheCapacity() throws Exception {
+		environment.setProperty("rate-limit.chat-send.capacity", "50");
+		rateLimiter.init();
+		int threads = 8;
+		CyclicBarrier start = new CyclicBarrier(threads);
+		AtomicInteger allowed = new AtomicInteger();
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			Thread worker = new Thread(() -> {
+				try {
+					start.await(5, TimeUnit.SECONDS);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				for (int i = 0; i < 100; i++) {
+					if (rateLimiter.tryAcquire(RateLimiter.POLICY_CHAT_SEND, "7") == 0) {
+						allowed.incrementAndGet();
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.join(5000);
+		}
+
+		// one more token may have refilled while the threads ran
+		assertThat(allowed.get()).isBetween(50, 51);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, ?> buckets() {
+		return (Map<String, ?>) ReflectionTestUtils.getField(rateLimiter, "buckets");
+	}
+
+}
@@ -311,6 +311,30 @@ export const chatAPI = {
     });
   },
 
+  // Get older (or newer) history using the cursor returned by the previous call
+  getMessagesByCursor: async (groupId: number, cursor: string, size: number = 50) => {
+    return apiCall(`/chat/${groupId}/messages?cursor=${encodeURIComponent(cursor)}&size=${size}`, {
+      method: 'GET',
+      headers: getAuthHeaders(),
+    });
+  },
+
+  // Messages missed since the last sequence number seen, used after a reconnect
+  getMessagesSince: async (groupId: number, since: number, size: number = 100) => {
+    return apiCall(`/chat/${groupId}/messages?since=${since}&size=${size}`, {
+      method: 'GET',
+      headers: getAuthHeaders(),
+    });
+  },
+
+  // Last message and unread count of every group of the current user
+  getInbox: async () => {
+    return apiCall(`/chat/inbox`, {
+      method: 'GET',
+      headers: getAuthHeaders(),
+    });
+  },
+
   uploadFile: async (groupId: number, file: File, caption?: string) => {
     const formData = new FormData();
     formData.append('file', file);
@@ -12,16 +12,32 @@ export const connectWebSocket = (
     return stompClient;
   }
 
+  const token = sessionStorage.getItem('token') || localStorage.getItem('token');
+
   stompClient = new Client({
     brokerURL: 'ws://localhost:8080/ws',
-    reconnectDelay: 5000,
+    // the server authenticates the session once on CONNECT
+    connectHeaders: {
+      Authorization: `Bearer ${token}`,
+    },
+    // jittered so clients of a restarted server do not all come back in the same second
+    reconnectDelay: 5000 + Math.floor(Math.random() * 5000),
     heartbeatIncoming: 4000,
     heartbeatOutgoing: 4000,
     onConnect: (frame) => {
+      if (stompClient) {
+        stompClient.reconnectDelay = 5000 + Math.floor(Math.random() * 5000);
+      }
       // console.log('WebSocket connected: ' + frame);
       onConnect();
     },
     onStompError: (frame) => {
+      // server is admitting connections slowly, come back after the delay it suggested
+      const retryAfter = Number(frame.headers['retry-after-ms']);
+      if (stompClient && retryAfter > 0) {
+        stompClient.reconnectDelay = retryAfter;
+        return;
+      }
       console.error('STOMP error: ' + frame.headers['message']);
       onError(frame);
     },
@@ -32,6 +48,7 @@ export const connectWebSocket = (
     onDisconnect: () => {
       // console.log('WebSocket disconnected');
       currentSubscriptions.clear();
+      userChatSubscription = null;
     },
   });
 
@@ -39,7 +56,13 @@ export const connectWebSocket = (
   return stompClient;
 };
 
-export const subscribeToGroup = (groupId: number, onMessage: (message: any) => void): boolean => {
+export const subscribeToGroup = (
+  groupId: number,
+  onMessage: (message: any) => void,
+  onHistory?: (history: any) => void,
+  historySize: number = 50,
+  batched: boolean = false
+): boolean => {
   if (!stompClient || !stompClient.connected) {
     console.warn('WebSocket not connected');
     return false;
@@ -50,19 +73,52 @@ export const subscribeToGroup = (groupId: number, onMessage: (message: any) => v
     currentSubscriptions.get(groupId)?.unsubscribe();
   }
 
-  const subscription = stompClient.subscribe(`/topic/group/${groupId}`, (message) => {
+  // with onHistory the server sends the latest messages on this subscription, no REST call needed
+  const headers: Record<string, string> = onHistory ? { history: String(historySize) } : {};
+
+  // the batch topic delivers bursts as one array frame (server needs chat.coalesce.enabled)
+  const destination = batched ? `/topic/group/${groupId}/batch` : `/topic/group/${groupId}`;
+
+  const subscription = stompClient.subscribe(destination, (message) => {
     try {
       const parsedMessage = JSON.parse(message.body);
-      onMessage(parsedMessage);
+      if (message.headers['history'] && onHistory) {
+        onHistory(parsedMessage);
+      } else if (Array.isArray(parsedMessage)) {
+        parsedMessage.forEach((item: any) => onMessage(item));
+      } else {
+        onMessage(parsedMessage);
+      }
     } catch (error) {
       console.error('Failed to parse message:', error);
     }
-  });
+  }, headers);
 
   currentSubscriptions.set(groupId, subscription);
   return true;
 };
 
+// one subscription for the messages of every group the user belongs to (server needs chat.multiplex.enabled)
+let userChatSubscription: StompSubscription | null = null;
+
+export const subscribeToAllGroups = (onMessage: (message: any) => void): boolean => {
+  if (!stompClient || !stompClient.connected) {
+    console.warn('WebSocket not connected');
+    return false;
+  }
+
+  userChatSubscription?.unsubscribe();
+  userChatSubscription = stompClient.subscribe('/user/queue/chat', (message) => {
+    try {
+      // message.group.id tells which group it belongs to
+      onMessage(JSON.parse(message.body));
+    } catch (error) {
+      console.error('Failed to parse message:', error);
+    }
+  });
+  return true;
+};
+
 export const unsubscribeFromGroup = (groupId: number) => {
   if (currentSubscriptions.has(groupId)) {
     currentSubscriptions.get(groupId)?.unsubscribe();
@@ -71,6 +127,10 @@ export const unsubscribeFromGroup = (groupId: number) => {
 };
 
 export const sendMessage = (groupId: number, message: any) => {
+  // kept on the message object so a retry of the same message is recognised by the server
+  if (!message.clientMessageId) {
+    message.clientMessageId = crypto.randomUUID();
+  }
   if (stompClient && stompClient.connected) {
     stompClient.publish({
       destination: `/app/chat/${groupId}/send`,